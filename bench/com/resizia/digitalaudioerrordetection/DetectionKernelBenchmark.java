@@ -0,0 +1,264 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare the detection loop before WavDetector (sample after sample, with a test for each value) with the WavDetector kernel.
+ * Samples are generated in memory and split in blocks before the measures: only the detection is measured, not the reading and the decoding.
+ * Same configuration as WavFileBenchmark (daed.bench_*).
+ */
+public class DetectionKernelBenchmark {
+	
+	private static int bench_warmup = ConfigurationProperties.getP("daed.bench_warmup", 3);
+	private static int bench_iterations = ConfigurationProperties.getP("daed.bench_iterations", 5);
+	private static int bench_duration = ConfigurationProperties.getP("daed.bench_duration", 30);
+	private static int bench_freq = ConfigurationProperties.getP("daed.bench_freq", 48000);
+	private static String bench_bits = ConfigurationProperties.getP("daed.bench_bits", "16,24");
+	private static String bench_channels = ConfigurationProperties.getP("daed.bench_channels", "1,2,6,16");
+	private static String bench_profiles = ConfigurationProperties.getP("daed.bench_profiles", "NOISE,SILENCE,CLIPPING,HOLD");
+	private static int bench_block_frames = ConfigurationProperties.getP("daed.decode_block_frames", 4096);
+	
+	private static final int SAME_SAMPLE_THRESHOLD_SILENCE = 10;
+	private static final int SAME_SAMPLE_THRESHOLD_HOLD = 5;
+	private static final double LEVEL_THRESHOLD_HOLD = -50;
+	
+	/**
+	 * Avoid dead code elimination.
+	 */
+	static int blackhole;
+	
+	/**
+	 * The WavFile.process() loop before WavDetector, with the same results.
+	 * @param blocks interleaved samples, complete frames, except for the last block.
+	 */
+	static void legacyProcess(int[][] blocks, int channelcount, int no_warning_duration_realsample, List<WavDefaultevent> wavdefaultevents) {
+		int maxvalue = 0;
+		int currentvalue;
+		int lastmaxvalue = maxvalue;
+		int realsamplepos = -1;
+		int currentchannel = channelcount - 1;
+		int[] lastvalue = new int[channelcount];
+		int[] samevaluecount = new int[channelcount];
+		int lastovermodulationrealsample = -no_warning_duration_realsample;
+		int lastsilencezonerealsample = -no_warning_duration_realsample;
+		int[] silencesamplecount = new int[channelcount];
+		int lastholdrealsample = -no_warning_duration_realsample;
+		boolean samesampleisnotsilenceorovermodulation = true;
+		int peak_position_sample = -1;
+		int peak_channel_id = -1;
+		int rawsamplepos = 0;
+		int[] block;
+		
+		for (int blockid = 0; blockid < blocks.length; blockid++) {
+			block = blocks[blockid];
+			for (int blockpos = 0; blockpos < block.length; blockpos++) {
+				currentvalue = block[blockpos];
+				if (currentchannel + 1 == channelcount) {
+					currentchannel = 0;
+				} else {
+					currentchannel++;
+				}
+				realsamplepos = rawsamplepos / channelcount;
+				
+				maxvalue = Math.max(Math.abs(currentvalue), maxvalue);
+				if (lastmaxvalue != maxvalue) {
+					peak_position_sample = realsamplepos;
+					peak_channel_id = currentchannel;
+				}
+				lastmaxvalue = maxvalue;
+				
+				samesampleisnotsilenceorovermodulation = true;
+				
+				if (lastvalue[currentchannel] == currentvalue) {
+					samevaluecount[currentchannel]++;
+					
+					if (currentvalue == 0) {
+						samesampleisnotsilenceorovermodulation = false;
+						silencesamplecount[currentchannel]++;
+						if (silencesamplecount[currentchannel] == SAME_SAMPLE_THRESHOLD_SILENCE) {
+							if ((realsamplepos > lastsilencezonerealsample + no_warning_duration_realsample)) {
+								System.err.print("Digital silence\t");
+								System.err.print(realsamplepos - SAME_SAMPLE_THRESHOLD_SILENCE);
+								System.err.print("\t");
+								System.err.println(currentchannel + 1);
+								lastsilencezonerealsample = realsamplepos;
+								wavdefaultevents.add(new WavDefaulteventDigitalsilence(realsamplepos - SAME_SAMPLE_THRESHOLD_SILENCE, currentchannel + 1));
+							}
+						}
+					} else {
+						silencesamplecount[currentchannel] = 0;
+					}
+					
+				} else {
+					samevaluecount[currentchannel] = 0;
+					
+					if ((currentvalue == Integer.MIN_VALUE) | (currentvalue >= 0x7FFF0000)) {
+						samesampleisnotsilenceorovermodulation = false;
+						if ((realsamplepos > lastovermodulationrealsample + no_warning_duration_realsample)) {
+							System.err.print("Overmodulation\t");
+							System.err.print(realsamplepos);
+							System.err.print("\t");
+							System.err.println(currentchannel + 1);
+							lastovermodulationrealsample = realsamplepos;
+							wavdefaultevents.add(new WavDefaulteventOvermodulation(realsamplepos, currentchannel + 1));
+						}
+					}
+				}
+				
+				if (samesampleisnotsilenceorovermodulation) {
+					if ((samevaluecount[currentchannel] == SAME_SAMPLE_THRESHOLD_HOLD) & ((realsamplepos > lastholdrealsample + no_warning_duration_realsample))) {
+						double hold_value = WavFile.get_dBValue(currentvalue);
+						if (hold_value > LEVEL_THRESHOLD_HOLD) {
+							System.err.print("Hold value\t");
+							System.err.print(WavFile.currentnumberformat.format(hold_value));
+							System.err.print("\t");
+							System.err.print(1 + realsamplepos - SAME_SAMPLE_THRESHOLD_HOLD);
+							System.err.print("\t");
+							System.err.println(currentchannel + 1);
+							wavdefaultevents.add(new WavDefaulteventHold(1 + realsamplepos - SAME_SAMPLE_THRESHOLD_HOLD, currentchannel + 1, hold_value));
+						}
+						lastholdrealsample = realsamplepos;
+					}
+				}
+				
+				lastvalue[currentchannel] = currentvalue;
+				
+				rawsamplepos++;
+			}
+		}
+		
+		blackhole += maxvalue + peak_position_sample + peak_channel_id;
+	}
+	
+	/**
+	 * Like WavFile.process(), block after block.
+	 */
+	static void kernelProcess(int[][] blocks, int channelcount, int no_warning_duration_realsample, List<WavDefaultevent> wavdefaultevents) throws IOException {
+		WavDetectionState state = new WavDetectionState(channelcount, no_warning_duration_realsample);
+		WavDetector detector = new WavDetector(channelcount, SAME_SAMPLE_THRESHOLD_SILENCE, SAME_SAMPLE_THRESHOLD_HOLD, no_warning_duration_realsample, LEVEL_THRESHOLD_HOLD, state, wavdefaultevents);
+		try {
+			for (int blockid = 0; blockid < blocks.length; blockid++) {
+				detector.process(blocks[blockid], blocks[blockid].length);
+			}
+		} finally {
+			detector.close();
+		}
+		blackhole += state.maxvalue + state.peak_position_sample + state.peak_channel_id;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		/**
+		 * Events are displayed on stderr, it's too much for a benchmark.
+		 */
+		PrintStream stderr = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+			
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		
+		System.out.println("Loop\tBits\tChannels\tProfile\tms/op\tMsamples/s\tEvents");
+		try {
+			String[] bits = bench_bits.split(",");
+			String[] channels = bench_channels.split(",");
+			String[] profiles = bench_profiles.split(",");
+			for (int posb = 0; posb < bits.length; posb++) {
+				for (int posc = 0; posc < channels.length; posc++) {
+					for (int posp = 0; posp < profiles.length; posp++) {
+						benchmark(Integer.parseInt(bits[posb].trim()), Integer.parseInt(channels[posc].trim()), SyntheticWavGenerator.Profile.valueOf(profiles[posp].trim()));
+					}
+				}
+			}
+		} finally {
+			System.setErr(stderr);
+		}
+	}
+	
+	/**
+	 * @param loop 0: legacy, 1: kernel
+	 */
+	private static void run(int loop, int[][] blocks, int channelcount, int no_warning_duration_realsample, List<WavDefaultevent> events) throws IOException {
+		if (loop == 0) {
+			legacyProcess(blocks, channelcount, no_warning_duration_realsample, events);
+		} else {
+			kernelProcess(blocks, channelcount, no_warning_duration_realsample, events);
+		}
+	}
+	
+	private static void benchmark(int bits, int channels, SyntheticWavGenerator.Profile profile) throws IOException {
+		int[] samples = new SyntheticWavGenerator(bits, channels, bench_freq, profile, 0).generateSamples(bench_freq * bench_duration);
+		int blocklength = bench_block_frames * channels;
+		int[][] blocks = new int[(samples.length + blocklength - 1) / blocklength][];
+		for (int blockid = 0; blockid < blocks.length; blockid++) {
+			blocks[blockid] = new int[Math.min(blocklength, samples.length - blockid * blocklength)];
+			System.arraycopy(samples, blockid * blocklength, blocks[blockid], 0, blocks[blockid].length);
+		}
+		int no_warning_duration_realsample = bench_freq;
+		ArrayList<WavDefaultevent> events = new ArrayList<WavDefaultevent>();
+		
+		long start;
+		long total;
+		for (int loop = 0; loop < 2; loop++) {
+			for (int iteration = 0; iteration < bench_warmup; iteration++) {
+				events.clear();
+				run(loop, blocks, channels, no_warning_duration_realsample, events);
+			}
+			total = 0;
+			for (int iteration = 0; iteration < bench_iterations; iteration++) {
+				events.clear();
+				start = System.nanoTime();
+				run(loop, blocks, channels, no_warning_duration_realsample, events);
+				total += System.nanoTime() - start;
+			}
+			
+			double secondsperop = (double) total / (double) bench_iterations / 1000000000d;
+			StringBuffer sb = new StringBuffer();
+			if (loop == 0) {
+				sb.append("legacy");
+			} else {
+				sb.append("kernel");
+			}
+			sb.append("\t");
+			sb.append(bits);
+			sb.append("\t");
+			sb.append(channels);
+			sb.append("\t");
+			sb.append(profile.name());
+			sb.append("\t");
+			sb.append(WavFile.currentnumberformat.format(secondsperop * 1000d));
+			sb.append("\t");
+			sb.append(WavFile.currentnumberformat.format(samples.length / secondsperop / 1000000d));
+			sb.append("\t");
+			sb.append(events.size());
+			System.out.println(sb.toString());
+		}
+	}
+	
+}
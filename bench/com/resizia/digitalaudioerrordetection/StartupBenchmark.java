@@ -0,0 +1,248 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Measure the command line time for a short wav file: a new JVM, a new JVM with the class data sharing archive (with and without C2), and the native binary.
+ * The modes are run in turn for each iteration, and the analysis time of the same file in this (warm) JVM is the reference.
+ * The archive and the native binary are created by daed.sh, in bench_launcher_home: without them, their mode is skipped.
+ */
+public class StartupBenchmark {
+	
+	private static int bench_warmup = ConfigurationProperties.getP("daed.bench_warmup", 2);
+	private static int bench_iterations = ConfigurationProperties.getP("daed.bench_iterations", 10);
+	private static int bench_freq = ConfigurationProperties.getP("daed.bench_freq", 48000);
+	
+	/**
+	 * Short wav duration, in milliseconds.
+	 */
+	private static int bench_clip_duration = ConfigurationProperties.getP("daed.bench_clip_duration", 2000);
+	
+	/**
+	 * The daed.sh directory, with daed.jar, daed.jsa and daed.
+	 */
+	private static File bench_launcher_home = ConfigurationProperties.getP("daed.bench_launcher_home", new File("."));
+	
+	private static String bench_java = ConfigurationProperties.getP("daed.bench_java", System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+	
+	/**
+	 * For the JVM mode without archive.
+	 */
+	private static String bench_classpath = ConfigurationProperties.getP("daed.bench_classpath", System.getProperty("java.class.path"));
+	
+	private static final String MAINCLASS = "com.resizia.digitalaudioerrordetection.MainClass";
+	
+	/**
+	 * A command line for analyse a file.
+	 */
+	static class Mode {
+		String name;
+		String[] command;
+		
+		/**
+		 * Milliseconds, by iteration.
+		 */
+		double[] times;
+		
+		Mode(String name, String[] command) {
+			this.name = name;
+			this.command = command;
+			times = new double[bench_iterations];
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		if ((bench_iterations < 1) | (bench_clip_duration < 1)) {
+			throw new IllegalArgumentException("Invalid bench_iterations or bench_clip_duration: " + bench_iterations + ", " + bench_clip_duration);
+		}
+		
+		File workdir = File.createTempFile("daed-bench", "");
+		workdir.delete();
+		workdir.mkdirs();
+		File tableresultfile = new File(workdir, "results.txt");
+		System.setProperty("daed.tableresultfilename", tableresultfile.getPath());
+		
+		try {
+			File wavfile = new File(workdir, "bench_clip.wav");
+			new SyntheticWavGenerator(16, 2, bench_freq, SyntheticWavGenerator.Profile.NOISE, 0).write(wavfile, (int) ((long) bench_freq * (long) bench_clip_duration / 1000l));
+			
+			String tableresult = "-Ddaed.tableresultfilename=" + tableresultfile.getPath();
+			ArrayList<Mode> modes = new ArrayList<Mode>();
+			modes.add(new Mode("jvm", new String[] { bench_java, tableresult, "-cp", bench_classpath, MAINCLASS, wavfile.getPath() }));
+			
+			File jar = new File(bench_launcher_home, "daed.jar");
+			File archive = new File(bench_launcher_home, "daed.jsa");
+			if (jar.exists() & archive.exists()) {
+				modes.add(new Mode("jvm + cds", new String[] { bench_java, "-Xshare:auto", "-XX:SharedArchiveFile=" + archive.getPath(), tableresult, "-cp", jar.getPath(), MAINCLASS,
+						wavfile.getPath() }));
+				/**
+				 * Without C2, the analysis loop is compiled sooner, but slower on the long files.
+				 */
+				modes.add(new Mode("jvm + cds, C1 only", new String[] { bench_java, "-Xshare:auto", "-XX:SharedArchiveFile=" + archive.getPath(), "-XX:TieredStopAtLevel=1", tableresult,
+						"-cp", jar.getPath(), MAINCLASS, wavfile.getPath() }));
+			} else {
+				System.out.print("No class data sharing archive in ");
+				System.out.print(bench_launcher_home.getPath());
+				System.out.println(" (daed.sh --create-archive), skip the jvm + cds mode");
+			}
+			
+			File nativebinary = new File(bench_launcher_home, "daed");
+			if (nativebinary.isFile()) {
+				modes.add(new Mode("native", new String[] { nativebinary.getPath(), tableresult, wavfile.getPath() }));
+			} else {
+				System.out.print("No native binary in ");
+				System.out.print(bench_launcher_home.getPath());
+				System.out.println(" (daed.sh --build-native), skip the native mode");
+			}
+			
+			for (int iteration = 0; iteration < bench_warmup; iteration++) {
+				for (int pos = 0; pos < modes.size(); pos++) {
+					run(modes.get(pos).command);
+				}
+			}
+			for (int iteration = 0; iteration < bench_iterations; iteration++) {
+				for (int pos = 0; pos < modes.size(); pos++) {
+					modes.get(pos).times[iteration] = run(modes.get(pos).command);
+				}
+			}
+			
+			Mode inprocess = new Mode("in process (warm)", null);
+			measureInProcess(wavfile, inprocess.times);
+			modes.add(inprocess);
+			
+			System.out.print("Clip\t");
+			System.out.print(bench_clip_duration);
+			System.out.print(" ms, ");
+			System.out.print(wavfile.length() / 1024);
+			System.out.println(" kB");
+			System.out.println("Mode\tms min\tms median\tms mean");
+			double[] times;
+			double sum;
+			for (int pos = 0; pos < modes.size(); pos++) {
+				times = modes.get(pos).times.clone();
+				Arrays.sort(times);
+				sum = 0;
+				for (int iteration = 0; iteration < times.length; iteration++) {
+					sum += times[iteration];
+				}
+				System.out.print(modes.get(pos).name);
+				System.out.print("\t");
+				System.out.print(format(times[0]));
+				System.out.print("\t");
+				System.out.print(format(times[times.length / 2]));
+				System.out.print("\t");
+				System.out.println(format(sum / times.length));
+			}
+		} finally {
+			File[] files = workdir.listFiles();
+			for (int pos = 0; pos < files.length; pos++) {
+				files[pos].delete();
+			}
+			workdir.delete();
+		}
+	}
+	
+	private static String format(double value) {
+		return String.valueOf(Math.round(value * 10d) / 10d);
+	}
+	
+	/**
+	 * @return the process time, from its start to its end, in milliseconds.
+	 */
+	private static double run(String[] command) throws IOException {
+		long start = System.nanoTime();
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		
+		/**
+		 * The process is blocked if its output is not read.
+		 */
+		InputStream in = process.getInputStream();
+		byte[] buffer = new byte[8192];
+		StringBuffer output = new StringBuffer();
+		int len;
+		while ((len = in.read(buffer)) > 0) {
+			if (output.length() < 4096) {
+				output.append(new String(buffer, 0, len));
+			}
+		}
+		in.close();
+		
+		int exitvalue;
+		try {
+			exitvalue = process.waitFor();
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted during " + command[0]);
+		}
+		long end = System.nanoTime();
+		if (exitvalue != 0) {
+			throw new IOException("Error during " + Arrays.toString(command) + ": " + exitvalue + WavFile.LINESEPARATOR + output);
+		}
+		return (double) (end - start) / 1000000d;
+	}
+	
+	/**
+	 * The same analysis and reports, without the JVM start: the part of the command line time which is not the startup.
+	 */
+	private static void measureInProcess(File wavfile, double[] times) throws IOException {
+		/**
+		 * Events are displayed on stderr.
+		 */
+		PrintStream stderr = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+			
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		try {
+			WavFile wav;
+			long start;
+			for (int iteration = -bench_warmup * 5; iteration < times.length; iteration++) {
+				start = System.nanoTime();
+				wav = new WavFile(wavfile);
+				try {
+					wav.process();
+				} finally {
+					wav.close();
+				}
+				wav.writeInformationFiles();
+				if (iteration >= 0) {
+					times[iteration] = (double) (System.nanoTime() - start) / 1000000d;
+				}
+			}
+		} finally {
+			System.setErr(stderr);
+		}
+	}
+	
+}
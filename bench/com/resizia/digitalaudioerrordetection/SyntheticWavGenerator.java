@@ -0,0 +1,209 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Write deterministic PCM wav files, for benchmarks.
+ * The same parameters always give the same file.
+ */
+public class SyntheticWavGenerator {
+	
+	/**
+	 * Signal content.
+	 */
+	public enum Profile {
+		/**
+		 * White noise at -20 dBFS.
+		 */
+		NOISE,
+		/**
+		 * 2 seconds of noise, followed by 3 seconds of digital silence.
+		 */
+		SILENCE,
+		/**
+		 * A sine amplified at +6 dBFS, clipped at full scale.
+		 */
+		CLIPPING,
+		/**
+		 * Noise, with a run of 20 same samples each 100 ms.
+		 */
+		HOLD
+	}
+	
+	private int bitspersample;
+	private int channelcount;
+	private int freq;
+	private Profile profile;
+	private long seed;
+	
+	/**
+	 * @param bitspersample 8, 16 or 24
+	 */
+	public SyntheticWavGenerator(int bitspersample, int channelcount, int freq, Profile profile, long seed) {
+		if ((bitspersample != 8) & (bitspersample != 16) & (bitspersample != 24)) {
+			throw new IllegalArgumentException("Unsupported bits per sample: " + bitspersample);
+		}
+		if (channelcount < 1) {
+			throw new IllegalArgumentException("Invalid channel count: " + channelcount);
+		}
+		this.bitspersample = bitspersample;
+		this.channelcount = channelcount;
+		this.freq = freq;
+		this.profile = profile;
+		this.seed = seed;
+	}
+	
+	/**
+	 * Create / overwrite a wav file, with a 44 bytes header.
+	 */
+	public void write(File file, int framecount) throws IOException {
+		int samplesize = bitspersample / 8;
+		int datasize = framecount * channelcount * samplesize;
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024);
+		try {
+			out.write(new byte[] { 0x52, 0x49, 0x46, 0x46 });
+			writeInt(out, datasize + 36);
+			out.write(new byte[] { 0x57, 0x41, 0x56, 0x45 });
+			out.write(new byte[] { 0x66, 0x6D, 0x74, 0x20 });
+			writeInt(out, 16);
+			writeShort(out, 1);
+			writeShort(out, channelcount);
+			writeInt(out, freq);
+			writeInt(out, freq * channelcount * samplesize);
+			writeShort(out, channelcount * samplesize);
+			writeShort(out, bitspersample);
+			out.write(new byte[] { 0x64, 0x61, 0x74, 0x61 });
+			writeInt(out, datasize);
+			
+			Random random = new Random(seed);
+			byte[] frame = new byte[channelcount * samplesize];
+			int value;
+			int bpos;
+			for (int framepos = 0; framepos < framecount; framepos++) {
+				bpos = 0;
+				for (int channel = 0; channel < channelcount; channel++) {
+					value = getSampleValue(random, framepos, channel);
+					if (samplesize == 1) {
+						/**
+						 * 8 bits wav samples are unsigned.
+						 */
+						frame[bpos] = (byte) ((value >> 24) + 128);
+					} else if (samplesize == 2) {
+						frame[bpos] = (byte) (value >> 16);
+						frame[bpos + 1] = (byte) (value >> 24);
+					} else {
+						frame[bpos] = (byte) (value >> 8);
+						frame[bpos + 1] = (byte) (value >> 16);
+						frame[bpos + 2] = (byte) (value >> 24);
+					}
+					bpos += samplesize;
+				}
+				out.write(frame);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * The same samples as write(), interleaved, in signed 32b integer like in WavFile.
+	 */
+	public int[] generateSamples(int framecount) {
+		int[] samples = new int[framecount * channelcount];
+		Random random = new Random(seed);
+		int pos = 0;
+		for (int framepos = 0; framepos < framecount; framepos++) {
+			for (int channel = 0; channel < channelcount; channel++) {
+				samples[pos] = getSampleValue(random, framepos, channel);
+				pos++;
+			}
+		}
+		return samples;
+	}
+	
+	private int[] holdvalues;
+	
+	/**
+	 * @return a signed 32b integer value, like in WavFile.
+	 */
+	private int getSampleValue(Random random, int framepos, int channel) {
+		double value;
+		if (profile == Profile.NOISE) {
+			value = random.nextGaussian() * 0.1;
+		} else if (profile == Profile.SILENCE) {
+			if ((framepos + channel * 100) % (5 * freq) < 2 * freq) {
+				value = random.nextGaussian() * 0.1;
+			} else {
+				value = 0;
+			}
+		} else if (profile == Profile.CLIPPING) {
+			value = 2 * Math.sin(2 * Math.PI * 997 * framepos / freq + channel);
+		} else {
+			if (holdvalues == null) {
+				holdvalues = new int[channelcount];
+			}
+			if (framepos % (freq / 10) < 20) {
+				if (framepos % (freq / 10) == 0) {
+					holdvalues[channel] = toIntValue(random.nextGaussian() * 0.1);
+				}
+				return holdvalues[channel];
+			}
+			value = random.nextGaussian() * 0.1;
+		}
+		return toIntValue(value);
+	}
+	
+	/**
+	 * @param value between -1 and 1, clipped if more.
+	 */
+	private int toIntValue(double value) {
+		value = Math.max(-1d, Math.min(1d, value));
+		int shift = 32 - bitspersample;
+		long maxvalue = (1l << (bitspersample - 1)) - 1;
+		long result = Math.round(value * maxvalue);
+		if (result < -maxvalue - 1) {
+			result = -maxvalue - 1;
+		}
+		return (int) (result << shift);
+	}
+	
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >> 8) & 0xFF);
+		out.write((value >> 16) & 0xFF);
+		out.write((value >> 24) & 0xFF);
+	}
+	
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >> 8) & 0xFF);
+	}
+	
+}
@@ -0,0 +1,247 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Measure the header parsing, the raw decode, the detection loop and the report writing, on synthetic wav files.
+ * Like JMH: warmup iterations, then measured iterations, and the result throughput.
+ * Configuration with System Properties, like the application (daed.bench_*).
+ */
+public class WavFileBenchmark {
+	
+	private static int bench_warmup = ConfigurationProperties.getP("daed.bench_warmup", 3);
+	private static int bench_iterations = ConfigurationProperties.getP("daed.bench_iterations", 5);
+	private static int bench_duration = ConfigurationProperties.getP("daed.bench_duration", 30);
+	private static int bench_freq = ConfigurationProperties.getP("daed.bench_freq", 48000);
+	private static String bench_bits = ConfigurationProperties.getP("daed.bench_bits", "8,16,24");
+	private static String bench_channels = ConfigurationProperties.getP("daed.bench_channels", "1,2,6,16");
+	private static String bench_profiles = ConfigurationProperties.getP("daed.bench_profiles", "NOISE,SILENCE,CLIPPING,HOLD");
+	private static String bench_operations = ConfigurationProperties.getP("daed.bench_operations", "header,decode,process,report");
+	
+	/**
+	 * Avoid dead code elimination in decode operation.
+	 */
+	static int blackhole;
+	
+	/**
+	 * A benchmarked operation on a wav file.
+	 */
+	static abstract class Operation {
+		String name;
+		
+		Operation(String name) {
+			this.name = name;
+		}
+		
+		/**
+		 * Before the warmup, not measured.
+		 */
+		void setup(File wavfile) throws IOException {
+		}
+		
+		/**
+		 * @return true if the throughput in samples and bytes make sense for this operation.
+		 */
+		boolean isStreaming() {
+			return true;
+		}
+		
+		abstract void run(File wavfile) throws IOException;
+		
+		void tearDown() throws IOException {
+		}
+	}
+	
+	static final Operation HEADER = new Operation("header") {
+		boolean isStreaming() {
+			return false;
+		}
+		
+		void run(File wavfile) throws IOException {
+			WavFile wav = new WavFile(wavfile);
+			wav.parseWavHeader();
+			wav.close();
+		}
+	};
+	
+	static final Operation DECODE = new Operation("decode") {
+		void run(File wavfile) throws IOException {
+			WavFile wav = new WavFile(wavfile);
+			wav.parseWavHeader();
+			int samplesize = wav.getBitspersample() / 8;
+			wav.close();
+			
+			DataInputSteamLittleEndian in = new DataInputSteamLittleEndian(new BufferedChannelInputStream(new FileInputStream(wavfile), BufferPool.getShared()));
+			try {
+				/**
+				 * SyntheticWavGenerator header size.
+				 */
+				in.skipBytes(44);
+				int[] block = new int[4096 * 16];
+				int sum = 0;
+				int count;
+				while ((count = in.readSamples(block, 0, block.length, samplesize)) > 0) {
+					for (int pos = 0; pos < count; pos++) {
+						sum ^= block[pos];
+					}
+				}
+				blackhole += sum;
+			} finally {
+				in.close();
+			}
+		}
+	};
+	
+	static final Operation PROCESS = new Operation("process") {
+		void run(File wavfile) throws IOException {
+			WavFile wav = new WavFile(wavfile);
+			try {
+				wav.process();
+			} finally {
+				wav.close();
+			}
+		}
+	};
+	
+	static final Operation REPORT = new Operation("report") {
+		WavFile wav;
+		
+		boolean isStreaming() {
+			return false;
+		}
+		
+		void setup(File wavfile) throws IOException {
+			wav = new WavFile(wavfile);
+			wav.process();
+			wav.close();
+		}
+		
+		void run(File wavfile) throws IOException {
+			wav.writeInformationFiles();
+		}
+		
+		void tearDown() throws IOException {
+			wav = null;
+		}
+	};
+	
+	static final Operation[] OPERATIONS = { HEADER, DECODE, PROCESS, REPORT };
+	
+	public static void main(String[] args) throws Exception {
+		File workdir = File.createTempFile("daed-bench", "");
+		workdir.delete();
+		workdir.mkdirs();
+		System.setProperty("daed.tableresultfilename", new File(workdir, "results.txt").getPath());
+		
+		/**
+		 * Events are displayed on stderr, it's too much for a benchmark.
+		 */
+		PrintStream stderr = System.err;
+		System.setErr(new PrintStream(new OutputStream() {
+			public void write(int b) {
+			}
+			
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		
+		System.out.println("Operation\tBits\tChannels\tProfile\tms/op\tMsamples/s\tMB/s");
+		try {
+			String[] bits = bench_bits.split(",");
+			String[] channels = bench_channels.split(",");
+			String[] profiles = bench_profiles.split(",");
+			for (int posb = 0; posb < bits.length; posb++) {
+				for (int posc = 0; posc < channels.length; posc++) {
+					for (int posp = 0; posp < profiles.length; posp++) {
+						benchmark(workdir, Integer.parseInt(bits[posb].trim()), Integer.parseInt(channels[posc].trim()), SyntheticWavGenerator.Profile.valueOf(profiles[posp].trim()));
+					}
+				}
+			}
+		} finally {
+			System.setErr(stderr);
+			File[] files = workdir.listFiles();
+			for (int pos = 0; pos < files.length; pos++) {
+				files[pos].delete();
+			}
+			workdir.delete();
+		}
+		BufferPool.getShared().printStatistics(System.out);
+	}
+	
+	private static void benchmark(File workdir, int bits, int channels, SyntheticWavGenerator.Profile profile) throws IOException {
+		File wavfile = new File(workdir, "bench_" + bits + "_" + channels + "_" + profile.name().toLowerCase() + ".wav");
+		int framecount = bench_freq * bench_duration;
+		new SyntheticWavGenerator(bits, channels, bench_freq, profile, 0).write(wavfile, framecount);
+		long samplecount = (long) framecount * (long) channels;
+		long datasize = samplecount * (bits / 8);
+		
+		Operation operation;
+		long start;
+		long total;
+		for (int pos = 0; pos < OPERATIONS.length; pos++) {
+			operation = OPERATIONS[pos];
+			if (("," + bench_operations + ",").indexOf("," + operation.name + ",") == -1) {
+				continue;
+			}
+			operation.setup(wavfile);
+			for (int iteration = 0; iteration < bench_warmup; iteration++) {
+				operation.run(wavfile);
+			}
+			total = 0;
+			for (int iteration = 0; iteration < bench_iterations; iteration++) {
+				start = System.nanoTime();
+				operation.run(wavfile);
+				total += System.nanoTime() - start;
+			}
+			operation.tearDown();
+			
+			double secondsperop = (double) total / (double) bench_iterations / 1000000000d;
+			StringBuffer sb = new StringBuffer();
+			sb.append(operation.name);
+			sb.append("\t");
+			sb.append(bits);
+			sb.append("\t");
+			sb.append(channels);
+			sb.append("\t");
+			sb.append(profile.name());
+			sb.append("\t");
+			sb.append(WavFile.currentnumberformat.format(secondsperop * 1000d));
+			sb.append("\t");
+			if (operation.isStreaming()) {
+				sb.append(WavFile.currentnumberformat.format(samplecount / secondsperop / 1000000d));
+				sb.append("\t");
+				sb.append(WavFile.currentnumberformat.format(datasize / secondsperop / (1024d * 1024d)));
+			} else {
+				sb.append("-\t-");
+			}
+			System.out.println(sb.toString());
+		}
+		wavfile.delete();
+	}
+	
+}
@@ -0,0 +1,70 @@
+#!/bin/sh
+#
+# Digital Audio Error Detection launcher.
+#
+#  daed.sh files...                  Analyse, with the class data sharing archive if it exists (fast startup).
+#  daed.sh --create-archive file      Create daed.jar and its class data sharing archive (Java 11+),
+#                                     with a training analysis of a short wav file (the reports are written).
+#  daed.sh --build-native             Create the daed native binary with GraalVM native-image.
+#
+# DAED_CLASSES: the compiled classes directory (default: bin, the Eclipse output).
+# JAVA_HOME: the JVM to use, the same for create the archive and use it.
+# DAED_JAVA_OPTS: the configuration (like -Ddaed.progress=true) and more JVM options.
+#   For a lot of short files only, -XX:TieredStopAtLevel=1 starts faster (the analysis is compiled sooner, but slower): see StartupBenchmark.
+#
+
+DAED_HOME=$(cd "$(dirname "$0")" && pwd)
+DAED_CLASSES=${DAED_CLASSES:-$DAED_HOME/bin}
+MAINCLASS=com.resizia.digitalaudioerrordetection.MainClass
+
+JAR=$DAED_HOME/daed.jar
+ARCHIVE=$DAED_HOME/daed.jsa
+CLASSLIST=$DAED_HOME/daed.classlist
+
+if [ -n "$JAVA_HOME" ]; then
+	JAVA=$JAVA_HOME/bin/java
+	JARTOOL=$JAVA_HOME/bin/jar
+	NATIVEIMAGE=$JAVA_HOME/bin/native-image
+else
+	JAVA=java
+	JARTOOL=jar
+	NATIVEIMAGE=native-image
+fi
+
+# The archive only contains classes from jar files, not from directories.
+create_jar() {
+	if [ ! -f "$DAED_CLASSES/com/resizia/digitalaudioerrordetection/MainClass.class" ]; then
+		echo "No compiled classes in $DAED_CLASSES (set DAED_CLASSES)" >&2
+		exit 1
+	fi
+	rm -f "$JAR"
+	"$JARTOOL" cf "$JAR" -C "$DAED_CLASSES" . || exit 1
+}
+
+case "$1" in
+--create-archive)
+	shift
+	create_jar
+	rm -f "$ARCHIVE" "$CLASSLIST"
+	# The training analysis loads the classes of a real analysis, then the archive is dumped from this list.
+	TABLE=$(mktemp) || exit 1
+	"$JAVA" -XX:DumpLoadedClassList="$CLASSLIST" $DAED_JAVA_OPTS -Ddaed.tableresultfilename="$TABLE" -cp "$JAR" $MAINCLASS "$@" || exit 1
+	rm -f "$TABLE"
+	"$JAVA" -Xshare:dump -XX:SharedClassListFile="$CLASSLIST" -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" || exit 1
+	rm -f "$CLASSLIST"
+	echo "Class data sharing archive: $ARCHIVE"
+	;;
+--build-native)
+	shift
+	create_jar
+	# The options are in META-INF/native-image, in the jar.
+	cd "$DAED_HOME" && exec "$NATIVEIMAGE" -cp "$JAR" "$@"
+	;;
+*)
+	if [ -f "$ARCHIVE" ] && [ -f "$JAR" ]; then
+		# Xshare:auto: with an archive from an another JVM, or an updated jar, the classes are simply loaded without it.
+		exec "$JAVA" -Xshare:auto -XX:SharedArchiveFile="$ARCHIVE" $DAED_JAVA_OPTS -cp "$JAR" $MAINCLASS "$@"
+	fi
+	exec "$JAVA" $DAED_JAVA_OPTS -cp "$DAED_CLASSES" $MAINCLASS "$@"
+	;;
+esac
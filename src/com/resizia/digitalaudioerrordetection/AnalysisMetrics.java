@@ -0,0 +1,283 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import javax.management.ObjectName;
+
+/**
+ * Counters for all the analyses, published as a JMX MBean.
+ * Values are only added at the end of each analysis step, never by sample.
+ * If disabled (daed.metrics), WavFile don't measure anything.
+ */
+public class AnalysisMetrics implements AnalysisMetricsMBean {
+	
+	/**
+	 * Collect and publish metrics.
+	 */
+	public static final boolean enabled = ConfigurationProperties.getP("daed.metrics", false);
+	
+	public static final String OBJECTNAME = "com.resizia.digitalaudioerrordetection:type=AnalysisMetrics";
+	
+	private static AnalysisMetrics shared;
+	
+	/**
+	 * Registered in the platform MBean server if enabled.
+	 */
+	public static synchronized AnalysisMetrics getShared() {
+		if (shared == null) {
+			shared = new AnalysisMetrics();
+			if (enabled) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().registerMBean(shared, new ObjectName(OBJECTNAME));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return shared;
+	}
+	
+	/**
+	 * Loaded with the first CPU time measure only: the management classes are too slow to load for the runs without metrics.
+	 */
+	private static class ThreadCpu {
+		static final ThreadMXBean threadmxbean = ManagementFactory.getThreadMXBean();
+	}
+	
+	/**
+	 * @return nanoseconds, or 0 if it's not supported by the JVM.
+	 */
+	public static long getCurrentThreadCpuTime() {
+		ThreadMXBean threadmxbean = ThreadCpu.threadmxbean;
+		if (threadmxbean.isCurrentThreadCpuTimeSupported() == false) {
+			return 0;
+		}
+		return threadmxbean.getCurrentThreadCpuTime();
+	}
+	
+	private long analysedfilecount;
+	private long bytesread;
+	private long samplesdecoded;
+	private long digitalsilenceeventcount;
+	private long holdeventcount;
+	private long overmodulationeventcount;
+	private long clickeventcount;
+	private long dropouteventcount;
+	private long stuttereventcount;
+	
+	/**
+	 * Times in nanoseconds.
+	 */
+	private long iowaittime;
+	private long cputime;
+	private long headerparsingtime;
+	private long processtime;
+	private long reportwritingtime;
+	private long lastfilewalltime;
+	private long maxfilewalltime;
+	
+	private String lastfilename = "";
+	
+	/**
+	 * At the end of WavFile.process()
+	 * @param headerparsingtime, processtime, iowaittime, cputime in nanoseconds. processtime include headerparsingtime.
+	 */
+	synchronized void addProcess(long bytesread, long samplesdecoded, List<WavDefaultevent> events, long headerparsingtime, long processtime, long iowaittime, long cputime) {
+		this.bytesread += bytesread;
+		this.samplesdecoded += samplesdecoded;
+		this.headerparsingtime += headerparsingtime;
+		this.processtime += processtime;
+		this.iowaittime += iowaittime;
+		this.cputime += cputime;
+		
+		WavDefaultevent event;
+		for (int pos = 0; pos < events.size(); pos++) {
+			event = events.get(pos);
+			if (event instanceof WavDefaulteventOvermodulation) {
+				overmodulationeventcount++;
+			} else if (event instanceof WavDefaulteventDigitalsilence) {
+				digitalsilenceeventcount++;
+			} else if (event instanceof WavDefaulteventHold) {
+				holdeventcount++;
+			} else if (event instanceof WavDefaulteventClick) {
+				clickeventcount++;
+			} else if (event instanceof WavDefaulteventDropout) {
+				dropouteventcount++;
+			} else if (event instanceof WavDefaulteventStutter) {
+				stuttereventcount++;
+			}
+		}
+	}
+	
+	/**
+	 * At the end of WavFile.writeInformationFiles()
+	 * @param reportwritingtime, filewalltime in nanoseconds.
+	 */
+	synchronized void addReport(String filename, long reportwritingtime, long filewalltime) {
+		analysedfilecount++;
+		this.reportwritingtime += reportwritingtime;
+		lastfilename = filename;
+		lastfilewalltime = filewalltime;
+		if (filewalltime > maxfilewalltime) {
+			maxfilewalltime = filewalltime;
+		}
+	}
+	
+	public synchronized long getAnalysedFileCount() {
+		return analysedfilecount;
+	}
+	
+	public synchronized long getBytesRead() {
+		return bytesread;
+	}
+	
+	public synchronized long getSamplesDecoded() {
+		return samplesdecoded;
+	}
+	
+	public synchronized long getDigitalSilenceEventCount() {
+		return digitalsilenceeventcount;
+	}
+	
+	public synchronized long getHoldEventCount() {
+		return holdeventcount;
+	}
+	
+	public synchronized long getOvermodulationEventCount() {
+		return overmodulationeventcount;
+	}
+	
+	public synchronized long getClickEventCount() {
+		return clickeventcount;
+	}
+	
+	public synchronized long getDropoutEventCount() {
+		return dropouteventcount;
+	}
+	
+	public synchronized long getStutterEventCount() {
+		return stuttereventcount;
+	}
+	
+	public synchronized long getIOWaitTime() {
+		return iowaittime / 1000000l;
+	}
+	
+	public synchronized long getCPUTime() {
+		return cputime / 1000000l;
+	}
+	
+	public synchronized long getHeaderParsingTime() {
+		return headerparsingtime / 1000000l;
+	}
+	
+	public synchronized long getProcessTime() {
+		return processtime / 1000000l;
+	}
+	
+	public synchronized long getReportWritingTime() {
+		return reportwritingtime / 1000000l;
+	}
+	
+	public synchronized long getLastFileWallTime() {
+		return lastfilewalltime / 1000000l;
+	}
+	
+	public synchronized long getMaxFileWallTime() {
+		return maxfilewalltime / 1000000l;
+	}
+	
+	public synchronized String getLastFileName() {
+		return lastfilename;
+	}
+	
+	public synchronized double getSamplesPerSecond() {
+		if (processtime == 0) {
+			return 0;
+		}
+		return (double) samplesdecoded / ((double) processtime / 1000000000d);
+	}
+	
+	public synchronized void reset() {
+		analysedfilecount = 0;
+		bytesread = 0;
+		samplesdecoded = 0;
+		digitalsilenceeventcount = 0;
+		holdeventcount = 0;
+		overmodulationeventcount = 0;
+		clickeventcount = 0;
+		dropouteventcount = 0;
+		stuttereventcount = 0;
+		iowaittime = 0;
+		cputime = 0;
+		headerparsingtime = 0;
+		processtime = 0;
+		reportwritingtime = 0;
+		lastfilewalltime = 0;
+		maxfilewalltime = 0;
+		lastfilename = "";
+	}
+	
+	public synchronized void printStatistics(PrintStream out) {
+		out.print("Metrics:\t");
+		out.print(analysedfilecount);
+		out.print(" files, ");
+		out.print(bytesread / (1024 * 1024));
+		out.print(" MB read, ");
+		out.print(samplesdecoded);
+		out.print(" samples, ");
+		out.print(WavFile.currentnumberformat.format(getSamplesPerSecond() / 1000000d));
+		out.println(" Msamples/s");
+		out.print("Events:\t");
+		out.print(digitalsilenceeventcount);
+		out.print(" digital silences, ");
+		out.print(holdeventcount);
+		out.print(" holds, ");
+		out.print(overmodulationeventcount);
+		out.print(" overmodulations, ");
+		out.print(clickeventcount);
+		out.print(" clicks, ");
+		out.print(dropouteventcount);
+		out.print(" dropouts, ");
+		out.print(stuttereventcount);
+		out.println(" stutters");
+		out.print("Times (ms):\t");
+		out.print(getHeaderParsingTime());
+		out.print(" header parsing, ");
+		out.print(getProcessTime());
+		out.print(" process (");
+		out.print(getIOWaitTime());
+		out.print(" I/O wait, ");
+		out.print(getCPUTime());
+		out.print(" CPU), ");
+		out.print(getReportWritingTime());
+		out.print(" report writing, ");
+		out.print(getMaxFileWallTime());
+		out.println(" max by file");
+	}
+	
+}
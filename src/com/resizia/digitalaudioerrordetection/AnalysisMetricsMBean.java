@@ -0,0 +1,82 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+/**
+ * JMX view of the AnalysisMetrics. Times are in milliseconds.
+ */
+public interface AnalysisMetricsMBean {
+	
+	long getAnalysedFileCount();
+	
+	long getBytesRead();
+	
+	long getSamplesDecoded();
+	
+	long getDigitalSilenceEventCount();
+	
+	long getHoldEventCount();
+	
+	long getOvermodulationEventCount();
+	
+	long getClickEventCount();
+	
+	long getDropoutEventCount();
+	
+	long getStutterEventCount();
+	
+	/**
+	 * Time spent to wait the file reads.
+	 */
+	long getIOWaitTime();
+	
+	/**
+	 * CPU time used by the analyses threads, during process().
+	 */
+	long getCPUTime();
+	
+	long getHeaderParsingTime();
+	
+	long getProcessTime();
+	
+	long getReportWritingTime();
+	
+	/**
+	 * Wall time for the last analysed file, from process() start to writeInformationFiles() end.
+	 */
+	long getLastFileWallTime();
+	
+	long getMaxFileWallTime();
+	
+	String getLastFileName();
+	
+	/**
+	 * Decoded samples by process() time second.
+	 */
+	double getSamplesPerSecond();
+	
+	/**
+	 * Set all the counters to 0.
+	 */
+	void reset();
+	
+}
@@ -0,0 +1,274 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyse the files of a batch on some workers, the longest first (from their headers), for end the batch as soon as possible.
+ * A file longer than the batch share of a worker would end alone: its time segments (or else its channels) are analysed on some threads.
+ */
+class BatchScheduler {
+	
+	/**
+	 * Files analysed in parallel. 1 for analyse the files one by one, in the command line order, without scheduler.
+	 */
+	private static int batch_threads = ConfigurationProperties.getP("daed.batch_threads", 1);
+	
+	/**
+	 * Estimated analysis speed of a worker (samples by second, all channels), for the expected batch time.
+	 */
+	private static double batch_estimated_rate = ConfigurationProperties.getP("daed.batch_estimated_rate", 2000000d);
+	
+	/**
+	 * A file or a channel set to analyse.
+	 */
+	private static class Job {
+		File file;
+		File[] setmembers;
+		
+		/**
+		 * All channels, from the header: the estimated cost. 0 if the header can't be read.
+		 */
+		long samplecount;
+		int channelcount;
+		
+		/**
+		 * Can be split in time segments, else the threads are limited by the channel count.
+		 */
+		boolean segmentable;
+		int threads;
+		
+		/**
+		 * The real analysis time (nanoseconds).
+		 */
+		long processtime;
+	}
+	
+	private ArrayList<Job> jobs;
+	
+	BatchScheduler() {
+		jobs = new ArrayList<Job>();
+	}
+	
+	static boolean isEnabled() {
+		return batch_threads > 1;
+	}
+	
+	/**
+	 * Read the header, and queue the file.
+	 * @param setmembers null for a simple file.
+	 */
+	void add(File file, File[] setmembers) {
+		if (file == null) {
+			throw new NullPointerException("\"file\" can't to be null");
+		}
+		Job job = new Job();
+		job.file = file;
+		job.setmembers = setmembers;
+		
+		WavFile wavfile = null;
+		try {
+			if (setmembers != null) {
+				wavfile = new WavFile(file, setmembers);
+			} else {
+				wavfile = new WavFile(file);
+			}
+			wavfile.parseWavHeader();
+			job.channelcount = wavfile.getChannelcount();
+			job.samplecount = (long) wavfile.getSampleCount() * (long) job.channelcount;
+			job.segmentable = wavfile.isSegmentable();
+		} catch (IOException e) {
+			/**
+			 * The error will be displayed by the analysis.
+			 */
+		} finally {
+			if (wavfile != null) {
+				try {
+					wavfile.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		jobs.add(job);
+	}
+	
+	/**
+	 * Analyse all the queued files, and display the expected and the real batch times.
+	 */
+	void process() throws IOException {
+		/**
+		 * The longest first.
+		 */
+		Collections.sort(jobs, new Comparator<Job>() {
+			public int compare(Job job1, Job job2) {
+				if (job1.samplecount > job2.samplecount) {
+					return -1;
+				}
+				if (job1.samplecount < job2.samplecount) {
+					return 1;
+				}
+				return 0;
+			}
+		});
+		
+		long totalsamplecount = 0;
+		for (int pos = 0; pos < jobs.size(); pos++) {
+			totalsamplecount += jobs.get(pos).samplecount;
+		}
+		
+		Job job;
+		for (int pos = 0; pos < jobs.size(); pos++) {
+			job = jobs.get(pos);
+			job.threads = 1;
+			if (totalsamplecount > 0) {
+				/**
+				 * The threads count needed to end this file with the batch share of a worker.
+				 */
+				long neededthreads = (job.samplecount * batch_threads + totalsamplecount - 1) / totalsamplecount;
+				if (job.segmentable) {
+					job.threads = (int) Math.max(1, Math.min(neededthreads, batch_threads));
+				} else {
+					job.threads = (int) Math.max(1, Math.min(neededthreads, Math.min(batch_threads, job.channelcount)));
+				}
+			}
+		}
+		
+		double expectedtime = getScheduleTime(batch_estimated_rate);
+		synchronized (WavFile.currentnumberformat) {
+			System.out.print("Batch:\t");
+			System.out.print(jobs.size());
+			System.out.print(" files, ");
+			System.out.print(batch_threads);
+			System.out.print(" workers, expected ");
+			System.out.print(WavFile.currentnumberformat.format(expectedtime));
+			System.out.println(" sec");
+		}
+		
+		final ConcurrentLinkedQueue<Job> queue = new ConcurrentLinkedQueue<Job>(jobs);
+		long batchstart = System.nanoTime();
+		
+		ExecutorService executor = Executors.newFixedThreadPool(batch_threads);
+		try {
+			ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int pos = 0; pos < batch_threads; pos++) {
+				futures.add(executor.submit(new Callable<Object>() {
+					public Object call() throws Exception {
+						Job job;
+						while ((job = queue.poll()) != null) {
+							analyse(job);
+						}
+						return null;
+					}
+				}));
+			}
+			for (int pos = 0; pos < futures.size(); pos++) {
+				futures.get(pos).get();
+			}
+		} catch (InterruptedException e) {
+			IOException ioe = new IOException("Interrupted during the batch");
+			ioe.initCause(e);
+			throw ioe;
+		} catch (ExecutionException e) {
+			IOException ioe = new IOException("Error during the batch");
+			ioe.initCause(e.getCause());
+			throw ioe;
+		} finally {
+			executor.shutdown();
+		}
+		
+		double batchtime = (double) (System.nanoTime() - batchstart) / 1000000000d;
+		
+		/**
+		 * The same schedule with the real speed: the difference with the real time is the scheduling error, not the speed estimation error.
+		 */
+		double processtime = 0;
+		double threadsamplecount = 0;
+		for (int pos = 0; pos < jobs.size(); pos++) {
+			processtime += (double) jobs.get(pos).processtime / 1000000000d;
+			threadsamplecount += (double) jobs.get(pos).samplecount / (double) jobs.get(pos).threads;
+		}
+		
+		synchronized (WavFile.currentnumberformat) {
+			System.out.print("Batch time:\texpected ");
+			System.out.print(WavFile.currentnumberformat.format(expectedtime));
+			System.out.print(" sec, real ");
+			System.out.print(WavFile.currentnumberformat.format(batchtime));
+			System.out.print(" sec");
+			if ((processtime > 0) & (threadsamplecount > 0)) {
+				System.out.print(", expected with the real speed ");
+				System.out.print(WavFile.currentnumberformat.format(getScheduleTime(threadsamplecount / processtime)));
+				System.out.print(" sec");
+			}
+			System.out.println();
+		}
+	}
+	
+	private static void analyse(Job job) {
+		long start = System.nanoTime();
+		StringBuffer sb = new StringBuffer();
+		sb.append(job.file.getPath());
+		sb.append(WavFile.LINESEPARATOR);
+		try {
+			sb.append(MainClass.analyse(job.file, job.setmembers, job.threads, null));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		job.processtime = System.nanoTime() - start;
+		System.out.print(sb.toString());
+	}
+	
+	/**
+	 * Simulate the schedule: each file (the longest first) goes to the first free worker.
+	 * @param rate worker speed, in samples by second
+	 * @return the batch time (seconds)
+	 */
+	private double getScheduleTime(double rate) {
+		double[] workerend = new double[batch_threads];
+		int firstfree;
+		for (int pos = 0; pos < jobs.size(); pos++) {
+			firstfree = 0;
+			for (int worker = 1; worker < workerend.length; worker++) {
+				if (workerend[worker] < workerend[firstfree]) {
+					firstfree = worker;
+				}
+			}
+			workerend[firstfree] += (double) jobs.get(pos).samplecount / (double) jobs.get(pos).threads / rate;
+		}
+		double batchtime = 0;
+		for (int worker = 0; worker < workerend.length; worker++) {
+			batchtime = Math.max(batchtime, workerend[worker]);
+		}
+		return batchtime;
+	}
+	
+}
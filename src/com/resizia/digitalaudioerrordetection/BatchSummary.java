@@ -0,0 +1,287 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Statistics for all the files of a batch, added at the end of each analysis, with a constant memory:
+ * a peak histogram (1 dB bins), the events counts by type, and the worst files (the most events) in a bounded heap.
+ * The summary report is written at the end of the batch, and after a file end each summary_interval (snapshots).
+ */
+class BatchSummary {
+	
+	/**
+	 * Collect the statistics, and write the summary report.
+	 */
+	static final boolean enabled = ConfigurationProperties.getP("daed.summary", false);
+	
+	private static File summaryfile = ConfigurationProperties.getP("daed.summaryfilename", new File("summary.txt"));
+	
+	/**
+	 * Minimal time between two snapshots (seconds). 0 for only the final report.
+	 */
+	private static int summary_interval = ConfigurationProperties.getP("daed.summary_interval", 0);
+	
+	/**
+	 * Worst files count in the report.
+	 */
+	private static int summary_top = ConfigurationProperties.getP("daed.summary_top", 10);
+	
+	/**
+	 * The lowest peak histogram bin: all the lower peaks, including the silent files.
+	 */
+	private static final int PEAK_HISTOGRAM_MIN = -96;
+	
+	static final String[] EVENT_NAMES = { "Overmodulation", "Digital silence", "Hold", "Click", "Dropout", "Stutter" };
+	
+	private static BatchSummary shared;
+	
+	static synchronized BatchSummary getShared() {
+		if (shared == null) {
+			shared = new BatchSummary();
+		}
+		return shared;
+	}
+	
+	/**
+	 * A worst file.
+	 */
+	private static class FileSummary {
+		String name;
+		int eventcount;
+		double peak_value_dbfs;
+	}
+	
+	/**
+	 * The less bad first: the head is removed when the heap is full.
+	 */
+	private static final Comparator<FileSummary> lessbadfirst = new Comparator<FileSummary>() {
+		public int compare(FileSummary file1, FileSummary file2) {
+			if (file1.eventcount != file2.eventcount) {
+				return file1.eventcount < file2.eventcount ? -1 : 1;
+			}
+			return Double.compare(file1.peak_value_dbfs, file2.peak_value_dbfs);
+		}
+	};
+	
+	private long filecount;
+	private long cancelledfilecount;
+	
+	/**
+	 * Analysed audio, in seconds.
+	 */
+	private double duration;
+	
+	/**
+	 * Files count by peak: index 0 for PEAK_HISTOGRAM_MIN dBFS and less, the last for 0 dBFS.
+	 */
+	private long[] peakhistogram;
+	
+	/**
+	 * By EVENT_NAMES.
+	 */
+	private long[] eventcounts;
+	
+	private PriorityQueue<FileSummary> worstfiles;
+	
+	private long nextsnapshottime;
+	
+	private BatchSummary() {
+		peakhistogram = new long[1 - PEAK_HISTOGRAM_MIN];
+		eventcounts = new long[EVENT_NAMES.length];
+		worstfiles = new PriorityQueue<FileSummary>(Math.max(1, summary_top) + 1, lessbadfirst);
+		nextsnapshottime = System.currentTimeMillis() + summary_interval * 1000l;
+	}
+	
+	/**
+	 * @return the index in EVENT_NAMES, or -1.
+	 */
+	static int getEventType(WavDefaultevent event) {
+		/**
+		 * WavDefaulteventOvermodulation extends WavDefaulteventDigitalsilence.
+		 */
+		if (event instanceof WavDefaulteventOvermodulation) {
+			return 0;
+		} else if (event instanceof WavDefaulteventDigitalsilence) {
+			return 1;
+		} else if (event instanceof WavDefaulteventHold) {
+			return 2;
+		} else if (event instanceof WavDefaulteventClick) {
+			return 3;
+		} else if (event instanceof WavDefaulteventDropout) {
+			return 4;
+		} else if (event instanceof WavDefaulteventStutter) {
+			return 5;
+		}
+		return -1;
+	}
+	
+	/**
+	 * At the end of WavFile.process()
+	 * @param duration analysed audio, in seconds.
+	 */
+	synchronized void addFile(String name, double duration, boolean cancelled, double peak_value_dbfs, List<WavDefaultevent> events) {
+		filecount++;
+		if (cancelled) {
+			cancelledfilecount++;
+		}
+		this.duration += duration;
+		
+		int bin = 0;
+		if (peak_value_dbfs > PEAK_HISTOGRAM_MIN) {
+			bin = Math.min((int) Math.floor(peak_value_dbfs) - PEAK_HISTOGRAM_MIN, peakhistogram.length - 1);
+		}
+		peakhistogram[bin]++;
+		
+		int eventtype;
+		for (int pos = 0; pos < events.size(); pos++) {
+			eventtype = getEventType(events.get(pos));
+			if (eventtype >= 0) {
+				eventcounts[eventtype]++;
+			}
+		}
+		
+		if ((summary_top > 0) & (events.size() > 0)) {
+			FileSummary file = new FileSummary();
+			file.name = name;
+			file.eventcount = events.size();
+			file.peak_value_dbfs = peak_value_dbfs;
+			worstfiles.add(file);
+			if (worstfiles.size() > summary_top) {
+				worstfiles.poll();
+			}
+		}
+		
+		if ((summary_interval > 0) && (System.currentTimeMillis() >= nextsnapshottime)) {
+			try {
+				writeReport(true);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			nextsnapshottime = System.currentTimeMillis() + summary_interval * 1000l;
+		}
+	}
+	
+	/**
+	 * @param fraction between 0 and 1
+	 * @return the low limit (dBFS) of the bin with this files fraction below.
+	 */
+	private int getPeakQuantile(double fraction) {
+		long count = 0;
+		for (int bin = 0; bin < peakhistogram.length; bin++) {
+			count += peakhistogram[bin];
+			if (count > fraction * filecount) {
+				return bin + PEAK_HISTOGRAM_MIN;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Create / overwrite the summary file.
+	 * @param snapshot during the batch.
+	 */
+	synchronized void writeReport(boolean snapshot) throws IOException {
+		PrintStream out = new PrintStream(summaryfile);
+		try {
+			/**
+			 * NumberFormat is shared by the batch workers.
+			 */
+			synchronized (WavFile.currentnumberformat) {
+				printReport(out, snapshot);
+			}
+		} finally {
+			out.close();
+		}
+	}
+	
+	private void printReport(PrintStream out, boolean snapshot) {
+		if (snapshot) {
+			out.print("Snapshot\t");
+		} else {
+			out.print("Summary\t");
+		}
+		out.println(new Date());
+		out.print("File count\t");
+		out.println(filecount);
+		out.print("Cancelled file count\t");
+		out.println(cancelledfilecount);
+		out.print("Audio duration (hours)\t");
+		out.println(WavFile.currentnumberformat.format(duration / 3600d));
+		
+		out.println();
+		for (int pos = 0; pos < EVENT_NAMES.length; pos++) {
+			out.print(EVENT_NAMES[pos]);
+			out.print(" events\t");
+			out.println(eventcounts[pos]);
+		}
+		
+		if (filecount > 0) {
+			out.println();
+			out.print("Peak min (dBFS)\t");
+			out.println(getPeakQuantile(0));
+			out.print("Peak 10% (dBFS)\t");
+			out.println(getPeakQuantile(0.1d));
+			out.print("Peak median (dBFS)\t");
+			out.println(getPeakQuantile(0.5d));
+			out.print("Peak 90% (dBFS)\t");
+			out.println(getPeakQuantile(0.9d));
+			out.println();
+			out.println("Peak (dBFS)\tFile count");
+			for (int bin = 0; bin < peakhistogram.length; bin++) {
+				if (peakhistogram[bin] == 0) {
+					continue;
+				}
+				if (bin == 0) {
+					out.print("<= ");
+				}
+				out.print(bin + PEAK_HISTOGRAM_MIN);
+				out.print("\t");
+				out.println(peakhistogram[bin]);
+			}
+		}
+		
+		if (worstfiles.size() > 0) {
+			out.println();
+			out.println("Worst files\tEvents\tPeak value");
+			ArrayList<FileSummary> files = new ArrayList<FileSummary>(worstfiles);
+			Collections.sort(files, Collections.reverseOrder(lessbadfirst));
+			for (int pos = 0; pos < files.size(); pos++) {
+				out.print(files.get(pos).name);
+				out.print("\t");
+				out.print(files.get(pos).eventcount);
+				out.print("\t");
+				out.println(WavFile.currentnumberformat.format(files.get(pos).peak_value_dbfs));
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,336 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Shared pool of reusable I/O (bytes) and decode (samples) buffers, with a total memory budget.
+ * If the budget is exhausted, a smaller buffer is given (downsize), or the caller wait for a release.
+ */
+public class BufferPool {
+	
+	/**
+	 * Total memory budget (bytes) for all the buffers of the shared pool.
+	 */
+	private static long bufferpool_budget = ConfigurationProperties.getP("daed.bufferpool_budget", 256l * 1024l * 1024l);
+	
+	/**
+	 * Use direct (off-heap) I/O buffers in the shared pool.
+	 */
+	private static boolean bufferpool_direct = ConfigurationProperties.getP("daed.bufferpool_direct", false);
+	
+	private static BufferPool shared;
+	
+	/**
+	 * The pool used by all the analyses.
+	 */
+	public static synchronized BufferPool getShared() {
+		if (shared == null) {
+			shared = new BufferPool(bufferpool_budget, bufferpool_direct);
+		}
+		return shared;
+	}
+	
+	/**
+	 * Max bytes allocated by this pool (free and used buffers).
+	 */
+	private long budget;
+	
+	/**
+	 * Allocate I/O buffers with ByteBuffer.allocateDirect.
+	 */
+	private boolean direct;
+	
+	/**
+	 * Bytes allocated by this pool, free and used buffers.
+	 */
+	private long allocatedbytes;
+	
+	/**
+	 * Bytes actually given to the analyses.
+	 */
+	private long usedbytes;
+	
+	/**
+	 * The most high usedbytes value.
+	 */
+	private long highwatermark;
+	
+	private long requestcount;
+	private long hitcount;
+	private long downsizecount;
+	private long waitcount;
+	
+	private ArrayList<ByteBuffer> freeiobuffers;
+	private ArrayList<int[]> freedecodebuffers;
+	
+	/**
+	 * @param budget in bytes
+	 * @param direct for off-heap I/O buffers
+	 */
+	public BufferPool(long budget, boolean direct) {
+		if (budget < 1) {
+			throw new IllegalArgumentException("Invalid budget: " + budget);
+		}
+		this.budget = budget;
+		this.direct = direct;
+		freeiobuffers = new ArrayList<ByteBuffer>();
+		freedecodebuffers = new ArrayList<int[]>();
+	}
+	
+	/**
+	 * @param preferredsize in bytes
+	 * @param minimumsize in bytes, used if the budget is too short for preferredsize.
+	 * @return a cleared buffer, with a capacity between minimumsize and preferredsize (or more if a bigger free buffer was available).
+	 */
+	public synchronized ByteBuffer acquireIOBuffer(int preferredsize, int minimumsize) throws InterruptedIOException {
+		requestcount++;
+		ByteBuffer buffer;
+		int size;
+		while (true) {
+			buffer = takeFreeIOBuffer(preferredsize);
+			if (buffer != null) {
+				hitcount++;
+				break;
+			}
+			size = getAllocatableSize(preferredsize, minimumsize);
+			if (size > 0) {
+				if (direct) {
+					buffer = ByteBuffer.allocateDirect(size);
+				} else {
+					buffer = ByteBuffer.allocate(size);
+				}
+				allocatedbytes += size;
+				break;
+			}
+			buffer = takeFreeIOBuffer(minimumsize);
+			if (buffer != null) {
+				hitcount++;
+				downsizecount++;
+				break;
+			}
+			waitForRelease();
+		}
+		addUsed(buffer.capacity());
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Don't wait, even if the budget is exhausted.
+	 * @param preferredlength in samples
+	 * @param minimumlength in samples, used if the budget is too short for preferredlength.
+	 */
+	public synchronized int[] acquireDecodeBuffer(int preferredlength, int minimumlength) {
+		requestcount++;
+		int[] buffer = takeFreeDecodeBuffer(preferredlength);
+		if (buffer != null) {
+			hitcount++;
+		} else {
+			int size = getAllocatableSize(preferredlength * 4, minimumlength * 4);
+			if (size > 0) {
+				buffer = new int[size / 4];
+				allocatedbytes += buffer.length * 4;
+			} else {
+				downsizecount++;
+				buffer = takeFreeDecodeBuffer(minimumlength);
+				if (buffer != null) {
+					hitcount++;
+				} else {
+					/**
+					 * Never wait here: the caller already hold its I/O buffer, and wait it would be a deadlock.
+					 * A tiny buffer is allocated, out of the budget.
+					 */
+					buffer = new int[minimumlength];
+					allocatedbytes += buffer.length * 4;
+				}
+			}
+		}
+		addUsed(buffer.length * 4);
+		return buffer;
+	}
+	
+	/**
+	 * Give back a buffer to the pool. Don't use it after.
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		usedbytes -= buffer.capacity();
+		freeiobuffers.add(buffer);
+		notifyAll();
+	}
+	
+	/**
+	 * Give back a buffer to the pool. Don't use it after.
+	 */
+	public synchronized void release(int[] buffer) {
+		if (buffer == null) {
+			return;
+		}
+		usedbytes -= buffer.length * 4;
+		freedecodebuffers.add(buffer);
+		notifyAll();
+	}
+	
+	/**
+	 * The smallest free buffer with this capacity, removed from the free list, or null.
+	 */
+	private ByteBuffer takeFreeIOBuffer(int minimumsize) {
+		int bestpos = -1;
+		for (int pos = 0; pos < freeiobuffers.size(); pos++) {
+			if (freeiobuffers.get(pos).capacity() < minimumsize) {
+				continue;
+			}
+			if ((bestpos == -1) || (freeiobuffers.get(pos).capacity() < freeiobuffers.get(bestpos).capacity())) {
+				bestpos = pos;
+			}
+		}
+		if (bestpos == -1) {
+			return null;
+		}
+		return freeiobuffers.remove(bestpos);
+	}
+	
+	/**
+	 * The smallest free buffer with this length, removed from the free list, or null.
+	 */
+	private int[] takeFreeDecodeBuffer(int minimumlength) {
+		int bestpos = -1;
+		for (int pos = 0; pos < freedecodebuffers.size(); pos++) {
+			if (freedecodebuffers.get(pos).length < minimumlength) {
+				continue;
+			}
+			if ((bestpos == -1) || (freedecodebuffers.get(pos).length < freedecodebuffers.get(bestpos).length)) {
+				bestpos = pos;
+			}
+		}
+		if (bestpos == -1) {
+			return null;
+		}
+		return freedecodebuffers.remove(bestpos);
+	}
+	
+	/**
+	 * Free buffers are dropped if needed to stay in the budget.
+	 * @return the size to allocate (between minimumsize and preferredsize), or 0 if the caller must wait or take a smaller free buffer.
+	 */
+	private int getAllocatableSize(int preferredsize, int minimumsize) {
+		long available = budget - usedbytes;
+		int size;
+		if (available >= preferredsize) {
+			size = preferredsize;
+		} else if (available >= minimumsize) {
+			size = (int) available;
+		} else if (usedbytes == 0) {
+			/**
+			 * Nothing to wait for: the budget is lower than minimumsize.
+			 */
+			size = minimumsize;
+		} else {
+			return 0;
+		}
+		if ((budget - allocatedbytes < size) & (size > minimumsize) & (hasFreeBuffer(minimumsize))) {
+			/**
+			 * Let a smaller free buffer be used, before drop it.
+			 */
+			return 0;
+		}
+		while ((budget - allocatedbytes < size) & ((freeiobuffers.size() + freedecodebuffers.size()) > 0)) {
+			if (freeiobuffers.size() > 0) {
+				allocatedbytes -= freeiobuffers.remove(freeiobuffers.size() - 1).capacity();
+			} else {
+				allocatedbytes -= freedecodebuffers.remove(freedecodebuffers.size() - 1).length * 4;
+			}
+		}
+		return size;
+	}
+	
+	private boolean hasFreeBuffer(int minimumsize) {
+		for (int pos = 0; pos < freeiobuffers.size(); pos++) {
+			if (freeiobuffers.get(pos).capacity() >= minimumsize) {
+				return true;
+			}
+		}
+		for (int pos = 0; pos < freedecodebuffers.size(); pos++) {
+			if (freedecodebuffers.get(pos).length * 4 >= minimumsize) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private void addUsed(int size) {
+		usedbytes += size;
+		if (usedbytes > highwatermark) {
+			highwatermark = usedbytes;
+		}
+	}
+	
+	private void waitForRelease() throws InterruptedIOException {
+		waitcount++;
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during the wait of a free buffer");
+		}
+	}
+	
+	/**
+	 * Ratio of requests served by an already allocated buffer, between 0 and 1.
+	 */
+	public synchronized float getHitRate() {
+		if (requestcount == 0) {
+			return 0f;
+		}
+		return (float) hitcount / (float) requestcount;
+	}
+	
+	/**
+	 * The most high bytes count given to the analyses at the same time.
+	 */
+	public synchronized long getHighWaterMark() {
+		return highwatermark;
+	}
+	
+	public synchronized void printStatistics(PrintStream out) {
+		out.print("Buffer pool:\t");
+		out.print(requestcount);
+		out.print(" requests, hit rate ");
+		out.print(WavFile.currentnumberformat.format(getHitRate() * 100f));
+		out.print(" %, ");
+		out.print(downsizecount);
+		out.print(" downsized, ");
+		out.print(waitcount);
+		out.print(" waits, high-water mark ");
+		out.print(highwatermark / 1024);
+		out.print(" kB, budget ");
+		out.print(budget / 1024);
+		out.println(" kB");
+	}
+	
+}
@@ -0,0 +1,189 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read a file with a buffer from a BufferPool, given back to the pool on close.
+ * Like BufferedInputStream, but the buffer is not allocated for each file.
+ */
+public class BufferedChannelInputStream extends InputStream {
+	
+	/**
+	 * Default size of I/O buffer, if the pool budget is enough.
+	 */
+	public static int io_buffer_size = ConfigurationProperties.getP("daed.io_buffer_size", 10 * 1024 * 1024);
+	
+	/**
+	 * The minimal I/O buffer size, if the pool budget is exhausted.
+	 */
+	public static int io_buffer_minimum_size = ConfigurationProperties.getP("daed.io_buffer_minimum_size", 64 * 1024);
+	
+	private FileInputStream fileinputstream;
+	private FileChannel channel;
+	private BufferPool pool;
+	private ByteBuffer buffer;
+	
+	/**
+	 * Bytes count read from the file.
+	 */
+	private long readbytes;
+	
+	/**
+	 * Time spent in file reads (nanoseconds), only if AnalysisMetrics is enabled.
+	 */
+	private long iowaittime;
+	
+	public BufferedChannelInputStream(FileInputStream fileinputstream, BufferPool pool) throws IOException {
+		this.fileinputstream = fileinputstream;
+		this.pool = pool;
+		if (fileinputstream == null) {
+			throw new NullPointerException("\"fileinputstream\" can't to be null");
+		}
+		if (pool == null) {
+			throw new NullPointerException("\"pool\" can't to be null");
+		}
+		channel = fileinputstream.getChannel();
+		buffer = pool.acquireIOBuffer(io_buffer_size, io_buffer_minimum_size);
+		/**
+		 * Nothing to read for the moment.
+		 */
+		buffer.limit(0);
+	}
+	
+	/**
+	 * @return false if the end of file is reached.
+	 */
+	private boolean fill() throws IOException {
+		if (buffer == null) {
+			throw new IOException("Stream closed");
+		}
+		buffer.clear();
+		long start = 0;
+		if (AnalysisMetrics.enabled) {
+			start = System.nanoTime();
+		}
+		int count = 0;
+		while (count == 0) {
+			count = channel.read(buffer);
+		}
+		if (AnalysisMetrics.enabled) {
+			iowaittime += System.nanoTime() - start;
+		}
+		buffer.flip();
+		if (count > 0) {
+			readbytes += count;
+		}
+		return count > 0;
+	}
+	
+	public int read() throws IOException {
+		if (buffer.hasRemaining() == false) {
+			if (fill() == false) {
+				return -1;
+			}
+		}
+		return buffer.get() & 0xFF;
+	}
+	
+	/**
+	 * Read len bytes, less only if the end of file is reached.
+	 */
+	public int read(byte b[], int off, int len) throws IOException {
+		int total = 0;
+		int count;
+		while (total < len) {
+			if (buffer.hasRemaining() == false) {
+				if (fill() == false) {
+					break;
+				}
+			}
+			count = Math.min(len - total, buffer.remaining());
+			buffer.get(b, off + total, count);
+			total += count;
+		}
+		if ((total == 0) & (len > 0)) {
+			return -1;
+		}
+		return total;
+	}
+	
+	/**
+	 * Skip in buffer, or move the file position if it's after the buffer.
+	 */
+	public long skip(long n) throws IOException {
+		if (n <= 0) {
+			return 0;
+		}
+		if (n <= buffer.remaining()) {
+			buffer.position(buffer.position() + (int) n);
+			return n;
+		}
+		long outofbuffer = n - buffer.remaining();
+		buffer.position(buffer.limit());
+		channel.position(channel.position() + outofbuffer);
+		return n;
+	}
+	
+	public int available() throws IOException {
+		return buffer.remaining();
+	}
+	
+	/**
+	 * Position in file of the next byte to read.
+	 */
+	public long getPosition() throws IOException {
+		return channel.position() - buffer.remaining();
+	}
+	
+	public long getReadBytes() {
+		return readbytes;
+	}
+	
+	/**
+	 * @return nanoseconds, always 0 if AnalysisMetrics is disabled.
+	 */
+	public long getIOWaitTime() {
+		return iowaittime;
+	}
+	
+	/**
+	 * Close the file, and give back the buffer to the pool.
+	 */
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			fileinputstream.close();
+		} finally {
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+	
+}
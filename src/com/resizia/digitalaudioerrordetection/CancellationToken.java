@@ -0,0 +1,59 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+/**
+ * Ask a running analysis to stop cleanly. It's tested between two blocks by WavFile.process(), and partial results can be written.
+ * Can be shared by several analyses, and cancelled by an another thread.
+ */
+public class CancellationToken {
+	
+	private volatile boolean cancelled;
+	
+	/**
+	 * System.currentTimeMillis() limit, or 0.
+	 */
+	private volatile long deadline;
+	
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Cancel automatically after this time.
+	 * @param timeout in milliseconds
+	 */
+	public void cancelAfter(long timeout) {
+		deadline = System.currentTimeMillis() + timeout;
+	}
+	
+	public boolean isCancelled() {
+		if (cancelled) {
+			return true;
+		}
+		if ((deadline > 0) && (System.currentTimeMillis() > deadline)) {
+			cancelled = true;
+		}
+		return cancelled;
+	}
+	
+}
@@ -68,6 +68,10 @@ public class ConfigurationProperties {
 		}
 	}
 	
+	public static boolean getP(String name, boolean defaultvalue) {
+		return Boolean.parseBoolean(System.getProperty(name, String.valueOf(defaultvalue)));
+	}
+	
 	/**
 	 * Don't test if file exists.
 	 */
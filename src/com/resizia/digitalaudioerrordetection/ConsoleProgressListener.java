@@ -0,0 +1,57 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.PrintStream;
+
+/**
+ * Display the progress on a text line.
+ */
+public class ConsoleProgressListener implements ProgressListener {
+	
+	private PrintStream out;
+	
+	public ConsoleProgressListener(PrintStream out) {
+		this.out = out;
+		if (out == null) {
+			throw new NullPointerException("\"out\" can't to be null");
+		}
+	}
+	
+	public void onProgress(WavFile wavfile, float fraction, double samplespersecond, float eta) {
+		StringBuffer sb = new StringBuffer();
+		/**
+		 * NumberFormat is not thread safe, and shared by the batch workers.
+		 */
+		synchronized (WavFile.currentnumberformat) {
+			sb.append("Progress\t");
+			sb.append(WavFile.currentnumberformat.format(fraction * 100f));
+			sb.append(" %\t");
+			sb.append(WavFile.currentnumberformat.format(samplespersecond / 1000000d));
+			sb.append(" Msamples/s\tETA ");
+			sb.append(WavFile.currentnumberformat.format(eta));
+			sb.append(" sec");
+		}
+		out.println(sb.toString());
+	}
+	
+}
@@ -0,0 +1,470 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileLock;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Append only binary store of the events of all the analysed files, in a directory, for the queries on a whole archive.
+ * "events.dat" : the events of a file after the events of the previous file, sorted by type and position. Fixed size records:
+ * position (8 bytes), level (4 bytes, float dBFS, NaN if none), channel (2 bytes), type (1 byte, BatchSummary.EVENT_NAMES index), 1 reserved byte.
+ * "files.idx" : an entry by file, after its events, with the events offset and the events count by type.
+ * A query reads all the index, and only the events of the matching files and types.
+ * A store is written by one process at a time (store.lock).
+ */
+class EventStore {
+	
+	/**
+	 * The store directory, or null for don't store the events.
+	 */
+	static final File eventstore = ConfigurationProperties.getP("daed.eventstore", (File) null);
+	
+	static final int RECORD_SIZE = 16;
+	
+	private static EventStore shared;
+	
+	/**
+	 * Open the store at the first call.
+	 */
+	static synchronized EventStore getShared() throws IOException {
+		if (shared == null) {
+			shared = new EventStore(eventstore);
+		}
+		return shared;
+	}
+	
+	/**
+	 * Close the shared store, if opened.
+	 */
+	static synchronized void closeShared() throws IOException {
+		if (shared != null) {
+			shared.close();
+			shared = null;
+		}
+	}
+	
+	/**
+	 * An entry of files.idx.
+	 */
+	private static class FileEntry {
+		int fileid;
+		long eventsoffset;
+		int[] eventcounts;
+		int freq;
+		double duration;
+		boolean cancelled;
+		
+		/**
+		 * System.currentTimeMillis() at the analysis.
+		 */
+		long date;
+		String path;
+		
+		/**
+		 * Events offset of a type.
+		 */
+		long getOffset(int eventtype) {
+			long offset = eventsoffset;
+			for (int pos = 0; pos < eventtype; pos++) {
+				offset += (long) eventcounts[pos] * RECORD_SIZE;
+			}
+			return offset;
+		}
+		
+		/**
+		 * @param eventtype -1 for all the types.
+		 */
+		int getCount(int eventtype) {
+			if (eventtype >= 0) {
+				return eventcounts[eventtype];
+			}
+			int count = 0;
+			for (int pos = 0; pos < eventcounts.length; pos++) {
+				count += eventcounts[pos];
+			}
+			return count;
+		}
+	}
+	
+	private FileOutputStream lockout;
+	private FileLock lock;
+	private DataOutputStream eventsout;
+	private FileOutputStream indexout;
+	
+	private long eventslength;
+	private int nextfileid;
+	
+	private EventStore(File directory) throws IOException {
+		if (directory == null) {
+			throw new NullPointerException("\"directory\" can't to be null");
+		}
+		directory.mkdirs();
+		lockout = new FileOutputStream(new File(directory, "store.lock"));
+		lock = lockout.getChannel().tryLock();
+		if (lock == null) {
+			lockout.close();
+			throw new IOException("Event store is used by an another process: " + directory.getPath());
+		}
+		
+		/**
+		 * After a crash, the incomplete index entry is removed. The events without index entry are never read.
+		 */
+		File indexfile = new File(directory, "files.idx");
+		ArrayList<FileEntry> entries = new ArrayList<FileEntry>();
+		long indexlength = readIndex(indexfile, entries);
+		if (indexfile.exists() && (indexfile.length() > indexlength)) {
+			RandomAccessFile truncated = new RandomAccessFile(indexfile, "rw");
+			try {
+				truncated.setLength(indexlength);
+			} finally {
+				truncated.close();
+			}
+		}
+		nextfileid = entries.size();
+		
+		File eventsfile = new File(directory, "events.dat");
+		eventslength = eventsfile.length();
+		eventsout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(eventsfile, true)));
+		indexout = new FileOutputStream(indexfile, true);
+	}
+	
+	/**
+	 * @return the length of the complete entries.
+	 */
+	private static long readIndex(File indexfile, List<FileEntry> entries) throws IOException {
+		if (indexfile.exists() == false) {
+			return 0;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexfile)));
+		long length = 0;
+		try {
+			int entrysize;
+			byte[] entry;
+			while (true) {
+				try {
+					entrysize = in.readInt();
+					entry = new byte[entrysize];
+					in.readFully(entry);
+				} catch (EOFException e) {
+					break;
+				}
+				entries.add(parseEntry(entry));
+				length += 4 + entrysize;
+			}
+		} finally {
+			in.close();
+		}
+		return length;
+	}
+	
+	private static FileEntry parseEntry(byte[] entry) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+		FileEntry fileentry = new FileEntry();
+		fileentry.fileid = in.readInt();
+		fileentry.eventsoffset = in.readLong();
+		fileentry.eventcounts = new int[in.readUnsignedByte()];
+		for (int pos = 0; pos < fileentry.eventcounts.length; pos++) {
+			fileentry.eventcounts[pos] = in.readInt();
+		}
+		fileentry.freq = in.readInt();
+		fileentry.duration = in.readDouble();
+		fileentry.cancelled = in.readBoolean();
+		fileentry.date = in.readLong();
+		fileentry.path = in.readUTF();
+		return fileentry;
+	}
+	
+	/**
+	 * Append the events of an analysed file, after WavFile.process().
+	 * @param duration analysed audio, in seconds.
+	 */
+	synchronized void add(String path, int freq, double duration, boolean cancelled, List<WavDefaultevent> events) throws IOException {
+		ArrayList<WavDefaultevent> sortedevents = new ArrayList<WavDefaultevent>(events);
+		Collections.sort(sortedevents, new Comparator<WavDefaultevent>() {
+			public int compare(WavDefaultevent event1, WavDefaultevent event2) {
+				int type1 = BatchSummary.getEventType(event1);
+				int type2 = BatchSummary.getEventType(event2);
+				if (type1 != type2) {
+					return type1 < type2 ? -1 : 1;
+				}
+				if (event1.getPosition() != event2.getPosition()) {
+					return event1.getPosition() < event2.getPosition() ? -1 : 1;
+				}
+				return 0;
+			}
+		});
+		
+		FileEntry fileentry = new FileEntry();
+		fileentry.fileid = nextfileid;
+		fileentry.eventsoffset = eventslength;
+		fileentry.eventcounts = new int[BatchSummary.EVENT_NAMES.length];
+		
+		WavDefaultevent event;
+		int eventtype;
+		float level;
+		for (int pos = 0; pos < sortedevents.size(); pos++) {
+			event = sortedevents.get(pos);
+			eventtype = BatchSummary.getEventType(event);
+			if (eventtype < 0) {
+				continue;
+			}
+			level = Float.NaN;
+			if (event instanceof WavDefaulteventHold) {
+				level = (float) ((WavDefaulteventHold) event).getLevel();
+			} else if (event instanceof WavDefaulteventOvermodulation) {
+				level = 0f;
+			}
+			eventsout.writeLong(event.getPosition());
+			eventsout.writeFloat(level);
+			eventsout.writeShort(event.getChannel());
+			eventsout.writeByte(eventtype);
+			eventsout.writeByte(0);
+			fileentry.eventcounts[eventtype]++;
+			eventslength += RECORD_SIZE;
+		}
+		/**
+		 * The events are on disk before their index entry.
+		 */
+		eventsout.flush();
+		
+		ByteArrayOutputStream entry = new ByteArrayOutputStream();
+		DataOutputStream entryout = new DataOutputStream(entry);
+		entryout.writeInt(fileentry.fileid);
+		entryout.writeLong(fileentry.eventsoffset);
+		entryout.writeByte(fileentry.eventcounts.length);
+		for (int pos = 0; pos < fileentry.eventcounts.length; pos++) {
+			entryout.writeInt(fileentry.eventcounts[pos]);
+		}
+		entryout.writeInt(freq);
+		entryout.writeDouble(duration);
+		entryout.writeBoolean(cancelled);
+		entryout.writeLong(System.currentTimeMillis());
+		entryout.writeUTF(path);
+		entryout.flush();
+		
+		DataOutputStream indexdataout = new DataOutputStream(indexout);
+		indexdataout.writeInt(entry.size());
+		indexdataout.write(entry.toByteArray());
+		indexdataout.flush();
+		nextfileid++;
+	}
+	
+	synchronized void close() throws IOException {
+		try {
+			eventsout.close();
+			indexout.close();
+		} finally {
+			lock.release();
+			lockout.close();
+		}
+	}
+	
+	/**
+	 * Only this type (a BatchSummary.EVENT_NAMES value), or all.
+	 */
+	private static String query_type = ConfigurationProperties.getP("daed.query_type", "");
+	
+	/**
+	 * Only the files with more events (of query_type) by minute.
+	 */
+	private static float query_min_per_minute = ConfigurationProperties.getP("daed.query_min_per_minute", 0f);
+	
+	/**
+	 * Only the events with a level (dBFS), more high. This reads the events of the matching files.
+	 */
+	private static float query_min_level = ConfigurationProperties.getP("daed.query_min_level", Float.NEGATIVE_INFINITY);
+	
+	/**
+	 * Only the files with this text in their path.
+	 */
+	private static String query_path = ConfigurationProperties.getP("daed.query_path", "");
+	
+	/**
+	 * Only the files analysed from this date (yyyy-MM-dd).
+	 */
+	private static String query_since = ConfigurationProperties.getP("daed.query_since", "");
+	
+	/**
+	 * Display each matching event, not only the counts by file.
+	 */
+	private static boolean query_events = ConfigurationProperties.getP("daed.query_events", false);
+	
+	/**
+	 * @param level NaN for the events without level: they don't match a query_min_level.
+	 */
+	private static boolean isLevelMatching(float level) {
+		if (query_min_level == Float.NEGATIVE_INFINITY) {
+			return true;
+		}
+		return level >= query_min_level;
+	}
+	
+	/**
+	 * Filter the files with the index, read only the events needed by the level filter or the events list, and display the counts.
+	 */
+	static void query(File directory, PrintStream out) throws IOException {
+		if (directory == null) {
+			throw new NullPointerException("\"directory\" can't to be null");
+		}
+		int eventtype = -1;
+		if (query_type.equals("") == false) {
+			for (int pos = 0; pos < BatchSummary.EVENT_NAMES.length; pos++) {
+				if (BatchSummary.EVENT_NAMES[pos].replace(" ", "").equalsIgnoreCase(query_type.replace(" ", ""))) {
+					eventtype = pos;
+				}
+			}
+			if (eventtype < 0) {
+				throw new IllegalArgumentException("Invalid query_type: " + query_type);
+			}
+		}
+		long since = 0;
+		if (query_since.equals("") == false) {
+			try {
+				since = new SimpleDateFormat("yyyy-MM-dd").parse(query_since).getTime();
+			} catch (ParseException e) {
+				throw new IllegalArgumentException("Invalid query_since: " + query_since);
+			}
+		}
+		boolean readevents = query_events | (query_min_level > Float.NEGATIVE_INFINITY);
+		
+		ArrayList<FileEntry> entries = new ArrayList<FileEntry>();
+		readIndex(new File(directory, "files.idx"), entries);
+		
+		RandomAccessFile events = null;
+		if (readevents) {
+			events = new RandomAccessFile(new File(directory, "events.dat"), "r");
+		}
+		
+		long matchingfiles = 0;
+		long matchingevents = 0;
+		long readbytes = 0;
+		try {
+			FileEntry entry;
+			int count;
+			int recordcount;
+			byte[] records = new byte[0];
+			ByteBuffer recordbuffer;
+			float level;
+			for (int pos = 0; pos < entries.size(); pos++) {
+				entry = entries.get(pos);
+				if ((entry.date < since) | (entry.path.indexOf(query_path) < 0)) {
+					continue;
+				}
+				count = entry.getCount(eventtype);
+				if ((count == 0) | (count < query_min_per_minute * entry.duration / 60d)) {
+					continue;
+				}
+				
+				if (readevents) {
+					/**
+					 * Only the records of the type, consecutive in the file events.
+					 */
+					recordcount = count;
+					if (records.length < recordcount * RECORD_SIZE) {
+						records = new byte[recordcount * RECORD_SIZE];
+					}
+					events.seek(entry.getOffset(Math.max(eventtype, 0)));
+					events.readFully(records, 0, recordcount * RECORD_SIZE);
+					readbytes += recordcount * RECORD_SIZE;
+					recordbuffer = ByteBuffer.wrap(records);
+					
+					count = 0;
+					for (int record = 0; record < recordcount; record++) {
+						if (isLevelMatching(recordbuffer.getFloat(record * RECORD_SIZE + 8))) {
+							count++;
+						}
+					}
+					if ((count == 0) | (count < query_min_per_minute * entry.duration / 60d)) {
+						continue;
+					}
+					
+					/**
+					 * Only the events of the matching files, after the count.
+					 */
+					for (int record = 0; (record < recordcount) & query_events; record++) {
+						level = recordbuffer.getFloat(record * RECORD_SIZE + 8);
+						if (isLevelMatching(level) == false) {
+							continue;
+						}
+						out.print(entry.path);
+						out.print("\t");
+						out.print(BatchSummary.EVENT_NAMES[recordbuffer.get(record * RECORD_SIZE + 14)]);
+						out.print("\t");
+						out.print(recordbuffer.getLong(record * RECORD_SIZE));
+						out.print("\t");
+						out.print(recordbuffer.getShort(record * RECORD_SIZE + 12));
+						if (Float.isNaN(level) == false) {
+							out.print("\t");
+							out.print(WavFile.currentnumberformat.format(level));
+						}
+						out.println();
+					}
+				}
+				
+				matchingfiles++;
+				matchingevents += count;
+				if (query_events == false) {
+					out.print(entry.path);
+					out.print("\t");
+					out.print(count);
+					out.print("\t");
+					out.println(WavFile.currentnumberformat.format(count * 60d / entry.duration));
+				}
+			}
+		} finally {
+			if (events != null) {
+				events.close();
+			}
+		}
+		
+		out.print("Query:\t");
+		out.print(matchingfiles);
+		out.print(" / ");
+		out.print(entries.size());
+		out.print(" files, ");
+		out.print(matchingevents);
+		out.print(" events, ");
+		out.print(readbytes);
+		out.println(" bytes of events read");
+	}
+	
+}
@@ -0,0 +1,517 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming FLAC decoder, read like a wav data chunk with readSamples(), without temporary file.
+ * The frames are cut in segments, decoded in parallel in the segments order. The frames ends are found with the frames CRC-16, so the seek table is only used for resume.
+ * @see http://xiph.org/flac/format.html
+ */
+class FlacDecoder {
+	
+	/**
+	 * Segments decoded in parallel.
+	 */
+	private static int flac_threads = ConfigurationProperties.getP("daed.flac_threads", Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Frames bytes size for a segment.
+	 */
+	private static int flac_segment_size = ConfigurationProperties.getP("daed.flac_segment_size", 256 * 1024);
+	
+	private static final int METADATA_STREAMINFO = 0;
+	private static final int METADATA_SEEKTABLE = 3;
+	
+	private InputStream in;
+	
+	private int channelcount;
+	private int freq;
+	private int bitspersample;
+	
+	/**
+	 * Samples count for one channel, 0 if unknown.
+	 */
+	private long totalsamples;
+	
+	/**
+	 * Seek points, in samples for one channel, and in bytes from the first frame.
+	 */
+	private long[] seekpointsamples;
+	private long[] seekpointoffsets;
+	
+	/**
+	 * Read bytes, between the frames.
+	 */
+	private byte[] readbuffer;
+	private int readpos;
+	private int readlimit;
+	private boolean endofstream;
+	
+	/**
+	 * readbuffer position in the stream, from the first frame.
+	 */
+	private long readbufferoffset;
+	
+	/**
+	 * All the frames are in segments.
+	 */
+	private boolean endofframes;
+	
+	private int[] header;
+	
+	private ExecutorService executor;
+	
+	/**
+	 * Segments read, in decode.
+	 */
+	private LinkedList<FlacSegment> pendingsegments;
+	private LinkedList<Future<Object>> pendingresults;
+	private int maxpendingsegments;
+	
+	/**
+	 * Decoded segments, for reuse.
+	 */
+	private ArrayList<FlacSegment> freesegments;
+	
+	/**
+	 * The segment read by readSamples.
+	 */
+	private FlacSegment currentsegment;
+	private int currentsegmentpos;
+	
+	/**
+	 * Optional, get the samples (in wav little endian bytes) read by readSamples.
+	 */
+	private WavChecksum checksum;
+	private byte[] checksumbuffer;
+	
+	FlacDecoder(InputStream in) {
+		if (in == null) {
+			throw new NullPointerException("\"in\" can't to be null");
+		}
+		this.in = in;
+		readbuffer = new byte[64 * 1024];
+		header = new int[3];
+		pendingsegments = new LinkedList<FlacSegment>();
+		pendingresults = new LinkedList<Future<Object>>();
+		freesegments = new ArrayList<FlacSegment>();
+		checksumbuffer = new byte[0];
+	}
+	
+	/**
+	 * Read the metadata blocks, and position to the first frame. The 4 first bytes ("fLaC") are already read.
+	 */
+	void parseHeader() throws IOException {
+		boolean lastblock = false;
+		int type;
+		int length;
+		byte[] block;
+		while (lastblock == false) {
+			if (fill(4) == false) {
+				throw new EOFException("FLAC metadata is truncated");
+			}
+			lastblock = (readbuffer[readpos] & 0x80) != 0;
+			type = readbuffer[readpos] & 0x7F;
+			length = ((readbuffer[readpos + 1] & 0xFF) << 16) | ((readbuffer[readpos + 2] & 0xFF) << 8) | (readbuffer[readpos + 3] & 0xFF);
+			readpos += 4;
+			
+			if ((type == METADATA_STREAMINFO) | (type == METADATA_SEEKTABLE)) {
+				block = new byte[length];
+				for (int pos = 0; pos < length; pos++) {
+					if (fill(1) == false) {
+						throw new EOFException("FLAC metadata is truncated");
+					}
+					block[pos] = readbuffer[readpos];
+					readpos++;
+				}
+				if (type == METADATA_STREAMINFO) {
+					parseStreaminfo(block);
+				} else {
+					parseSeektable(block);
+				}
+			} else {
+				/**
+				 * The rest : VORBIS_COMMENT, PICTURE, PADDING...
+				 */
+				skip(length);
+			}
+		}
+		if (channelcount == 0) {
+			throw new IOException("No FLAC STREAMINFO");
+		}
+		if ((bitspersample < 8) | (bitspersample > 24)) {
+			throw new IOException("Unsupported FLAC sample size: " + bitspersample);
+		}
+		
+		readbufferoffset = -readpos;
+		maxpendingsegments = Math.max(1, flac_threads * 2);
+	}
+	
+	private void parseStreaminfo(byte[] block) throws IOException {
+		if (block.length < 34) {
+			throw new IOException("Invalid FLAC STREAMINFO");
+		}
+		/**
+		 * Min and max block sizes (2 x 16 bits), min and max frame sizes (2 x 24 bits), sample rate (20 bits), channels - 1 (3 bits), bits per sample - 1 (5 bits), total samples (36 bits), MD5.
+		 */
+		freq = ((block[10] & 0xFF) << 12) | ((block[11] & 0xFF) << 4) | ((block[12] & 0xF0) >> 4);
+		channelcount = ((block[12] & 0x0E) >> 1) + 1;
+		bitspersample = (((block[12] & 0x01) << 4) | ((block[13] & 0xF0) >> 4)) + 1;
+		totalsamples = ((long) (block[13] & 0x0F) << 32) | ((long) (block[14] & 0xFF) << 24) | ((block[15] & 0xFF) << 16) | ((block[16] & 0xFF) << 8) | (block[17] & 0xFF);
+	}
+	
+	private void parseSeektable(byte[] block) {
+		int count = block.length / 18;
+		seekpointsamples = new long[count];
+		seekpointoffsets = new long[count];
+		for (int pos = 0; pos < count; pos++) {
+			seekpointsamples[pos] = getLong(block, pos * 18);
+			seekpointoffsets[pos] = getLong(block, pos * 18 + 8);
+		}
+	}
+	
+	/**
+	 * Big endian.
+	 */
+	private static long getLong(byte[] b, int pos) {
+		long value = 0;
+		for (int pos2 = pos; pos2 < pos + 8; pos2++) {
+			value = (value << 8) | (b[pos2] & 0xFF);
+		}
+		return value;
+	}
+	
+	int getChannelcount() {
+		return channelcount;
+	}
+	
+	int getFreq() {
+		return freq;
+	}
+	
+	int getBitspersample() {
+		return bitspersample;
+	}
+	
+	/**
+	 * @return samples count for one channel, 0 if unknown.
+	 */
+	long getTotalsamples() {
+		return totalsamples;
+	}
+	
+	void setChecksum(WavChecksum checksum) {
+		this.checksum = checksum;
+	}
+	
+	/**
+	 * Keep count bytes or more in readbuffer, if possible.
+	 * @return false if there is not enough bytes before the end of stream.
+	 */
+	private boolean fill(int count) throws IOException {
+		if (readlimit - readpos >= count) {
+			return true;
+		}
+		if (readpos > 0) {
+			System.arraycopy(readbuffer, readpos, readbuffer, 0, readlimit - readpos);
+			readbufferoffset += readpos;
+			readlimit -= readpos;
+			readpos = 0;
+		}
+		int read;
+		while ((readlimit < readbuffer.length) & (endofstream == false)) {
+			read = in.read(readbuffer, readlimit, readbuffer.length - readlimit);
+			if (read < 0) {
+				endofstream = true;
+			} else {
+				readlimit += read;
+			}
+		}
+		return readlimit - readpos >= count;
+	}
+	
+	private void skip(long count) throws IOException {
+		int available = (int) Math.min(count, readlimit - readpos);
+		readpos += available;
+		count -= available;
+		long skipped;
+		while (count > 0) {
+			skipped = in.skip(count);
+			if (skipped <= 0) {
+				throw new EOFException("FLAC stream is truncated");
+			}
+			readbufferoffset += skipped;
+			count -= skipped;
+		}
+	}
+	
+	/**
+	 * Add the next frame to the segment. Its end is the next valid frame header, just after a null CRC-16, or the end of stream.
+	 * At the end of stream, the bytes after the last null CRC-16 are not a frame (tag), and a frame without null CRC-16 is truncated.
+	 * @return false if there is no more frame.
+	 */
+	private boolean readFrame(FlacSegment segment) throws IOException {
+		if (fill(FlacSegment.FRAME_HEADER_MAX_SIZE) == false) {
+			if (readpos == readlimit) {
+				return false;
+			}
+		}
+		int headersize = FlacSegment.readFrameHeader(readbuffer, readpos, readlimit, header);
+		if (headersize == -1) {
+			throw new IOException("Invalid FLAC frame header at " + (readbufferoffset + readpos));
+		}
+		int blocksize = header[0];
+		segment.startFrame(blocksize);
+		
+		/**
+		 * The frame bytes in the segment, and the frame size with a null CRC-16.
+		 */
+		int framelength = 0;
+		int validframelength = -1;
+		
+		int crc = 0;
+		int scanpos = readpos;
+		for (; scanpos < readpos + headersize; scanpos++) {
+			crc = FlacSegment.updateCRC16(crc, readbuffer[scanpos]);
+		}
+		byte[] b = readbuffer;
+		while (true) {
+			if ((readlimit - scanpos < FlacSegment.FRAME_HEADER_MAX_SIZE) & (endofstream == false)) {
+				segment.append(readbuffer, readpos, scanpos - readpos);
+				framelength += scanpos - readpos;
+				readpos = scanpos;
+				fill(readbuffer.length);
+				scanpos = readpos;
+			}
+			if (scanpos == readlimit) {
+				segment.append(readbuffer, readpos, scanpos - readpos);
+				framelength += scanpos - readpos;
+				readpos = scanpos;
+				if (crc == 0) {
+					return true;
+				}
+				if (validframelength > 0) {
+					segment.cutFrame(validframelength);
+					return true;
+				}
+				segment.cancelFrame(blocksize);
+				return false;
+			}
+			if ((b[scanpos] == (byte) 0xFF) & (crc == 0)) {
+				if (FlacSegment.readFrameHeader(b, scanpos, readlimit, header) != -1) {
+					if (FlacSegment.getChannelcount(header[1]) == channelcount) {
+						break;
+					}
+				}
+			}
+			crc = FlacSegment.updateCRC16(crc, b[scanpos]);
+			scanpos++;
+			if (crc == 0) {
+				validframelength = framelength + scanpos - readpos;
+			}
+		}
+		segment.append(readbuffer, readpos, scanpos - readpos);
+		readpos = scanpos;
+		return true;
+	}
+	
+	/**
+	 * Read the next segments, up to maxpendingsegments, and start their decoding.
+	 */
+	private void queueSegments() throws IOException {
+		FlacSegment segment;
+		while ((pendingsegments.size() < maxpendingsegments) & (endofframes == false)) {
+			if (freesegments.isEmpty()) {
+				segment = new FlacSegment(channelcount, bitspersample);
+			} else {
+				segment = freesegments.remove(freesegments.size() - 1);
+			}
+			segment.reset();
+			while (segment.getDatalength() < flac_segment_size) {
+				if (readFrame(segment) == false) {
+					endofframes = true;
+					break;
+				}
+			}
+			if (segment.getFramecount() == 0) {
+				freesegments.add(segment);
+				break;
+			}
+			pendingsegments.add(segment);
+			if (executor != null) {
+				pendingresults.add(executor.submit(segment));
+			}
+		}
+	}
+	
+	/**
+	 * @return false at the end of stream.
+	 */
+	private boolean nextSegment() throws IOException {
+		if (currentsegment != null) {
+			freesegments.add(currentsegment);
+			currentsegment = null;
+		}
+		if ((executor == null) & (flac_threads > 1)) {
+			executor = Executors.newFixedThreadPool(flac_threads);
+		}
+		queueSegments();
+		if (pendingsegments.isEmpty()) {
+			return false;
+		}
+		FlacSegment segment = pendingsegments.removeFirst();
+		if (executor == null) {
+			segment.call();
+		} else {
+			try {
+				pendingresults.removeFirst().get();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted during the FLAC decoding");
+			} catch (ExecutionException e) {
+				IOException ioe = new IOException("Error during the FLAC decoding");
+				ioe.initCause(e.getCause());
+				throw ioe;
+			}
+		}
+		currentsegment = segment;
+		currentsegmentpos = 0;
+		
+		/**
+		 * Keep the threads busy during the current segment reading.
+		 */
+		queueSegments();
+		return true;
+	}
+	
+	/**
+	 * Like DataInputSteamLittleEndian.readSamples.
+	 * @return the decoded samples count, lower than count only if the end of stream is reached.
+	 */
+	int readSamples(int[] dest, int offset, int count) throws IOException {
+		int n = 0;
+		int length;
+		while (n < count) {
+			if ((currentsegment == null) || (currentsegmentpos == currentsegment.samplecount)) {
+				if (nextSegment() == false) {
+					break;
+				}
+			}
+			length = Math.min(count - n, currentsegment.samplecount - currentsegmentpos);
+			System.arraycopy(currentsegment.samples, currentsegmentpos, dest, offset + n, length);
+			currentsegmentpos += length;
+			n += length;
+		}
+		if (checksum != null) {
+			updateChecksum(dest, offset, n);
+		}
+		return n;
+	}
+	
+	/**
+	 * The checksums are the ones of the same samples in a wav data chunk.
+	 */
+	private void updateChecksum(int[] samples, int offset, int count) throws IOException {
+		int samplesize = (bitspersample + 7) / 8;
+		if (checksumbuffer.length < count * samplesize) {
+			checksumbuffer = new byte[count * samplesize];
+		}
+		byte[] b = checksumbuffer;
+		int bpos = 0;
+		int value;
+		for (int pos = offset; pos < offset + count; pos++) {
+			value = samples[pos];
+			if (samplesize == 1) {
+				/**
+				 * 8b wav samples are unsigned.
+				 */
+				b[bpos] = (byte) ((value >> 24) + 128);
+			} else if (samplesize == 2) {
+				b[bpos] = (byte) (value >> 16);
+				b[bpos + 1] = (byte) (value >> 24);
+			} else {
+				b[bpos] = (byte) (value >> 8);
+				b[bpos + 1] = (byte) (value >> 16);
+				b[bpos + 2] = (byte) (value >> 24);
+			}
+			bpos += samplesize;
+		}
+		checksum.update(b, 0, bpos);
+	}
+	
+	/**
+	 * Go to a sample (all channels), before the first readSamples. Without checksum, jump to the last seek point before it.
+	 */
+	void skipSamples(long count) throws IOException {
+		long target = count / channelcount;
+		long start = 0;
+		if ((checksum == null) & (seekpointsamples != null)) {
+			long offset = 0;
+			for (int pos = 0; pos < seekpointsamples.length; pos++) {
+				/**
+				 * Placeholder points are -1 (0xFFFFFFFFFFFFFFFF).
+				 */
+				if ((seekpointsamples[pos] >= start) & (seekpointsamples[pos] <= target)) {
+					start = seekpointsamples[pos];
+					offset = seekpointoffsets[pos];
+				}
+			}
+			if (offset > readbufferoffset + readpos) {
+				skip(offset - (readbufferoffset + readpos));
+			} else {
+				start = 0;
+			}
+		}
+		
+		long remaining = count - start * channelcount;
+		int[] buffer = new int[(int) Math.min(remaining, 64 * 1024)];
+		int read;
+		while (remaining > 0) {
+			read = readSamples(buffer, 0, (int) Math.min(remaining, buffer.length));
+			if (read == 0) {
+				throw new EOFException("FLAC stream is truncated");
+			}
+			remaining -= read;
+		}
+	}
+	
+	/**
+	 * Stop the decoding threads.
+	 */
+	void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+	
+}
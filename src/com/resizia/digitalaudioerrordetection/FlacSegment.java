@@ -0,0 +1,624 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Some consecutive FLAC frames, decoded together. The frames are independent: the segments can be decoded in parallel.
+ * The decoded samples are interleaved and aligned on the 32b high bits, like DataInputSteamLittleEndian.readSamples.
+ * @see http://xiph.org/flac/format.html
+ */
+class FlacSegment implements Callable<Object> {
+	
+	private static final int[] CRC8_TABLE = new int[256];
+	private static final int[] CRC16_TABLE = new int[256];
+	
+	static {
+		int crc;
+		for (int pos = 0; pos < 256; pos++) {
+			crc = pos;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = ((crc & 0x80) != 0) ? (crc << 1) ^ 0x07 : crc << 1;
+			}
+			CRC8_TABLE[pos] = crc & 0xFF;
+			
+			crc = pos << 8;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x8005 : crc << 1;
+			}
+			CRC16_TABLE[pos] = crc & 0xFFFF;
+		}
+	}
+	
+	/**
+	 * CRC-16 of the frames, with the frame footer: 0 on a complete frame.
+	 */
+	static int updateCRC16(int crc, byte value) {
+		return ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ value) & 0xFF]) & 0xFFFF;
+	}
+	
+	/**
+	 * Channel assignments after the independent channels (0 to 7).
+	 */
+	static final int LEFT_SIDE = 8;
+	static final int RIGHT_SIDE = 9;
+	static final int MID_SIDE = 10;
+	
+	/**
+	 * The biggest frame header, with its CRC-8.
+	 */
+	static final int FRAME_HEADER_MAX_SIZE = 16;
+	
+	/**
+	 * Parse and check a frame header (sync code, reserved values and CRC-8).
+	 * @param header set with the block size, the channel assignment and the bits per sample (0 for the STREAMINFO value).
+	 * @return the header size with its CRC-8, or -1 if this is not a valid frame header.
+	 */
+	static int readFrameHeader(byte[] b, int pos, int limit, int[] header) {
+		if (pos + 6 > limit) {
+			return -1;
+		}
+		if (((b[pos] & 0xFF) != 0xFF) | ((b[pos + 1] & 0xFE) != 0xF8)) {
+			return -1;
+		}
+		int blocksizecode = (b[pos + 2] >> 4) & 0x0F;
+		int sampleratecode = b[pos + 2] & 0x0F;
+		int channelassignment = (b[pos + 3] >> 4) & 0x0F;
+		int samplesizecode = (b[pos + 3] >> 1) & 0x07;
+		if ((blocksizecode == 0) | (sampleratecode == 15) | (channelassignment > MID_SIDE) | (samplesizecode == 3) | ((b[pos + 3] & 0x01) != 0)) {
+			return -1;
+		}
+		
+		/**
+		 * Frame or sample number, UTF-8 coded.
+		 */
+		int p = pos + 4;
+		int first = b[p] & 0xFF;
+		int extrabytes;
+		if (first < 0x80) {
+			extrabytes = 0;
+		} else if ((first >= 0xC0) & (first < 0xE0)) {
+			extrabytes = 1;
+		} else if ((first >= 0xE0) & (first < 0xF0)) {
+			extrabytes = 2;
+		} else if ((first >= 0xF0) & (first < 0xF8)) {
+			extrabytes = 3;
+		} else if ((first >= 0xF8) & (first < 0xFC)) {
+			extrabytes = 4;
+		} else if ((first >= 0xFC) & (first < 0xFE)) {
+			extrabytes = 5;
+		} else if (first == 0xFE) {
+			extrabytes = 6;
+		} else {
+			return -1;
+		}
+		p++;
+		if (p + extrabytes + 4 >= limit) {
+			return -1;
+		}
+		for (int pos2 = 0; pos2 < extrabytes; pos2++) {
+			if ((b[p] & 0xC0) != 0x80) {
+				return -1;
+			}
+			p++;
+		}
+		
+		int blocksize;
+		if (blocksizecode == 1) {
+			blocksize = 192;
+		} else if (blocksizecode <= 5) {
+			blocksize = 576 << (blocksizecode - 2);
+		} else if (blocksizecode == 6) {
+			blocksize = (b[p] & 0xFF) + 1;
+			p++;
+		} else if (blocksizecode == 7) {
+			blocksize = (((b[p] & 0xFF) << 8) | (b[p + 1] & 0xFF)) + 1;
+			p += 2;
+		} else {
+			blocksize = 256 << (blocksizecode - 8);
+		}
+		
+		if (sampleratecode == 12) {
+			p++;
+		} else if ((sampleratecode == 13) | (sampleratecode == 14)) {
+			p += 2;
+		}
+		
+		int crc = 0;
+		for (int pos2 = pos; pos2 < p; pos2++) {
+			crc = CRC8_TABLE[(crc ^ b[pos2]) & 0xFF];
+		}
+		if (crc != (b[p] & 0xFF)) {
+			return -1;
+		}
+		
+		header[0] = blocksize;
+		header[1] = channelassignment;
+		header[2] = getBitspersample(samplesizecode);
+		return p + 1 - pos;
+	}
+	
+	private static int getBitspersample(int samplesizecode) {
+		switch (samplesizecode) {
+		case 1:
+			return 8;
+		case 2:
+			return 12;
+		case 4:
+			return 16;
+		case 5:
+			return 20;
+		case 6:
+			return 24;
+		case 7:
+			return 32;
+		default:
+			return 0;
+		}
+	}
+	
+	static int getChannelcount(int channelassignment) {
+		if (channelassignment >= LEFT_SIDE) {
+			return 2;
+		}
+		return channelassignment + 1;
+	}
+	
+	private int channelcount;
+	
+	/**
+	 * STREAMINFO bits per sample.
+	 */
+	private int bitspersample;
+	
+	/**
+	 * The frames, one after the other.
+	 */
+	private byte[] data;
+	private int datalength;
+	
+	private int[] frameoffsets;
+	private int framecount;
+	
+	/**
+	 * Decoded samples, for all the frames.
+	 */
+	int[] samples;
+	int samplecount;
+	
+	/**
+	 * Decoded samples of a frame, channel by channel.
+	 */
+	private int[][] channelsamples;
+	
+	private int[] header;
+	
+	/**
+	 * Bit reader on data.
+	 */
+	private int datapos;
+	private int datalimit;
+	private long bitcache;
+	private int bitcachesize;
+	
+	FlacSegment(int channelcount, int bitspersample) {
+		this.channelcount = channelcount;
+		this.bitspersample = bitspersample;
+		data = new byte[64 * 1024];
+		frameoffsets = new int[16];
+		samples = new int[0];
+		channelsamples = new int[channelcount][0];
+		header = new int[3];
+	}
+	
+	/**
+	 * Remove all the frames, for reuse this segment.
+	 */
+	void reset() {
+		datalength = 0;
+		framecount = 0;
+		samplecount = 0;
+	}
+	
+	int getDatalength() {
+		return datalength;
+	}
+	
+	int getFramecount() {
+		return framecount;
+	}
+	
+	/**
+	 * Add some bytes of the current frame.
+	 */
+	void append(byte[] b, int off, int len) {
+		if (datalength + len > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, datalength + len));
+		}
+		System.arraycopy(b, off, data, datalength, len);
+		datalength += len;
+	}
+	
+	/**
+	 * Start a new frame, before append() its bytes.
+	 * @param blocksize the frame samples count, for one channel.
+	 */
+	void startFrame(int blocksize) {
+		if (framecount == frameoffsets.length) {
+			frameoffsets = Arrays.copyOf(frameoffsets, framecount * 2);
+		}
+		frameoffsets[framecount] = datalength;
+		framecount++;
+		samplecount += blocksize * channelcount;
+	}
+	
+	/**
+	 * Remove the bytes after length, in the last frame.
+	 */
+	void cutFrame(int length) {
+		datalength = frameoffsets[framecount - 1] + length;
+	}
+	
+	/**
+	 * Remove the last frame.
+	 */
+	void cancelFrame(int blocksize) {
+		framecount--;
+		datalength = frameoffsets[framecount];
+		samplecount -= blocksize * channelcount;
+	}
+	
+	public Object call() throws IOException {
+		if (samples.length < samplecount) {
+			samples = new int[samplecount];
+		}
+		int samplepos = 0;
+		int end;
+		for (int pos = 0; pos < framecount; pos++) {
+			if (pos + 1 < framecount) {
+				end = frameoffsets[pos + 1];
+			} else {
+				end = datalength;
+			}
+			samplepos += decodeFrame(frameoffsets[pos], end, samplepos);
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the decoded samples count (all channels).
+	 */
+	private int decodeFrame(int start, int end, int samplepos) throws IOException {
+		int headersize = readFrameHeader(data, start, end, header);
+		if (headersize == -1) {
+			throw new IOException("Invalid FLAC frame header");
+		}
+		int blocksize = header[0];
+		int channelassignment = header[1];
+		int framebitspersample = header[2];
+		if (framebitspersample == 0) {
+			framebitspersample = bitspersample;
+		}
+		if ((getChannelcount(channelassignment) != channelcount) | (framebitspersample != bitspersample)) {
+			throw new IOException("FLAC frame format is not the stream format: " + getChannelcount(channelassignment) + " channels " + framebitspersample + " bits");
+		}
+		if (channelsamples[0].length < blocksize) {
+			channelsamples = new int[channelcount][blocksize];
+		}
+		
+		datapos = start + headersize;
+		datalimit = end;
+		bitcache = 0;
+		bitcachesize = 0;
+		
+		int subframebitspersample;
+		for (int channel = 0; channel < channelcount; channel++) {
+			subframebitspersample = bitspersample;
+			/**
+			 * The side channel has one more bit.
+			 */
+			if (((channelassignment == LEFT_SIDE) & (channel == 1)) | ((channelassignment == RIGHT_SIDE) & (channel == 0)) | ((channelassignment == MID_SIDE) & (channel == 1))) {
+				subframebitspersample++;
+			}
+			decodeSubframe(channelsamples[channel], blocksize, subframebitspersample);
+		}
+		
+		/**
+		 * Zero padding, and the CRC-16 at the frame end.
+		 */
+		bitcachesize -= bitcachesize % 8;
+		if (datapos - bitcachesize / 8 != end - 2) {
+			throw new IOException("Invalid FLAC frame size");
+		}
+		
+		int[] channel0 = channelsamples[0];
+		int[] channel1;
+		int value;
+		if (channelassignment == LEFT_SIDE) {
+			channel1 = channelsamples[1];
+			for (int pos = 0; pos < blocksize; pos++) {
+				channel1[pos] = channel0[pos] - channel1[pos];
+			}
+		} else if (channelassignment == RIGHT_SIDE) {
+			channel1 = channelsamples[1];
+			for (int pos = 0; pos < blocksize; pos++) {
+				channel0[pos] += channel1[pos];
+			}
+		} else if (channelassignment == MID_SIDE) {
+			channel1 = channelsamples[1];
+			for (int pos = 0; pos < blocksize; pos++) {
+				value = (channel0[pos] << 1) | (channel1[pos] & 1);
+				channel0[pos] = (value + channel1[pos]) >> 1;
+				channel1[pos] = (value - channel1[pos]) >> 1;
+			}
+		}
+		
+		/**
+		 * Interleave, and align on the 32b high bits.
+		 */
+		int shift = 32 - bitspersample;
+		int[] channelsample;
+		for (int channel = 0; channel < channelcount; channel++) {
+			channelsample = channelsamples[channel];
+			int pos2 = samplepos + channel;
+			for (int pos = 0; pos < blocksize; pos++) {
+				samples[pos2] = channelsample[pos] << shift;
+				pos2 += channelcount;
+			}
+		}
+		return blocksize * channelcount;
+	}
+	
+	private void decodeSubframe(int[] dest, int blocksize, int subframebitspersample) throws IOException {
+		if (readBits(1) != 0) {
+			throw new IOException("Invalid FLAC subframe header");
+		}
+		int type = readBits(6);
+		int wastedbits = 0;
+		if (readBits(1) == 1) {
+			wastedbits = readUnary() + 1;
+			subframebitspersample -= wastedbits;
+		}
+		
+		if (type == 0) {
+			/**
+			 * Constant
+			 */
+			int value = readSignedBits(subframebitspersample);
+			for (int pos = 0; pos < blocksize; pos++) {
+				dest[pos] = value;
+			}
+		} else if (type == 1) {
+			/**
+			 * Verbatim
+			 */
+			for (int pos = 0; pos < blocksize; pos++) {
+				dest[pos] = readSignedBits(subframebitspersample);
+			}
+		} else if ((type >= 8) & (type <= 12)) {
+			decodeFixed(dest, blocksize, subframebitspersample, type - 8);
+		} else if (type >= 32) {
+			decodeLPC(dest, blocksize, subframebitspersample, type - 31);
+		} else {
+			throw new IOException("Invalid FLAC subframe type: " + type);
+		}
+		
+		if (wastedbits > 0) {
+			for (int pos = 0; pos < blocksize; pos++) {
+				dest[pos] <<= wastedbits;
+			}
+		}
+	}
+	
+	private void decodeFixed(int[] dest, int blocksize, int subframebitspersample, int order) throws IOException {
+		for (int pos = 0; pos < order; pos++) {
+			dest[pos] = readSignedBits(subframebitspersample);
+		}
+		decodeResidual(dest, blocksize, order);
+		
+		switch (order) {
+		case 1:
+			for (int pos = 1; pos < blocksize; pos++) {
+				dest[pos] += dest[pos - 1];
+			}
+			break;
+		case 2:
+			for (int pos = 2; pos < blocksize; pos++) {
+				dest[pos] += 2 * dest[pos - 1] - dest[pos - 2];
+			}
+			break;
+		case 3:
+			for (int pos = 3; pos < blocksize; pos++) {
+				dest[pos] += 3 * (dest[pos - 1] - dest[pos - 2]) + dest[pos - 3];
+			}
+			break;
+		case 4:
+			for (int pos = 4; pos < blocksize; pos++) {
+				dest[pos] += 4 * (dest[pos - 1] + dest[pos - 3]) - 6 * dest[pos - 2] - dest[pos - 4];
+			}
+			break;
+		}
+	}
+	
+	private void decodeLPC(int[] dest, int blocksize, int subframebitspersample, int order) throws IOException {
+		for (int pos = 0; pos < order; pos++) {
+			dest[pos] = readSignedBits(subframebitspersample);
+		}
+		int precision = readBits(4) + 1;
+		if (precision == 16) {
+			throw new IOException("Invalid FLAC LPC precision");
+		}
+		int shift = readSignedBits(5);
+		if (shift < 0) {
+			throw new IOException("Invalid FLAC LPC shift: " + shift);
+		}
+		int[] coefficients = new int[order];
+		for (int pos = 0; pos < order; pos++) {
+			coefficients[pos] = readSignedBits(precision);
+		}
+		decodeResidual(dest, blocksize, order);
+		
+		/**
+		 * The sum can overflow 32b with 24b samples.
+		 */
+		int orderbits = 32 - Integer.numberOfLeadingZeros(order);
+		if (subframebitspersample + precision + orderbits <= 32) {
+			int sum;
+			for (int pos = order; pos < blocksize; pos++) {
+				sum = 0;
+				for (int pos2 = 0; pos2 < order; pos2++) {
+					sum += coefficients[pos2] * dest[pos - 1 - pos2];
+				}
+				dest[pos] += sum >> shift;
+			}
+		} else {
+			long sum;
+			for (int pos = order; pos < blocksize; pos++) {
+				sum = 0;
+				for (int pos2 = 0; pos2 < order; pos2++) {
+					sum += (long) coefficients[pos2] * (long) dest[pos - 1 - pos2];
+				}
+				dest[pos] += (int) (sum >> shift);
+			}
+		}
+	}
+	
+	/**
+	 * Rice coded residual, after the warm-up samples.
+	 */
+	private void decodeResidual(int[] dest, int blocksize, int order) throws IOException {
+		int method = readBits(2);
+		if (method > 1) {
+			throw new IOException("Invalid FLAC residual coding method: " + method);
+		}
+		int parameterbits = 4 + method;
+		int escapeparameter = (1 << parameterbits) - 1;
+		int partitionorder = readBits(4);
+		int partitioncount = 1 << partitionorder;
+		int partitionsize = blocksize >> partitionorder;
+		if ((partitionsize << partitionorder != blocksize) | (partitionsize < order)) {
+			throw new IOException("Invalid FLAC residual partition order: " + partitionorder);
+		}
+		
+		int pos = order;
+		int end;
+		int parameter;
+		int value;
+		for (int partition = 0; partition < partitioncount; partition++) {
+			end = (partition + 1) * partitionsize;
+			parameter = readBits(parameterbits);
+			if (parameter == escapeparameter) {
+				parameter = readBits(5);
+				for (; pos < end; pos++) {
+					dest[pos] = readSignedBits(parameter);
+				}
+			} else {
+				for (; pos < end; pos++) {
+					value = (readUnary() << parameter) | readBits(parameter);
+					dest[pos] = (value >>> 1) ^ -(value & 1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Put the next bytes in bitcache, after the bitcachesize first bits.
+	 */
+	private void fillBitcache() throws IOException {
+		while (bitcachesize <= 56) {
+			if (datapos >= datalimit) {
+				if (datapos >= datalimit + 8) {
+					throw new IOException("FLAC frame is truncated");
+				}
+				/**
+				 * Some bytes after the frame end, only read if the frame is truncated.
+				 */
+				datapos++;
+			} else {
+				bitcache |= (long) (data[datapos] & 0xFF) << (56 - bitcachesize);
+				datapos++;
+			}
+			bitcachesize += 8;
+		}
+	}
+	
+	/**
+	 * @param count 0 to 32
+	 */
+	private int readBits(int count) throws IOException {
+		if (count == 0) {
+			return 0;
+		}
+		if (bitcachesize < count) {
+			fillBitcache();
+		}
+		int value = (int) (bitcache >>> (64 - count));
+		bitcache <<= count;
+		bitcachesize -= count;
+		return value;
+	}
+	
+	/**
+	 * @param count 0 to 32
+	 */
+	private int readSignedBits(int count) throws IOException {
+		if (count == 0) {
+			return 0;
+		}
+		if (bitcachesize < count) {
+			fillBitcache();
+		}
+		int value = (int) (bitcache >> (64 - count));
+		bitcache <<= count;
+		bitcachesize -= count;
+		return value;
+	}
+	
+	/**
+	 * @return the zeros count before the next 1.
+	 */
+	private int readUnary() throws IOException {
+		int value = 0;
+		int zeros;
+		while (true) {
+			if (bitcache == 0) {
+				value += bitcachesize;
+				bitcachesize = 0;
+				fillBitcache();
+				continue;
+			}
+			zeros = Long.numberOfLeadingZeros(bitcache);
+			value += zeros;
+			if (zeros == 63) {
+				bitcache = 0;
+			} else {
+				bitcache <<= zeros + 1;
+			}
+			bitcachesize -= zeros + 1;
+			return value;
+		}
+	}
+	
+}
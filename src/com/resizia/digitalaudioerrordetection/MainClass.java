@@ -1,96 +1,309 @@
-/*
- * 
- * ***** BEGIN LICENSE BLOCK *****
- *
- * This file is part of Digital Audio Error Detection.
- * 
- * Digital Audio Error Detection is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- * 
- * Digital Audio Error Detection is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
- *
- * ***** END LICENSE BLOCK ***** */
-
-package com.resizia.digitalaudioerrordetection;
-
-import java.io.File;
-import java.util.ArrayList;
-
-public class MainClass {
-	
-	public static final float app_version = 0.12f;
-	
-	public static void main(String[] args) {
-		
-		System.out.print("Digital Audio Error Detection v");
-		System.out.println(app_version);
-		System.out.println();
-		
-		if ((WavFile.startpositionresultvalues > 0f) | (WavFile.endpositionresultvalues < Float.MAX_VALUE)) {
-			System.out.print("Partial MRK result : ");
-			System.out.print(WavFile.startpositionresultvalues);
-			System.out.print(" sec to ");
-			System.out.print(WavFile.endpositionresultvalues);
-			System.out.println(" sec");
-			System.out.println();
-		}
-		
-		ArrayList<String> files = new ArrayList<String>();
-		
-		if (args.length > 0) {
-			for (int pos = 0; pos < args.length; pos++) {
-				files.add(args[pos]);
-			}
-		}
-		
-		// long start = System.nanoTime();
-		
-		File currentfile;
-		File[] subfiles;
-		for (int pos = 0; pos < files.size(); pos++) {
-			currentfile = new File(files.get(pos));
-			if (currentfile.exists() == false) {
-				continue;
-			} else {
-				if (currentfile.isDirectory()) {
-					subfiles = currentfile.listFiles();
-					for (int possf = 0; possf < subfiles.length; possf++) {
-						files.add(subfiles[possf].getPath());
-					}
-					continue;
-				}
-			}
-			if ((files.get(pos).endsWith("wav") == false) & (files.get(pos).endsWith("WAV") == false)) {
-				System.err.print(files.get(pos));
-				System.err.println(" is not a wav, go next");
-				continue;
-			}
-			System.out.println(files.get(pos));
-			try {
-				WavFile wavfile = new WavFile(currentfile);
-				wavfile.process();
-				wavfile.writeInformationFiles();
-				wavfile.close();
-				
-				System.out.print("Peak value:\t");
-				System.out.print(WavFile.currentnumberformat.format(wavfile.getPeak_value_dbfs()));
-				System.out.print("\t");
-				System.out.print(wavfile.getPeak_position_sample());
-				System.out.print("\t");
-				System.out.println(wavfile.getPeak_channel_id() + 1);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
-		
-	}
-	
-}
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+public class MainClass {
+	
+	public static final float app_version = 0.12f;
+	
+	/**
+	 * Display the progress during the analyses.
+	 */
+	private static boolean progress = ConfigurationProperties.getP("daed.progress", false);
+	
+	/**
+	 * Stop an analysis after this time (seconds), and write the partial results. 0 for no timeout.
+	 */
+	private static int timeout = ConfigurationProperties.getP("daed.timeout", 0);
+	
+	/**
+	 * Compare the files samples 2 by 2 (like source and copy), instead of analyse them.
+	 */
+	private static boolean compare = ConfigurationProperties.getP("daed.compare", false);
+	
+	/**
+	 * Analyse the split channels files (like Take1_L.wav, Take1_R.wav) together, like one multichannel file.
+	 * The set can be more than 2 GB, the limit is the one of its members: 2^31 samples by channel.
+	 */
+	private static boolean split_channels = ConfigurationProperties.getP("daed.split_channels", false);
+	
+	/**
+	 * Share the analyses of the files of this manifest (one path by line) with the other processes started with it, instead of the command line files.
+	 */
+	private static File shard_manifest = ConfigurationProperties.getP("daed.shard_manifest", (File) null);
+	
+	/**
+	 * With shard_manifest: don't analyse, build the results table from the results of all the workers.
+	 */
+	private static boolean shard_merge = ConfigurationProperties.getP("daed.shard_merge", false);
+	
+	/**
+	 * Don't analyse, display the files and the events of the eventstore, with the query_* filters.
+	 */
+	private static boolean eventstore_query = ConfigurationProperties.getP("daed.eventstore_query", false);
+	
+	private static void compare(String[] args) {
+		for (int pos = 0; pos < args.length; pos += 2) {
+			if (pos + 1 == args.length) {
+				System.err.print(args[pos]);
+				System.err.println(" has no file to compare with");
+				break;
+			}
+			System.out.print(args[pos]);
+			System.out.print("\t");
+			System.out.println(args[pos + 1]);
+			try {
+				WavCompare wavcompare = new WavCompare(new File(args[pos]), new File(args[pos + 1]));
+				wavcompare.process();
+				wavcompare.printResults(System.out);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	private static final String[] audio_extensions = { ".wav", ".flac", ".aif", ".aiff", ".aifc" };
+	
+	static boolean isAudioFile(String filename) {
+		String lowername = filename.toLowerCase();
+		for (int pos = 0; pos < audio_extensions.length; pos++) {
+			if (lowername.endsWith(audio_extensions[pos])) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Analyse a file or a channel set, and write its reports.
+	 * @param setmembers null for a simple file.
+	 * @param threads more than 1 for analyse the time segments (or else the channels) on some threads.
+	 * @param tableresultfile null for daed.tableresultfilename.
+	 * @return the results, for the console.
+	 */
+	static String analyse(File file, File[] setmembers, int threads, File tableresultfile) throws IOException {
+		WavFile wavfile;
+		if (setmembers != null) {
+			wavfile = new WavFile(file, setmembers);
+		} else {
+			wavfile = new WavFile(file);
+		}
+		StringBuffer sb = new StringBuffer();
+		try {
+			wavfile.setThreads(threads);
+			if (tableresultfile != null) {
+				wavfile.setTableResultFile(tableresultfile);
+			}
+			if (progress) {
+				wavfile.setProgressListener(new ConsoleProgressListener(System.out));
+			}
+			if (timeout > 0) {
+				CancellationToken cancellationtoken = new CancellationToken();
+				cancellationtoken.cancelAfter(timeout * 1000l);
+				wavfile.setCancellationToken(cancellationtoken);
+			}
+			wavfile.process();
+			
+			if (wavfile.isCancelled()) {
+				sb.append("Timeout, the results are partial");
+				sb.append(WavFile.LINESEPARATOR);
+			}
+			
+			/**
+			 * The results table and NumberFormat are shared by the batch workers.
+			 */
+			synchronized (WavFile.currentnumberformat) {
+				wavfile.writeInformationFiles();
+				sb.append("Peak value:\t");
+				sb.append(WavFile.currentnumberformat.format(wavfile.getPeak_value_dbfs()));
+			}
+		} finally {
+			/**
+			 * Even after an error: the I/O buffer goes back to the shared pool.
+			 */
+			wavfile.close();
+		}
+		
+		sb.append("\t");
+		sb.append(wavfile.getPeak_position_sample());
+		sb.append("\t");
+		sb.append(wavfile.getPeak_channel_id() + 1);
+		sb.append(WavFile.LINESEPARATOR);
+		return sb.toString();
+	}
+	
+	public static void main(String[] args) {
+		
+		System.out.print("Digital Audio Error Detection v");
+		System.out.println(app_version);
+		System.out.println();
+		
+		if ((WavFile.startpositionresultvalues > 0f) | (WavFile.endpositionresultvalues < Float.MAX_VALUE)) {
+			System.out.print("Partial MRK result : ");
+			System.out.print(WavFile.startpositionresultvalues);
+			System.out.print(" sec to ");
+			System.out.print(WavFile.endpositionresultvalues);
+			System.out.println(" sec");
+			System.out.println();
+		}
+		
+		if (compare) {
+			compare(args);
+			return;
+		}
+		
+		if (eventstore_query) {
+			try {
+				EventStore.query(EventStore.eventstore, System.out);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		
+		if (shard_manifest != null) {
+			try {
+				ShardManifest manifest = new ShardManifest(shard_manifest);
+				if (shard_merge) {
+					manifest.merge(ConfigurationProperties.getP("daed.tableresultfilename", new File("results.txt")));
+					return;
+				}
+				manifest.work();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			endBatch();
+			return;
+		}
+		
+		ArrayList<String> files = new ArrayList<String>();
+		
+		if (args.length > 0) {
+			for (int pos = 0; pos < args.length; pos++) {
+				files.add(args[pos]);
+			}
+		}
+		
+		// long start = System.nanoTime();
+		
+		File currentfile;
+		File[] subfiles;
+		File[] setmembers;
+		
+		/**
+		 * With some batch workers, the files are only scheduled here, and analysed after.
+		 */
+		BatchScheduler scheduler = null;
+		if (BatchScheduler.isEnabled()) {
+			scheduler = new BatchScheduler();
+		}
+		
+		/**
+		 * The files already analysed in a channel set.
+		 */
+		HashSet<File> setfiles = new HashSet<File>();
+		
+		for (int pos = 0; pos < files.size(); pos++) {
+			currentfile = new File(files.get(pos));
+			if (currentfile.exists() == false) {
+				continue;
+			} else {
+				if (currentfile.isDirectory()) {
+					subfiles = currentfile.listFiles();
+					for (int possf = 0; possf < subfiles.length; possf++) {
+						files.add(subfiles[possf].getPath());
+					}
+					continue;
+				}
+			}
+			if (isAudioFile(files.get(pos)) == false) {
+				System.err.print(files.get(pos));
+				System.err.println(" is not a wav, a flac or an aiff, go next");
+				continue;
+			}
+			setmembers = null;
+			if (split_channels) {
+				if (setfiles.contains(currentfile.getAbsoluteFile())) {
+					continue;
+				}
+				setmembers = WavChannelSet.getMembers(currentfile);
+			}
+			
+			if (setmembers != null) {
+				for (int possm = 0; possm < setmembers.length; possm++) {
+					setfiles.add(setmembers[possm].getAbsoluteFile());
+				}
+				currentfile = WavChannelSet.getSetFile(setmembers);
+			}
+			
+			if (scheduler != null) {
+				scheduler.add(currentfile, setmembers);
+				continue;
+			}
+			
+			System.out.println(currentfile.getPath());
+			try {
+				System.out.print(analyse(currentfile, setmembers, 1, null));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		
+		if (scheduler != null) {
+			try {
+				scheduler.process();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		endBatch();
+	}
+	
+	private static void endBatch() {
+		if (BatchSummary.enabled) {
+			try {
+				BatchSummary.getShared().writeReport(false);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		try {
+			EventStore.closeShared();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		
+		System.out.println();
+		BufferPool.getShared().printStatistics(System.out);
+		if (AnalysisMetrics.enabled) {
+			AnalysisMetrics.getShared().printStatistics(System.out);
+		}
+	}
+	
+}
@@ -0,0 +1,325 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Share the analyses of a files list (the manifest, one path by line) between some MainClass processes, on one or more computers, without central service.
+ * A file is claimed by the atomic creation of a lease file, in the "manifest.leases" directory, and the worker updates the lease date (heartbeat) during the analysis.
+ * A lease older than shard_lease_expiry is from a crashed worker: the file can be claimed again, with the next lease generation.
+ * Each worker writes the table results in the "manifest.results" directory, and merge() builds the final table from them.
+ * The lease dates are compared with the computers clocks: they must be synchronized, far below shard_lease_expiry.
+ */
+class ShardManifest {
+	
+	/**
+	 * A lease is expired without heartbeat during this time (seconds).
+	 */
+	private static int shard_lease_expiry = ConfigurationProperties.getP("daed.shard_lease_expiry", 60);
+	
+	/**
+	 * Unique name for this worker, in the lease and results files names. By default, process id and host name.
+	 */
+	private static String shard_worker_id = ConfigurationProperties.getP("daed.shard_worker_id", ManagementFactory.getRuntimeMXBean().getName());
+	
+	private File manifest;
+	
+	/**
+	 * The audio files paths. The index in this list is the file id, in the leases and the results.
+	 */
+	private ArrayList<String> entries;
+	
+	private File leasedirectory;
+	private File resultdirectory;
+	private String workerid;
+	
+	/**
+	 * The lease of the file in analysis, touched by the heartbeat thread. Null between two analyses.
+	 */
+	private volatile File currentlease;
+	
+	ShardManifest(File manifest) throws IOException {
+		this.manifest = manifest;
+		if (manifest == null) {
+			throw new NullPointerException("\"manifest\" can't to be null");
+		}
+		if (shard_lease_expiry < 1) {
+			throw new IllegalArgumentException("Invalid shard_lease_expiry: " + shard_lease_expiry);
+		}
+		
+		entries = new ArrayList<String>();
+		ArrayList<String> lines = readLines(manifest);
+		String line;
+		for (int pos = 0; pos < lines.size(); pos++) {
+			line = lines.get(pos).trim();
+			if (line.equals("") | line.startsWith("#")) {
+				continue;
+			}
+			if (MainClass.isAudioFile(line) == false) {
+				System.err.print(line);
+				System.err.println(" is not a wav, a flac or an aiff, go next");
+				continue;
+			}
+			entries.add(line);
+		}
+		
+		leasedirectory = new File(manifest.getPath() + ".leases");
+		resultdirectory = new File(manifest.getPath() + ".results");
+		workerid = shard_worker_id.replaceAll("[^A-Za-z0-9.\\-]", "_");
+	}
+	
+	private static ArrayList<String> readLines(File file) throws IOException {
+		ArrayList<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+	
+	private static void writeContent(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes());
+			out.write(WavFile.LINESEPARATOR.getBytes());
+		} finally {
+			out.close();
+		}
+	}
+	
+	private File getLease(int entry, int generation) {
+		return new File(leasedirectory, entry + "." + generation + ".lease");
+	}
+	
+	/**
+	 * Created by the first worker to end the analysis, with its worker id.
+	 */
+	private File getDone(int entry) {
+		return new File(leasedirectory, entry + ".done");
+	}
+	
+	private File getResult(int entry, String workerid) {
+		return new File(resultdirectory, entry + "." + workerid + ".txt");
+	}
+	
+	/**
+	 * Analyse the files not done, and not claimed by a living worker. Wait the others workers, for reclaim their leases if they crash.
+	 */
+	void work() throws IOException {
+		leasedirectory.mkdirs();
+		resultdirectory.mkdirs();
+		if ((leasedirectory.isDirectory() & resultdirectory.isDirectory()) == false) {
+			throw new IOException("Can't create the shard directories for " + manifest.getPath());
+		}
+		
+		Thread heartbeat = new Thread(new Runnable() {
+			public void run() {
+				File lease;
+				try {
+					while (true) {
+						Thread.sleep(shard_lease_expiry * 250l);
+						lease = currentlease;
+						if (lease != null) {
+							lease.setLastModified(System.currentTimeMillis());
+						}
+					}
+				} catch (InterruptedException e) {
+				}
+			}
+		}, "Shard heartbeat");
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+		
+		try {
+			int remaining;
+			boolean analysed;
+			File lease;
+			while (true) {
+				remaining = 0;
+				analysed = false;
+				for (int entry = 0; entry < entries.size(); entry++) {
+					if (getDone(entry).exists()) {
+						continue;
+					}
+					lease = claim(entry);
+					if (lease == null) {
+						remaining++;
+						continue;
+					}
+					currentlease = lease;
+					analyse(entry);
+					currentlease = null;
+					analysed = true;
+				}
+				if (remaining == 0) {
+					break;
+				}
+				if (analysed == false) {
+					/**
+					 * All the remaining files are in analysis by the others workers.
+					 */
+					try {
+						Thread.sleep(shard_lease_expiry * 500l);
+					} catch (InterruptedException e) {
+						throw new IOException("Interrupted during the wait of the others workers");
+					}
+				}
+			}
+		} finally {
+			heartbeat.interrupt();
+		}
+	}
+	
+	/**
+	 * @return the created lease, or null if the file is claimed by a living worker.
+	 */
+	private File claim(int entry) throws IOException {
+		int generation = 0;
+		File lease = getLease(entry, generation);
+		while (lease.exists()) {
+			generation++;
+			lease = getLease(entry, generation);
+		}
+		
+		File expiredlease = null;
+		if (generation > 0) {
+			expiredlease = getLease(entry, generation - 1);
+			if (System.currentTimeMillis() - expiredlease.lastModified() < shard_lease_expiry * 1000l) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Only one worker can create this generation.
+		 */
+		if (lease.createNewFile() == false) {
+			return null;
+		}
+		writeContent(lease, workerid);
+		
+		if (getDone(entry).exists()) {
+			/**
+			 * Ended by the worker of the expired lease, just now.
+			 */
+			return null;
+		}
+		if (expiredlease != null) {
+			System.err.print("Reclaim an expired lease\t");
+			System.err.println(expiredlease.getName());
+		}
+		return lease;
+	}
+	
+	private void analyse(int entry) throws IOException {
+		/**
+		 * The relative paths are from the manifest directory, the same for all the workers.
+		 */
+		File file = new File(entries.get(entry));
+		if (file.isAbsolute() == false) {
+			file = new File(manifest.getParentFile(), entries.get(entry));
+		}
+		File result = getResult(entry, workerid);
+		result.delete();
+		
+		System.out.println(file.getPath());
+		try {
+			System.out.print(MainClass.analyse(file, null, 1, result));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		
+		/**
+		 * If a lease of a living (but slow) worker was reclaimed, the results of the first to end are kept.
+		 * A file in error is done too, without result: it will not be retried.
+		 */
+		File done = getDone(entry);
+		if (done.createNewFile()) {
+			writeContent(done, workerid);
+		}
+	}
+	
+	/**
+	 * Build the table result file from the workers results, in the manifest order, and display the missing files.
+	 */
+	void merge(File tableresultfile) throws IOException {
+		if (tableresultfile == null) {
+			throw new NullPointerException("\"tableresultfile\" can't to be null");
+		}
+		FileOutputStream tableout = new FileOutputStream(tableresultfile);
+		int mergedcount = 0;
+		try {
+			File done;
+			File result;
+			ArrayList<String> lines;
+			boolean header = false;
+			for (int entry = 0; entry < entries.size(); entry++) {
+				done = getDone(entry);
+				if (done.exists() == false) {
+					System.err.print(entries.get(entry));
+					System.err.println("\tnot analysed");
+					continue;
+				}
+				lines = readLines(done);
+				result = null;
+				if (lines.size() > 0) {
+					result = getResult(entry, lines.get(0));
+				}
+				if ((result == null) || (result.exists() == false)) {
+					System.err.print(entries.get(entry));
+					System.err.println("\tanalysis error");
+					continue;
+				}
+				lines = readLines(result);
+				for (int pos = 0; pos < lines.size(); pos++) {
+					if ((pos == 0) & header) {
+						continue;
+					}
+					tableout.write(lines.get(pos).getBytes());
+					tableout.write(WavFile.LINESEPARATOR.getBytes());
+				}
+				header = true;
+				mergedcount++;
+			}
+		} finally {
+			tableout.close();
+		}
+		
+		System.out.print("Merged:\t");
+		System.out.print(mergedcount);
+		System.out.print(" / ");
+		System.out.print(entries.size());
+		System.out.println(" files");
+	}
+	
+}
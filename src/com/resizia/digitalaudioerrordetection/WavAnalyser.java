@@ -0,0 +1,105 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * An analysis made by WavFile.process() on the same decoded blocks as the detection, in the same read.
+ * The results are added to results.txt (after the peak columns) and to the wav txt file.
+ */
+interface WavAnalyser {
+	
+	/**
+	 * Before the first block, after the header parsing. Reset all the values.
+	 * @param events for add found events, if any.
+	 */
+	void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events);
+	
+	/**
+	 * @param block interleaved samples in signed 32b integer, like WavDetector.
+	 * @param framecount complete frames count in block.
+	 * @param realsamplepos first frame position in file.
+	 */
+	void analyse(int[] block, int framecount, int realsamplepos);
+	
+	/**
+	 * After the last block, only if the analysis is not cancelled.
+	 */
+	void end();
+	
+	/**
+	 * All the configuration values that change the results, for checkpoints.
+	 */
+	String getParameters();
+	
+	/**
+	 * All what is needed to continue the analysis, for checkpoints.
+	 */
+	void writeState(DataOutputStream out) throws IOException;
+	
+	void readState(DataInputStream in) throws IOException;
+	
+	/**
+	 * For a long file analysed in time segments, on some threads.
+	 * @return a new analysis with the same configuration, or null if this analysis can't be split in segments.
+	 */
+	WavAnalyser createSegmentAnalyser();
+	
+	/**
+	 * After init(): frames to analyse before a segment, for rebuild the values carried from a block to the next (history, filters, sliding windows).
+	 */
+	int getSegmentWarmup();
+	
+	/**
+	 * After init(), for a segment analyser: the first block will be at this frame position, instead of the file start.
+	 */
+	void seek(int realsamplepos);
+	
+	/**
+	 * After the warm-up blocks, before the first segment block: forget the results, keep the values carried from a block to the next.
+	 */
+	void startSegment();
+	
+	/**
+	 * Add the results of the next segment, and continue with its carried values.
+	 * @param next made by createSegmentAnalyser(), analysed just after this one.
+	 */
+	void mergeSegment(WavAnalyser next);
+	
+	/**
+	 * Tabbed columns names and values for results.txt, each one starting by a tab.
+	 */
+	void appendTableHeader(StringBuffer tableline);
+	
+	void appendTableValues(StringBuffer tableline);
+	
+	/**
+	 * Name tab value lines for the wav txt file.
+	 */
+	void printInformations(PrintStream infoout);
+	
+}
@@ -0,0 +1,364 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Clicks and dropouts in the signal.
+ * A click is a second derivative (x[n] - 2 * x[n - 1] + x[n - 2]) absolute value more high than click_threshold times its mean value around, on a sliding window.
+ * The window is centered: the samples are tested half a window after their reading, and a transient in the signal raise its own threshold.
+ * A dropout is a mute (absolute values under dropout_level) during dropout_min_duration to dropout_max_duration, after a signal over dropout_programme_level.
+ * All the values are integers: the same results with any blocks sizes, and after a checkpoint.
+ */
+class WavAnalyserClick implements WavAnalyser {
+	
+	/**
+	 * Sliding window duration for the mean residual, in seconds.
+	 */
+	private static float click_window = ConfigurationProperties.getP("daed.click_window", 0.005f);
+	
+	/**
+	 * Ratio between a click residual and the mean residual.
+	 */
+	private static int click_threshold = ConfigurationProperties.getP("daed.click_threshold", 20);
+	
+	/**
+	 * Residual minimal level for a click, in dBFS.
+	 */
+	private static double click_level_min = ConfigurationProperties.getP("daed.click_level_min", -60f);
+	
+	/**
+	 * Mute level, in dBFS.
+	 */
+	private static double dropout_level = ConfigurationProperties.getP("daed.dropout_level", -70f);
+	
+	/**
+	 * Mute durations, in seconds.
+	 */
+	private static float dropout_min_duration = ConfigurationProperties.getP("daed.dropout_min_duration", 0.001f);
+	private static float dropout_max_duration = ConfigurationProperties.getP("daed.dropout_max_duration", 0.2f);
+	
+	/**
+	 * Mean level before a mute, in dBFS.
+	 */
+	private static double dropout_programme_level = ConfigurationProperties.getP("daed.dropout_programme_level", -40f);
+	
+	/**
+	 * The mean level before a mute is an exponential mean on about 2^LEVEL_SHIFT samples.
+	 */
+	private static final int LEVEL_SHIFT = 8;
+	
+	private int channelcount;
+	private List<WavDefaultevent> events;
+	
+	/**
+	 * Power of 2, in frames.
+	 */
+	private int window;
+	private int windowmask;
+	
+	/**
+	 * In signed 32b integer scale.
+	 */
+	private long clicklevelmin;
+	private int mutelevel;
+	private long programmelevel;
+	private int dropoutminframes;
+	private int dropoutmaxframes;
+	
+	/**
+	 * By channel: the 2 last samples, the residuals absolute values on the window (channel after channel) and their sum.
+	 */
+	private int[] lastvalue1;
+	private int[] lastvalue2;
+	private long[] residuals;
+	private long[] residualsum;
+	
+	/**
+	 * By channel, for the clicks suppression during a window.
+	 */
+	private int[] lastclickposition;
+	
+	/**
+	 * By channel: mean absolute value (exponential), current mute start and mean absolute value before it.
+	 */
+	private long[] level;
+	private int[] mutestart;
+	private long[] mutelevelbefore;
+	
+	private int clickcount;
+	private int dropoutcount;
+	
+	private static int getIntValue(double dbfs) {
+		return (int) (Math.pow(10, dbfs / 20) * Integer.MAX_VALUE);
+	}
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		this.events = events;
+		window = 2;
+		while (window < Math.round(click_window * freq)) {
+			window *= 2;
+		}
+		windowmask = window - 1;
+		clicklevelmin = getIntValue(click_level_min);
+		mutelevel = getIntValue(dropout_level);
+		programmelevel = getIntValue(dropout_programme_level);
+		dropoutminframes = Math.max(1, Math.round(dropout_min_duration * freq));
+		dropoutmaxframes = Math.round(dropout_max_duration * freq);
+		
+		lastvalue1 = new int[channelcount];
+		lastvalue2 = new int[channelcount];
+		residuals = new long[channelcount * window];
+		residualsum = new long[channelcount];
+		lastclickposition = new int[channelcount];
+		level = new long[channelcount];
+		mutestart = new int[channelcount];
+		mutelevelbefore = new long[channelcount];
+		for (int channel = 0; channel < channelcount; channel++) {
+			lastclickposition[channel] = -window;
+			mutestart[channel] = -1;
+		}
+		clickcount = 0;
+		dropoutcount = 0;
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		for (int channel = 0; channel < channelcount; channel++) {
+			analyse(block, framecount, realsamplepos, channel);
+		}
+	}
+	
+	/**
+	 * The channel values stay in local variables during the block.
+	 */
+	private void analyse(int[] block, int framecount, int realsamplepos, int channel) {
+		long[] residuals = this.residuals;
+		int residualsstart = channel * window;
+		int windowmask = this.windowmask;
+		int halfwindow = window / 2;
+		long threshold = click_threshold;
+		long windowsize = window;
+		int lastvalue1 = this.lastvalue1[channel];
+		int lastvalue2 = this.lastvalue2[channel];
+		long residualsum = this.residualsum[channel];
+		long level = this.level[channel];
+		int mutestart = this.mutestart[channel];
+		
+		int blockpos = channel;
+		int value;
+		int absvalue;
+		long residual;
+		long testedresidual;
+		int position = realsamplepos;
+		int testedposition;
+		for (int frame = 0; frame < framecount; frame++) {
+			value = block[blockpos];
+			blockpos += channelcount;
+			
+			residual = (long) value - 2l * (long) lastvalue1 + (long) lastvalue2;
+			if (residual < 0) {
+				residual = -residual;
+			}
+			residualsum += residual - residuals[residualsstart + (position & windowmask)];
+			residuals[residualsstart + (position & windowmask)] = residual;
+			lastvalue2 = lastvalue1;
+			lastvalue1 = value;
+			
+			/**
+			 * The residual in the middle of the window. Not at the file start: the signal starts after zeros.
+			 */
+			testedposition = position - halfwindow;
+			testedresidual = residuals[residualsstart + (testedposition & windowmask)];
+			if ((testedresidual > clicklevelmin) & (testedresidual * windowsize > threshold * residualsum) & (testedposition >= windowsize)) {
+				addClick(testedposition, channel);
+			}
+			
+			absvalue = value ^ (value >> 31);
+			if (absvalue <= mutelevel) {
+				if (mutestart == -1) {
+					mutestart = position;
+					mutelevelbefore[channel] = level;
+				}
+			} else if (mutestart != -1) {
+				addDropout(mutestart, position - mutestart, channel);
+				mutestart = -1;
+			}
+			level += (absvalue - level) >> LEVEL_SHIFT;
+			
+			position++;
+		}
+		
+		this.lastvalue1[channel] = lastvalue1;
+		this.lastvalue2[channel] = lastvalue2;
+		this.residualsum[channel] = residualsum;
+		this.level[channel] = level;
+		this.mutestart[channel] = mutestart;
+	}
+	
+	/**
+	 * @param position the first residual over the threshold: the second derivative is late by one sample, but a click raise it from its first sample.
+	 */
+	private void addClick(int position, int channel) {
+		if (position < lastclickposition[channel] + window) {
+			return;
+		}
+		lastclickposition[channel] = position;
+		clickcount++;
+		synchronized (System.err) {
+			System.err.print("Click\t");
+			System.err.print(position);
+			System.err.print("\t");
+			System.err.println(channel + 1);
+		}
+		events.add(new WavDefaulteventClick(position, channel + 1));
+	}
+	
+	private void addDropout(int position, int duration, int channel) {
+		if ((duration < dropoutminframes) | (duration > dropoutmaxframes) | (mutelevelbefore[channel] < programmelevel)) {
+			return;
+		}
+		dropoutcount++;
+		synchronized (System.err) {
+			System.err.print("Dropout\t");
+			System.err.print(position);
+			System.err.print("\t");
+			System.err.println(channel + 1);
+		}
+		events.add(new WavDefaulteventDropout(position, channel + 1, duration));
+	}
+	
+	/**
+	 * The last samples are not tested, like a mute at the end of the file.
+	 */
+	public void end() {
+	}
+	
+	public int getClickcount() {
+		return clickcount;
+	}
+	
+	public int getDropoutcount() {
+		return dropoutcount;
+	}
+	
+	public String getParameters() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("clicks ");
+		sb.append(window);
+		sb.append(" ");
+		sb.append(click_threshold);
+		sb.append(" ");
+		sb.append(clicklevelmin);
+		sb.append(" dropouts ");
+		sb.append(mutelevel);
+		sb.append(" ");
+		sb.append(dropoutminframes);
+		sb.append(" ");
+		sb.append(dropoutmaxframes);
+		sb.append(" ");
+		sb.append(programmelevel);
+		return sb.toString();
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		for (int channel = 0; channel < channelcount; channel++) {
+			out.writeInt(lastvalue1[channel]);
+			out.writeInt(lastvalue2[channel]);
+			out.writeLong(residualsum[channel]);
+			out.writeInt(lastclickposition[channel]);
+			out.writeLong(level[channel]);
+			out.writeInt(mutestart[channel]);
+			out.writeLong(mutelevelbefore[channel]);
+		}
+		for (int pos = 0; pos < residuals.length; pos++) {
+			out.writeLong(residuals[pos]);
+		}
+		out.writeInt(clickcount);
+		out.writeInt(dropoutcount);
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		for (int channel = 0; channel < channelcount; channel++) {
+			lastvalue1[channel] = in.readInt();
+			lastvalue2[channel] = in.readInt();
+			residualsum[channel] = in.readLong();
+			lastclickposition[channel] = in.readInt();
+			level[channel] = in.readLong();
+			mutestart[channel] = in.readInt();
+			mutelevelbefore[channel] = in.readLong();
+		}
+		for (int pos = 0; pos < residuals.length; pos++) {
+			residuals[pos] = in.readLong();
+		}
+		clickcount = in.readInt();
+		dropoutcount = in.readInt();
+	}
+	
+	/**
+	 * The clicks and dropouts are displayed when found, and the level is an average of all the previous samples: no segments.
+	 */
+	public WavAnalyser createSegmentAnalyser() {
+		return null;
+	}
+	
+	public int getSegmentWarmup() {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void seek(int realsamplepos) {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void startSegment() {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void mergeSegment(WavAnalyser next) {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tClicks");
+		tableline.append("\tDropouts");
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		tableline.append("\t");
+		tableline.append(clickcount);
+		tableline.append("\t");
+		tableline.append(dropoutcount);
+	}
+	
+	public void printInformations(PrintStream infoout) {
+		infoout.print("Clicks\t");
+		infoout.println(clickcount);
+		infoout.print("Dropouts\t");
+		infoout.println(dropoutcount);
+	}
+	
+}
@@ -0,0 +1,532 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Levels by channel: DC offset, RMS, crest factor and noise floor.
+ * The sums are done by steps of level_short_window. The level_long_window windows are sliding sums of the last steps,
+ * and the short windows RMS are counted in fixed size histograms: the memory don't change with the file duration.
+ * The noise floor is the lowest short window RMS, without the digital silences.
+ */
+class WavAnalyserLevel implements WavAnalyser {
+	
+	/**
+	 * Windows durations, in seconds. The long window is a multiple of the short window.
+	 */
+	private static float level_short_window = ConfigurationProperties.getP("daed.level_short_window", 0.05f);
+	private static float level_long_window = ConfigurationProperties.getP("daed.level_long_window", 3f);
+	
+	/**
+	 * For a full scale at 1.
+	 */
+	private static final double SCALE = 1d / Integer.MAX_VALUE;
+	
+	/**
+	 * Histograms bins in dB, from MIN_LEVEL dBFS to 0 dBFS. The levels are not displayed under MIN_LEVEL.
+	 */
+	private static final double MIN_LEVEL = -200;
+	private static final double HISTOGRAM_STEP = 0.1;
+	private static final int HISTOGRAM_SIZE = 2000;
+	
+	private int channelcount;
+	
+	/**
+	 * Frames by step, and steps by long window.
+	 */
+	private int stepframes;
+	private int longsteps;
+	
+	/**
+	 * For the current step, by channel.
+	 */
+	private int stepposition;
+	private long[] stepsum;
+	private double[] stepsquaresum;
+	
+	/**
+	 * By channel, for the last longsteps steps (channel after channel).
+	 */
+	private long[] stepsums;
+	private double[] stepsquaresums;
+	private int stepcount;
+	
+	/**
+	 * By channel, for all the file.
+	 */
+	private long[] sum;
+	private double[] squaresum;
+	private int[] peak;
+	private int framecount;
+	
+	/**
+	 * By channel: long windows max absolute DC offset (with its sign) and max mean square.
+	 */
+	private double[] longdcmax;
+	private double[] longsquaremax;
+	
+	/**
+	 * Short windows RMS count, by channel, by bins of HISTOGRAM_STEP dB.
+	 */
+	private int[][] histograms;
+	
+	/**
+	 * @return dBFS, MIN_LEVEL for a silence.
+	 */
+	private static double getLevel(double meansquare) {
+		if (meansquare > 0) {
+			return Math.max(MIN_LEVEL, 10 * Math.log10(meansquare));
+		}
+		return MIN_LEVEL;
+	}
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		stepframes = Math.max(1, Math.round(level_short_window * freq));
+		longsteps = Math.max(1, Math.round(level_long_window / level_short_window));
+		
+		stepposition = 0;
+		stepsum = new long[channelcount];
+		stepsquaresum = new double[channelcount];
+		stepsums = new long[channelcount * longsteps];
+		stepsquaresums = new double[channelcount * longsteps];
+		stepcount = 0;
+		sum = new long[channelcount];
+		squaresum = new double[channelcount];
+		peak = new int[channelcount];
+		framecount = 0;
+		longdcmax = new double[channelcount];
+		longsquaremax = new double[channelcount];
+		histograms = new int[channelcount][HISTOGRAM_SIZE];
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		int frame = 0;
+		int count;
+		while (frame < framecount) {
+			count = Math.min(framecount - frame, stepframes - stepposition);
+			for (int channel = 0; channel < channelcount; channel++) {
+				sum(block, frame * channelcount + channel, count, channel);
+			}
+			frame += count;
+			stepposition += count;
+			if (stepposition == stepframes) {
+				endStep();
+			}
+		}
+		this.framecount += framecount;
+	}
+	
+	/**
+	 * Sum, squares sum and peak for count samples of a channel, in local variables.
+	 * Two samples by loop, with two squares sums: the additions don't wait the previous one.
+	 */
+	private void sum(int[] block, int blockpos, int count, int channel) {
+		long sum = 0;
+		double squaresum1 = 0;
+		double squaresum2 = 0;
+		int peak = this.peak[channel];
+		int value1;
+		int value2;
+		double x1;
+		double x2;
+		int pos = 0;
+		for (; pos + 1 < count; pos += 2) {
+			value1 = block[blockpos];
+			value2 = block[blockpos + channelcount];
+			blockpos += 2 * channelcount;
+			sum += value1 + (long) value2;
+			x1 = value1 * SCALE;
+			x2 = value2 * SCALE;
+			squaresum1 += x1 * x1;
+			squaresum2 += x2 * x2;
+			peak = Math.max(peak, Math.max(value1 ^ (value1 >> 31), value2 ^ (value2 >> 31)));
+		}
+		if (pos < count) {
+			value1 = block[blockpos];
+			sum += value1;
+			x1 = value1 * SCALE;
+			squaresum1 += x1 * x1;
+			peak = Math.max(peak, value1 ^ (value1 >> 31));
+		}
+		stepsum[channel] += sum;
+		stepsquaresum[channel] += squaresum1 + squaresum2;
+		this.peak[channel] = peak;
+	}
+	
+	private void endStep() {
+		int ringpos = stepcount % longsteps;
+		for (int channel = 0; channel < channelcount; channel++) {
+			sum[channel] += stepsum[channel];
+			squaresum[channel] += stepsquaresum[channel];
+			
+			if (stepsquaresum[channel] > 0) {
+				histograms[channel][getBin(getLevel(stepsquaresum[channel] / stepframes))]++;
+			}
+			
+			stepsums[channel * longsteps + ringpos] = stepsum[channel];
+			stepsquaresums[channel * longsteps + ringpos] = stepsquaresum[channel];
+			stepsum[channel] = 0;
+			stepsquaresum[channel] = 0;
+		}
+		stepposition = 0;
+		stepcount++;
+		
+		if (stepcount >= longsteps) {
+			/**
+			 * longsteps additions by step: no drift with the doubles, for a negligible cost.
+			 */
+			long windowsum;
+			double windowsquaresum;
+			for (int channel = 0; channel < channelcount; channel++) {
+				windowsum = 0;
+				windowsquaresum = 0;
+				for (int pos = channel * longsteps; pos < (channel + 1) * longsteps; pos++) {
+					windowsum += stepsums[pos];
+					windowsquaresum += stepsquaresums[pos];
+				}
+				updateLongWindow(channel, windowsum, windowsquaresum, longsteps * stepframes);
+			}
+		}
+	}
+	
+	private void updateLongWindow(int channel, long windowsum, double windowsquaresum, int windowframes) {
+		double dc = windowsum * SCALE / windowframes;
+		if (Math.abs(dc) > Math.abs(longdcmax[channel])) {
+			longdcmax[channel] = dc;
+		}
+		if (windowsquaresum / windowframes > longsquaremax[channel]) {
+			longsquaremax[channel] = windowsquaresum / windowframes;
+		}
+	}
+	
+	private static int getBin(double level) {
+		return Math.max(0, Math.min(HISTOGRAM_SIZE - 1, (int) ((level - MIN_LEVEL) / HISTOGRAM_STEP)));
+	}
+	
+	/**
+	 * The last step is counted for the file, not for the windows. A file shorter than a long window is one long window.
+	 */
+	public void end() {
+		for (int channel = 0; channel < channelcount; channel++) {
+			sum[channel] += stepsum[channel];
+			squaresum[channel] += stepsquaresum[channel];
+			stepsum[channel] = 0;
+			stepsquaresum[channel] = 0;
+			if ((stepcount < longsteps) & (framecount > 0)) {
+				updateLongWindow(channel, sum[channel], squaresum[channel], framecount);
+			}
+		}
+		stepposition = 0;
+	}
+	
+	/**
+	 * @return percents of the full scale.
+	 */
+	public double getDc_offset(int channel) {
+		if (framecount == 0) {
+			return 0;
+		}
+		return 100 * sum[channel] * SCALE / framecount;
+	}
+	
+	/**
+	 * @return percents of the full scale.
+	 */
+	public double getDc_offset_max(int channel) {
+		return 100 * longdcmax[channel];
+	}
+	
+	/**
+	 * @return dBFS
+	 */
+	public double getRms(int channel) {
+		if (framecount == 0) {
+			return MIN_LEVEL;
+		}
+		return getLevel(squaresum[channel] / framecount);
+	}
+	
+	/**
+	 * @return dBFS
+	 */
+	public double getRms_max(int channel) {
+		return getLevel(longsquaremax[channel]);
+	}
+	
+	/**
+	 * @return dB, 0 for a silence.
+	 */
+	public double getCrest_factor(int channel) {
+		if (peak[channel] == 0) {
+			return 0;
+		}
+		return 20 * Math.log10(peak[channel] * SCALE) - getRms(channel);
+	}
+	
+	/**
+	 * @return dBFS, the lowest bin middle. MIN_LEVEL if there is only silences.
+	 */
+	public double getNoise_floor(int channel) {
+		for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+			if (histograms[channel][bin] > 0) {
+				return MIN_LEVEL + (bin + 0.5) * HISTOGRAM_STEP;
+			}
+		}
+		return MIN_LEVEL;
+	}
+	
+	/**
+	 * @return the channel with the most high absolute DC offset.
+	 */
+	private int getDc_offset_channel() {
+		int result = 0;
+		for (int channel = 1; channel < channelcount; channel++) {
+			if (Math.abs(getDc_offset(channel)) > Math.abs(getDc_offset(result))) {
+				result = channel;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return dBFS, all the channels
+	 */
+	public double getRms() {
+		if (framecount == 0) {
+			return MIN_LEVEL;
+		}
+		double total = 0;
+		for (int channel = 0; channel < channelcount; channel++) {
+			total += squaresum[channel];
+		}
+		return getLevel(total / ((double) framecount * channelcount));
+	}
+	
+	/**
+	 * @return dB, all the channels peak and RMS.
+	 */
+	public double getCrest_factor() {
+		int maxpeak = 0;
+		for (int channel = 0; channel < channelcount; channel++) {
+			maxpeak = Math.max(maxpeak, peak[channel]);
+		}
+		if (maxpeak == 0) {
+			return 0;
+		}
+		return 20 * Math.log10(maxpeak * SCALE) - getRms();
+	}
+	
+	/**
+	 * @return dBFS, the most noisy channel.
+	 */
+	public double getNoise_floor() {
+		double result = MIN_LEVEL;
+		for (int channel = 0; channel < channelcount; channel++) {
+			result = Math.max(result, getNoise_floor(channel));
+		}
+		return result;
+	}
+	
+	public String getParameters() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("level ");
+		sb.append(stepframes);
+		sb.append(" ");
+		sb.append(longsteps);
+		return sb.toString();
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		out.writeInt(stepposition);
+		out.writeInt(stepcount);
+		out.writeInt(framecount);
+		for (int channel = 0; channel < channelcount; channel++) {
+			out.writeLong(stepsum[channel]);
+			out.writeDouble(stepsquaresum[channel]);
+			out.writeLong(sum[channel]);
+			out.writeDouble(squaresum[channel]);
+			out.writeInt(peak[channel]);
+			out.writeDouble(longdcmax[channel]);
+			out.writeDouble(longsquaremax[channel]);
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				out.writeInt(histograms[channel][bin]);
+			}
+		}
+		for (int pos = 0; pos < stepsums.length; pos++) {
+			out.writeLong(stepsums[pos]);
+			out.writeDouble(stepsquaresums[pos]);
+		}
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		stepposition = in.readInt();
+		stepcount = in.readInt();
+		framecount = in.readInt();
+		for (int channel = 0; channel < channelcount; channel++) {
+			stepsum[channel] = in.readLong();
+			stepsquaresum[channel] = in.readDouble();
+			sum[channel] = in.readLong();
+			squaresum[channel] = in.readDouble();
+			peak[channel] = in.readInt();
+			longdcmax[channel] = in.readDouble();
+			longsquaremax[channel] = in.readDouble();
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				histograms[channel][bin] = in.readInt();
+			}
+		}
+		for (int pos = 0; pos < stepsums.length; pos++) {
+			stepsums[pos] = in.readLong();
+			stepsquaresums[pos] = in.readDouble();
+		}
+	}
+	
+	public WavAnalyser createSegmentAnalyser() {
+		return new WavAnalyserLevel();
+	}
+	
+	/**
+	 * A long window of complete steps before the step at the segment start, and the incomplete step at the warm-up start.
+	 */
+	public int getSegmentWarmup() {
+		return (longsteps + 2) * stepframes;
+	}
+	
+	public void seek(int realsamplepos) {
+		stepposition = realsamplepos % stepframes;
+		stepcount = realsamplepos / stepframes;
+	}
+	
+	/**
+	 * The step at the segment start is counted by the segment, with its warm-up frames.
+	 */
+	public void startSegment() {
+		for (int channel = 0; channel < channelcount; channel++) {
+			sum[channel] = 0;
+			squaresum[channel] = 0;
+			peak[channel] = 0;
+			longdcmax[channel] = 0;
+			longsquaremax[channel] = 0;
+			Arrays.fill(histograms[channel], 0);
+		}
+		framecount = 0;
+	}
+	
+	/**
+	 * The current step of this segment is dropped: the next segment have counted it.
+	 * The squares sums are added by segment: the RMS can differ from an analysis without segments by a rounding error.
+	 */
+	public void mergeSegment(WavAnalyser next) {
+		WavAnalyserLevel segment = (WavAnalyserLevel) next;
+		for (int channel = 0; channel < channelcount; channel++) {
+			sum[channel] += segment.sum[channel];
+			squaresum[channel] += segment.squaresum[channel];
+			peak[channel] = Math.max(peak[channel], segment.peak[channel]);
+			if (Math.abs(segment.longdcmax[channel]) > Math.abs(longdcmax[channel])) {
+				longdcmax[channel] = segment.longdcmax[channel];
+			}
+			longsquaremax[channel] = Math.max(longsquaremax[channel], segment.longsquaremax[channel]);
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				histograms[channel][bin] += segment.histograms[channel][bin];
+			}
+		}
+		framecount += segment.framecount;
+		
+		stepposition = segment.stepposition;
+		stepcount = segment.stepcount;
+		System.arraycopy(segment.stepsum, 0, stepsum, 0, channelcount);
+		System.arraycopy(segment.stepsquaresum, 0, stepsquaresum, 0, channelcount);
+		System.arraycopy(segment.stepsums, 0, stepsums, 0, stepsums.length);
+		System.arraycopy(segment.stepsquaresums, 0, stepsquaresums, 0, stepsquaresums.length);
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tDC offset channel");
+		tableline.append("\tDC offset");
+		tableline.append("\tRMS");
+		tableline.append("\tCrest factor");
+		tableline.append("\tNoise floor");
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		int dcchannel = getDc_offset_channel();
+		tableline.append("\t");
+		tableline.append(dcchannel + 1);
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getDc_offset(dcchannel)));
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getRms()));
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getCrest_factor()));
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getNoise_floor()));
+	}
+	
+	/**
+	 * One value by channel on each line.
+	 */
+	public void printInformations(PrintStream infoout) {
+		infoout.print("DC offset");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getDc_offset(channel)));
+		}
+		infoout.println();
+		infoout.print("DC offset max");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getDc_offset_max(channel)));
+		}
+		infoout.println();
+		infoout.print("RMS");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getRms(channel)));
+		}
+		infoout.println();
+		infoout.print("RMS max");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getRms_max(channel)));
+		}
+		infoout.println();
+		infoout.print("Crest factor");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getCrest_factor(channel)));
+		}
+		infoout.println();
+		infoout.print("Noise floor");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(WavFile.currentnumberformat.format(getNoise_floor(channel)));
+		}
+		infoout.println();
+	}
+	
+}
@@ -0,0 +1,504 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Loudness like ITU-R BS.1770 and EBU R128: integrated loudness (LUFS), loudness range (LU, EBU Tech 3342) and short-term max (LUFS).
+ * The K-weighted energies are summed by steps of 100 ms. The 400 ms (momentary) and 3 s (short-term) blocks are sums of the last steps,
+ * and the gating is done with fixed size histograms: the memory don't change with the file duration.
+ */
+class WavAnalyserLoudness implements WavAnalyser {
+	
+	/**
+	 * For a full scale at 1.
+	 */
+	private static final double SCALE = 1d / Integer.MAX_VALUE;
+	
+	/**
+	 * Steps count by block: 400 ms and 3 s with 100 ms steps.
+	 */
+	private static final int MOMENTARY_STEPS = 4;
+	private static final int SHORTTERM_STEPS = 30;
+	
+	/**
+	 * In LUFS and LU.
+	 */
+	private static final double ABSOLUTE_GATE = -70;
+	private static final double INTEGRATED_RELATIVE_GATE = -10;
+	private static final double RANGE_RELATIVE_GATE = -20;
+	
+	private static final double RANGE_LOW_PERCENTILE = 0.1;
+	private static final double RANGE_HIGH_PERCENTILE = 0.95;
+	
+	/**
+	 * Histograms bins in LU, from ABSOLUTE_GATE.
+	 */
+	private static final double HISTOGRAM_STEP = 0.1;
+	private static final int HISTOGRAM_SIZE = 1000;
+	
+	private int channelcount;
+	
+	/**
+	 * By channel. For 6 channels (5.1, wav order), the LFE is not counted and the surround channels are weighted to 1.41.
+	 */
+	private double[] channelweights;
+	
+	/**
+	 * K-weighting: high shelf (stage 1) and high pass (stage 2) biquads. The stage 2 b coefficients are 1, -2, 1.
+	 */
+	private double stage1_b0;
+	private double stage1_b1;
+	private double stage1_b2;
+	private double stage1_a1;
+	private double stage1_a2;
+	private double stage2_a1;
+	private double stage2_a2;
+	
+	/**
+	 * Transposed direct form 2, 2 values by stage, 4 values by channel.
+	 */
+	private double[] filterstate;
+	
+	/**
+	 * Frames by step.
+	 */
+	private int stepframes;
+	
+	/**
+	 * For the current step.
+	 */
+	private int stepposition;
+	private double stepenergy;
+	
+	/**
+	 * Mean square by step, for the last SHORTTERM_STEPS steps.
+	 */
+	private double[] stepenergies;
+	private int stepcount;
+	
+	private Histogram momentaryhistogram;
+	private Histogram shorttermhistogram;
+	private double shorttermmax;
+	
+	/**
+	 * Block loudnesses count and energies sum, by bins of HISTOGRAM_STEP LU, only for the blocks over ABSOLUTE_GATE.
+	 */
+	private static class Histogram {
+		
+		int[] counts = new int[HISTOGRAM_SIZE];
+		double[] energies = new double[HISTOGRAM_SIZE];
+		
+		void add(double energy) {
+			double loudness = getLoudness(energy);
+			if ((loudness > ABSOLUTE_GATE) == false) {
+				return;
+			}
+			int bin = Math.min(HISTOGRAM_SIZE - 1, (int) ((loudness - ABSOLUTE_GATE) / HISTOGRAM_STEP));
+			counts[bin]++;
+			energies[bin] += energy;
+		}
+		
+		/**
+		 * @return the first bin over the relative gate, HISTOGRAM_SIZE if the histogram is empty.
+		 */
+		int getRelativeGateBin(double relativegate) {
+			long count = 0;
+			double energy = 0;
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				count += counts[bin];
+				energy += energies[bin];
+			}
+			if (count == 0) {
+				return HISTOGRAM_SIZE;
+			}
+			double gate = getLoudness(energy / count) + relativegate;
+			return Math.max(0, Math.min(HISTOGRAM_SIZE, (int) Math.ceil((gate - ABSOLUTE_GATE) / HISTOGRAM_STEP)));
+		}
+		
+		/**
+		 * @return LUFS, ABSOLUTE_GATE if there is no block over the gates.
+		 */
+		double getGatedLoudness(double relativegate) {
+			long count = 0;
+			double energy = 0;
+			for (int bin = getRelativeGateBin(relativegate); bin < HISTOGRAM_SIZE; bin++) {
+				count += counts[bin];
+				energy += energies[bin];
+			}
+			if (count == 0) {
+				return ABSOLUTE_GATE;
+			}
+			return getLoudness(energy / count);
+		}
+		
+		/**
+		 * @return bins middles difference between the high and the low percentiles of the blocks over the gates, 0 if there is no block.
+		 */
+		double getRange(double relativegate, double lowpercentile, double highpercentile) {
+			int firstbin = getRelativeGateBin(relativegate);
+			long count = 0;
+			for (int bin = firstbin; bin < HISTOGRAM_SIZE; bin++) {
+				count += counts[bin];
+			}
+			if (count == 0) {
+				return 0;
+			}
+			long lowindex = Math.round((count - 1) * lowpercentile);
+			long highindex = Math.round((count - 1) * highpercentile);
+			int lowbin = -1;
+			int highbin = -1;
+			long cumulative = 0;
+			for (int bin = firstbin; bin < HISTOGRAM_SIZE; bin++) {
+				cumulative += counts[bin];
+				if ((lowbin == -1) & (cumulative > lowindex)) {
+					lowbin = bin;
+				}
+				if ((highbin == -1) & (cumulative > highindex)) {
+					highbin = bin;
+				}
+			}
+			return (highbin - lowbin) * HISTOGRAM_STEP;
+		}
+		
+		/**
+		 * Add the blocks of an another histogram.
+		 */
+		void add(Histogram histogram) {
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				counts[bin] += histogram.counts[bin];
+				energies[bin] += histogram.energies[bin];
+			}
+		}
+		
+		void write(DataOutputStream out) throws IOException {
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				out.writeInt(counts[bin]);
+				out.writeDouble(energies[bin]);
+			}
+		}
+		
+		void read(DataInputStream in) throws IOException {
+			for (int bin = 0; bin < HISTOGRAM_SIZE; bin++) {
+				counts[bin] = in.readInt();
+				energies[bin] = in.readDouble();
+			}
+		}
+		
+	}
+	
+	/**
+	 * @param energy weighted mean square.
+	 * @return LUFS
+	 */
+	private static double getLoudness(double energy) {
+		return -0.691 + 10 * Math.log10(energy);
+	}
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		channelweights = new double[channelcount];
+		for (int channel = 0; channel < channelcount; channel++) {
+			channelweights[channel] = 1;
+		}
+		if (channelcount == 6) {
+			channelweights[3] = 0;
+			channelweights[4] = 1.41;
+			channelweights[5] = 1.41;
+		}
+		
+		/**
+		 * BS.1770 filters, computed for freq. At 48 kHz, they are the same as the BS.1770 coefficients.
+		 */
+		double f0 = 1681.974450955533;
+		double gain = 3.999843853973347;
+		double q = 0.7071752369554196;
+		double k = Math.tan(Math.PI * f0 / freq);
+		double vh = Math.pow(10, gain / 20);
+		double vb = Math.pow(vh, 0.4996667741545416);
+		double a0 = 1 + k / q + k * k;
+		stage1_b0 = (vh + vb * k / q + k * k) / a0;
+		stage1_b1 = 2 * (k * k - vh) / a0;
+		stage1_b2 = (vh - vb * k / q + k * k) / a0;
+		stage1_a1 = 2 * (k * k - 1) / a0;
+		stage1_a2 = (1 - k / q + k * k) / a0;
+		
+		f0 = 38.13547087602444;
+		q = 0.5003270373238773;
+		k = Math.tan(Math.PI * f0 / freq);
+		a0 = 1 + k / q + k * k;
+		stage2_a1 = 2 * (k * k - 1) / a0;
+		stage2_a2 = (1 - k / q + k * k) / a0;
+		
+		filterstate = new double[channelcount * 4];
+		stepframes = (freq + 5) / 10;
+		stepposition = 0;
+		stepenergy = 0;
+		stepenergies = new double[SHORTTERM_STEPS];
+		stepcount = 0;
+		momentaryhistogram = new Histogram();
+		shorttermhistogram = new Histogram();
+		shorttermmax = ABSOLUTE_GATE;
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		int frame = 0;
+		int count;
+		while (frame < framecount) {
+			count = Math.min(framecount - frame, stepframes - stepposition);
+			for (int channel = 0; channel < channelcount; channel++) {
+				if (channelweights[channel] != 0) {
+					stepenergy += channelweights[channel] * filter(block, frame * channelcount + channel, count, channel);
+				}
+			}
+			frame += count;
+			stepposition += count;
+			if (stepposition == stepframes) {
+				endStep();
+			}
+		}
+	}
+	
+	/**
+	 * K-weighting for count samples of a channel, the filter values stay in local variables.
+	 * @return the sum of the squared filtered values.
+	 */
+	private double filter(int[] block, int blockpos, int count, int channel) {
+		double b10 = stage1_b0;
+		double b11 = stage1_b1;
+		double b12 = stage1_b2;
+		double a11 = stage1_a1;
+		double a12 = stage1_a2;
+		double a21 = stage2_a1;
+		double a22 = stage2_a2;
+		int statepos = channel * 4;
+		double s11 = filterstate[statepos];
+		double s12 = filterstate[statepos + 1];
+		double s21 = filterstate[statepos + 2];
+		double s22 = filterstate[statepos + 3];
+		
+		double sum = 0;
+		double x;
+		double y1;
+		double y2;
+		for (int pos = 0; pos < count; pos++) {
+			x = block[blockpos] * SCALE;
+			blockpos += channelcount;
+			/**
+			 * The previous output is used at the end of the computations: it's the only dependency between two loops.
+			 */
+			y1 = b10 * x + s11;
+			s11 = (b11 * x + s12) - a11 * y1;
+			s12 = b12 * x - a12 * y1;
+			y2 = y1 + s21;
+			s21 = (s22 - 2 * y1) - a21 * y2;
+			s22 = y1 - a22 * y2;
+			sum += y2 * y2;
+		}
+		
+		setFilterState(statepos, s11, s12, s21, s22);
+		return sum;
+	}
+	
+	/**
+	 * After a signal, the silence slowly make denormalized values, very slow to compute.
+	 */
+	private void setFilterState(int statepos, double s11, double s12, double s21, double s22) {
+		filterstate[statepos] = flushDenormal(s11);
+		filterstate[statepos + 1] = flushDenormal(s12);
+		filterstate[statepos + 2] = flushDenormal(s21);
+		filterstate[statepos + 3] = flushDenormal(s22);
+	}
+	
+	private static double flushDenormal(double value) {
+		if (Math.abs(value) < 1e-30) {
+			return 0;
+		}
+		return value;
+	}
+	
+	/**
+	 * Update the histograms with the blocks ending at the last step.
+	 */
+	private void endStep() {
+		stepenergies[stepcount % SHORTTERM_STEPS] = stepenergy / stepframes;
+		stepcount++;
+		
+		if (stepcount >= MOMENTARY_STEPS) {
+			momentaryhistogram.add(getBlockEnergy(MOMENTARY_STEPS));
+		}
+		if (stepcount >= SHORTTERM_STEPS) {
+			double energy = getBlockEnergy(SHORTTERM_STEPS);
+			shorttermhistogram.add(energy);
+			shorttermmax = Math.max(shorttermmax, getLoudness(energy));
+		}
+		
+		stepposition = 0;
+		stepenergy = 0;
+	}
+	
+	/**
+	 * The last steps are added again at each step, for a negligible cost: no drift with the doubles, and the same sums in a segment as in all the file.
+	 * @return the block mean square.
+	 */
+	private double getBlockEnergy(int steps) {
+		double sum = 0;
+		for (int step = stepcount - steps; step < stepcount; step++) {
+			sum += stepenergies[step % SHORTTERM_STEPS];
+		}
+		return sum / steps;
+	}
+	
+	/**
+	 * The last incomplete step is not counted, like the incomplete blocks.
+	 */
+	public void end() {
+	}
+	
+	/**
+	 * @return LUFS, ABSOLUTE_GATE (-70) if the file is too low or too short.
+	 */
+	public double getIntegrated_loudness() {
+		return momentaryhistogram.getGatedLoudness(INTEGRATED_RELATIVE_GATE);
+	}
+	
+	/**
+	 * @return LU
+	 */
+	public double getLoudness_range() {
+		return shorttermhistogram.getRange(RANGE_RELATIVE_GATE, RANGE_LOW_PERCENTILE, RANGE_HIGH_PERCENTILE);
+	}
+	
+	/**
+	 * @return LUFS, ABSOLUTE_GATE (-70) if the file is shorter than 3 s, or too low.
+	 */
+	public double getShortterm_max() {
+		return shorttermmax;
+	}
+	
+	public String getParameters() {
+		return "loudness " + MOMENTARY_STEPS + " " + SHORTTERM_STEPS + " " + HISTOGRAM_STEP;
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		for (int pos = 0; pos < filterstate.length; pos++) {
+			out.writeDouble(filterstate[pos]);
+		}
+		out.writeInt(stepposition);
+		out.writeDouble(stepenergy);
+		for (int pos = 0; pos < stepenergies.length; pos++) {
+			out.writeDouble(stepenergies[pos]);
+		}
+		out.writeInt(stepcount);
+		momentaryhistogram.write(out);
+		shorttermhistogram.write(out);
+		out.writeDouble(shorttermmax);
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		for (int pos = 0; pos < filterstate.length; pos++) {
+			filterstate[pos] = in.readDouble();
+		}
+		stepposition = in.readInt();
+		stepenergy = in.readDouble();
+		for (int pos = 0; pos < stepenergies.length; pos++) {
+			stepenergies[pos] = in.readDouble();
+		}
+		stepcount = in.readInt();
+		momentaryhistogram.read(in);
+		shorttermhistogram.read(in);
+		shorttermmax = in.readDouble();
+	}
+	
+	public WavAnalyser createSegmentAnalyser() {
+		return new WavAnalyserLoudness();
+	}
+	
+	/**
+	 * A short-term block of complete steps before the step at the segment start, the incomplete step at the warm-up start,
+	 * and one second more for the filters: their values from before the warm-up are under the doubles precision.
+	 */
+	public int getSegmentWarmup() {
+		return (SHORTTERM_STEPS + 12) * stepframes;
+	}
+	
+	public void seek(int realsamplepos) {
+		stepposition = realsamplepos % stepframes;
+		stepcount = realsamplepos / stepframes;
+	}
+	
+	/**
+	 * The step at the segment start is counted by the segment, with its warm-up frames.
+	 */
+	public void startSegment() {
+		momentaryhistogram = new Histogram();
+		shorttermhistogram = new Histogram();
+		shorttermmax = ABSOLUTE_GATE;
+	}
+	
+	/**
+	 * The current step of this segment is dropped: the next segment have counted it.
+	 * The histograms energies are added by segment: the loudness can differ from an analysis without segments by a rounding error.
+	 */
+	public void mergeSegment(WavAnalyser next) {
+		WavAnalyserLoudness segment = (WavAnalyserLoudness) next;
+		momentaryhistogram.add(segment.momentaryhistogram);
+		shorttermhistogram.add(segment.shorttermhistogram);
+		shorttermmax = Math.max(shorttermmax, segment.shorttermmax);
+		
+		System.arraycopy(segment.filterstate, 0, filterstate, 0, filterstate.length);
+		stepposition = segment.stepposition;
+		stepenergy = segment.stepenergy;
+		System.arraycopy(segment.stepenergies, 0, stepenergies, 0, stepenergies.length);
+		stepcount = segment.stepcount;
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tIntegrated loudness");
+		tableline.append("\tLoudness range");
+		tableline.append("\tShort-term max");
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getIntegrated_loudness()));
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getLoudness_range()));
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getShortterm_max()));
+	}
+	
+	public void printInformations(PrintStream infoout) {
+		infoout.print("Integrated loudness\t");
+		infoout.println(WavFile.currentnumberformat.format(getIntegrated_loudness()));
+		infoout.print("Loudness range\t");
+		infoout.println(WavFile.currentnumberformat.format(getLoudness_range()));
+		infoout.print("Short-term max\t");
+		infoout.println(WavFile.currentnumberformat.format(getShortterm_max()));
+	}
+	
+}
@@ -0,0 +1,436 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Real resolution of the signal, for the padded bit depths and the upsampled sample rates.
+ * Bit depth: by channel, the samples (aligned on the 32b high bits) are OR-ed, and their trailing zeros counts are counted in a histogram.
+ * The effective bit depth ignore the lowest bits used by less than bitdepth_min_ratio of the samples (like a fade or a gain on few samples).
+ * Band limit: a FFT every bandlimit_interval on the channels mean, with the same buffers. The powers are averaged for all the file,
+ * and the band limit is the most high frequency over bandlimit_level from the most high power.
+ */
+class WavAnalyserResolution implements WavAnalyser {
+	
+	/**
+	 * Ratio of the non zero samples.
+	 */
+	private static float bitdepth_min_ratio = ConfigurationProperties.getP("daed.bitdepth_min_ratio", 0.01f);
+	
+	/**
+	 * Compute the band limit.
+	 */
+	private static boolean bandlimit = ConfigurationProperties.getP("daed.bandlimit", true);
+	
+	/**
+	 * Seconds between 2 FFT.
+	 */
+	private static float bandlimit_interval = ConfigurationProperties.getP("daed.bandlimit_interval", 1f);
+	
+	/**
+	 * dB, relative to the most high power.
+	 */
+	private static float bandlimit_level = ConfigurationProperties.getP("daed.bandlimit_level", -100f);
+	
+	/**
+	 * For a full scale at 1.
+	 */
+	private static final double SCALE = 1d / Integer.MAX_VALUE;
+	
+	private static final int FFT_BITS = 12;
+	private static final int FFT_SIZE = 1 << FFT_BITS;
+	
+	private int channelcount;
+	private int freq;
+	private int bitspersample;
+	
+	/**
+	 * By channel: all the samples OR-ed, and samples count by trailing zeros count (32 for the zeros).
+	 */
+	private int[] bits;
+	private long[][] trailingzeros;
+	
+	/**
+	 * Frames between 2 FFT starts, and current position in the interval.
+	 */
+	private int intervalframes;
+	private int intervalposition;
+	
+	/**
+	 * FFT input, with the channels means of the first FFT_SIZE frames of the interval.
+	 */
+	private double[] fftreal;
+	private double[] fftimaginary;
+	
+	/**
+	 * Hann window, sin and cos for the FFT, bit reversed indexes.
+	 */
+	private double[] window;
+	private double[] cos;
+	private double[] sin;
+	private int[] reversed;
+	
+	/**
+	 * Powers sum by bin, for fftcount FFT.
+	 */
+	private double[] powers;
+	private int fftcount;
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		this.freq = freq;
+		this.bitspersample = bitspersample;
+		bits = new int[channelcount];
+		trailingzeros = new long[channelcount][33];
+		
+		intervalframes = Math.max(FFT_SIZE, Math.round(bandlimit_interval * freq));
+		intervalposition = 0;
+		fftreal = new double[FFT_SIZE];
+		fftimaginary = new double[FFT_SIZE];
+		window = new double[FFT_SIZE];
+		cos = new double[FFT_SIZE / 2];
+		sin = new double[FFT_SIZE / 2];
+		reversed = new int[FFT_SIZE];
+		for (int pos = 0; pos < FFT_SIZE; pos++) {
+			window[pos] = 0.5 - 0.5 * Math.cos(2 * Math.PI * pos / FFT_SIZE);
+			reversed[pos] = Integer.reverse(pos) >>> (32 - FFT_BITS);
+		}
+		for (int pos = 0; pos < FFT_SIZE / 2; pos++) {
+			cos[pos] = Math.cos(2 * Math.PI * pos / FFT_SIZE);
+			sin[pos] = -Math.sin(2 * Math.PI * pos / FFT_SIZE);
+		}
+		powers = new double[FFT_SIZE / 2 + 1];
+		fftcount = 0;
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		for (int channel = 0; channel < channelcount; channel++) {
+			analyseBits(block, framecount, channel);
+		}
+		if (bandlimit) {
+			analyseBand(block, framecount);
+		}
+	}
+	
+	/**
+	 * The counts stay in the histogram: a increment by sample.
+	 */
+	private void analyseBits(int[] block, int framecount, int channel) {
+		long[] trailingzeros = this.trailingzeros[channel];
+		int bits = 0;
+		int value;
+		int blockpos = channel;
+		for (int frame = 0; frame < framecount; frame++) {
+			value = block[blockpos];
+			blockpos += channelcount;
+			bits |= value;
+			trailingzeros[Integer.numberOfTrailingZeros(value)]++;
+		}
+		this.bits[channel] |= bits;
+	}
+	
+	private void analyseBand(int[] block, int framecount) {
+		int frame = 0;
+		int count;
+		int blockpos;
+		double sum;
+		double mean = SCALE / channelcount;
+		while (frame < framecount) {
+			if (intervalposition < FFT_SIZE) {
+				count = Math.min(framecount - frame, FFT_SIZE - intervalposition);
+				blockpos = frame * channelcount;
+				for (int pos = intervalposition; pos < intervalposition + count; pos++) {
+					sum = 0;
+					for (int channel = 0; channel < channelcount; channel++) {
+						sum += block[blockpos + channel];
+					}
+					blockpos += channelcount;
+					fftreal[pos] = sum * mean * window[pos];
+				}
+				if (intervalposition + count == FFT_SIZE) {
+					addSpectrum();
+				}
+			} else {
+				count = Math.min(framecount - frame, intervalframes - intervalposition);
+			}
+			frame += count;
+			intervalposition += count;
+			if (intervalposition == intervalframes) {
+				intervalposition = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Radix 2 FFT on fftreal, added to powers.
+	 */
+	private void addSpectrum() {
+		double[] real = fftreal;
+		double[] imaginary = fftimaginary;
+		int swap;
+		double temp;
+		for (int pos = 0; pos < FFT_SIZE; pos++) {
+			imaginary[pos] = 0;
+			swap = reversed[pos];
+			if (swap > pos) {
+				temp = real[pos];
+				real[pos] = real[swap];
+				real[swap] = temp;
+			}
+		}
+		
+		int half;
+		int step;
+		double wr;
+		double wi;
+		double tr;
+		double ti;
+		for (int size = 2; size <= FFT_SIZE; size *= 2) {
+			half = size / 2;
+			step = FFT_SIZE / size;
+			for (int start = 0; start < FFT_SIZE; start += size) {
+				for (int pos = 0; pos < half; pos++) {
+					wr = cos[pos * step];
+					wi = sin[pos * step];
+					tr = wr * real[start + pos + half] - wi * imaginary[start + pos + half];
+					ti = wr * imaginary[start + pos + half] + wi * real[start + pos + half];
+					real[start + pos + half] = real[start + pos] - tr;
+					imaginary[start + pos + half] = imaginary[start + pos] - ti;
+					real[start + pos] += tr;
+					imaginary[start + pos] += ti;
+				}
+			}
+		}
+		
+		for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+			powers[bin] += real[bin] * real[bin] + imaginary[bin] * imaginary[bin];
+		}
+		fftcount++;
+	}
+	
+	public void end() {
+	}
+	
+	/**
+	 * @return bits count of the OR-ed samples: the lowest used bit.
+	 */
+	public int getBits_used(int channel) {
+		if (bits[channel] == 0) {
+			return 0;
+		}
+		return 32 - Integer.numberOfTrailingZeros(bits[channel]);
+	}
+	
+	/**
+	 * @return bits count, without the lowest bits used by less than bitdepth_min_ratio of the non zero samples. 0 for a silence.
+	 */
+	public int getEffective_bits(int channel) {
+		long nonzero = 0;
+		for (int zeros = 0; zeros < 32; zeros++) {
+			nonzero += trailingzeros[channel][zeros];
+		}
+		if (nonzero == 0) {
+			return 0;
+		}
+		long count = 0;
+		for (int zeros = 0; zeros < 32; zeros++) {
+			count += trailingzeros[channel][zeros];
+			if (count >= bitdepth_min_ratio * nonzero) {
+				return 32 - zeros;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return the most high channel effective bits.
+	 */
+	public int getEffective_bits() {
+		int result = 0;
+		for (int channel = 0; channel < channelcount; channel++) {
+			result = Math.max(result, getEffective_bits(channel));
+		}
+		return result;
+	}
+	
+	/**
+	 * @return Hz, 0 if there is no FFT (short file, or only silence).
+	 */
+	public int getBand_limit() {
+		if (fftcount == 0) {
+			return 0;
+		}
+		double max = 0;
+		for (int bin = 1; bin <= FFT_SIZE / 2; bin++) {
+			max = Math.max(max, powers[bin]);
+		}
+		if (max == 0) {
+			return 0;
+		}
+		double threshold = max * Math.pow(10, bandlimit_level / 10);
+		for (int bin = FFT_SIZE / 2; bin > 0; bin--) {
+			if (powers[bin] > threshold) {
+				return (int) Math.round((double) bin * freq / FFT_SIZE);
+			}
+		}
+		return 0;
+	}
+	
+	public String getParameters() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("resolution ");
+		sb.append(bitspersample);
+		sb.append(" ");
+		sb.append(bitdepth_min_ratio);
+		if (bandlimit) {
+			sb.append(" bandlimit ");
+			sb.append(intervalframes);
+			sb.append(" ");
+			sb.append(bandlimit_level);
+		}
+		return sb.toString();
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		for (int channel = 0; channel < channelcount; channel++) {
+			out.writeInt(bits[channel]);
+			for (int zeros = 0; zeros < 33; zeros++) {
+				out.writeLong(trailingzeros[channel][zeros]);
+			}
+		}
+		out.writeInt(intervalposition);
+		for (int pos = 0; pos < Math.min(intervalposition, FFT_SIZE); pos++) {
+			out.writeDouble(fftreal[pos]);
+		}
+		for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+			out.writeDouble(powers[bin]);
+		}
+		out.writeInt(fftcount);
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		for (int channel = 0; channel < channelcount; channel++) {
+			bits[channel] = in.readInt();
+			for (int zeros = 0; zeros < 33; zeros++) {
+				trailingzeros[channel][zeros] = in.readLong();
+			}
+		}
+		intervalposition = in.readInt();
+		for (int pos = 0; pos < Math.min(intervalposition, FFT_SIZE); pos++) {
+			fftreal[pos] = in.readDouble();
+		}
+		for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+			powers[bin] = in.readDouble();
+		}
+		fftcount = in.readInt();
+	}
+	
+	public WavAnalyser createSegmentAnalyser() {
+		return new WavAnalyserResolution();
+	}
+	
+	/**
+	 * A FFT ending in the segment is started in the warm-up.
+	 */
+	public int getSegmentWarmup() {
+		return FFT_SIZE;
+	}
+	
+	public void seek(int realsamplepos) {
+		intervalposition = realsamplepos % intervalframes;
+	}
+	
+	public void startSegment() {
+		for (int channel = 0; channel < channelcount; channel++) {
+			bits[channel] = 0;
+			Arrays.fill(trailingzeros[channel], 0);
+		}
+		Arrays.fill(powers, 0);
+		fftcount = 0;
+	}
+	
+	/**
+	 * The current FFT of this segment is dropped: the next segment have done it.
+	 * The powers are added by segment: they can differ from an analysis without segments by a rounding error.
+	 */
+	public void mergeSegment(WavAnalyser next) {
+		WavAnalyserResolution segment = (WavAnalyserResolution) next;
+		for (int channel = 0; channel < channelcount; channel++) {
+			bits[channel] |= segment.bits[channel];
+			for (int zeros = 0; zeros < 33; zeros++) {
+				trailingzeros[channel][zeros] += segment.trailingzeros[channel][zeros];
+			}
+		}
+		for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+			powers[bin] += segment.powers[bin];
+		}
+		fftcount += segment.fftcount;
+		
+		intervalposition = segment.intervalposition;
+		System.arraycopy(segment.fftreal, 0, fftreal, 0, FFT_SIZE);
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tEffective bits");
+		if (bandlimit) {
+			tableline.append("\tBand limit");
+		}
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		tableline.append("\t");
+		tableline.append(getEffective_bits());
+		if (bandlimit) {
+			tableline.append("\t");
+			tableline.append(getBand_limit());
+		}
+	}
+	
+	/**
+	 * One value by channel on the bits lines.
+	 */
+	public void printInformations(PrintStream infoout) {
+		infoout.print("Bits used");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(getBits_used(channel));
+		}
+		infoout.println();
+		infoout.print("Effective bits");
+		for (int channel = 0; channel < channelcount; channel++) {
+			infoout.print("\t");
+			infoout.print(getEffective_bits(channel));
+		}
+		infoout.println();
+		if (bandlimit) {
+			infoout.print("Band limit\t");
+			infoout.println(getBand_limit());
+		}
+	}
+	
+}
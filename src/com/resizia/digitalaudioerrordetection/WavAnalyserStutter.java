@@ -0,0 +1,426 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Repeated buffers (stutters): the same frames written twice in a row, for stutter_min_frames to stutter_max_frames.
+ * By channel group, a rolling hash on the last stutter_min_frames frames is searched in a table of the previous hashes positions.
+ * A table hit is confirmed with a compare of the frames, and followed frame after frame up to the end of the repetition.
+ * A periodic signal (like a test tone) is not a stutter: the frames before and after the repetition are the same too, or the repetition last more than MAX_REPEATS times its length.
+ */
+class WavAnalyserStutter implements WavAnalyser {
+	
+	/**
+	 * Repeated buffers sizes, in frames. The rolling hash is on stutter_min_frames.
+	 */
+	private static int stutter_min_frames = ConfigurationProperties.getP("daed.stutter_min_frames", 256);
+	private static int stutter_max_frames = ConfigurationProperties.getP("daed.stutter_max_frames", 4096);
+	
+	/**
+	 * Channels count by group (the channels written in the same buffers). 0 for all the channels in one group.
+	 */
+	private static int stutter_group_channels = ConfigurationProperties.getP("daed.stutter_group_channels", 0);
+	
+	private static final int MAX_REPEATS = 3;
+	
+	/**
+	 * Odd multipliers for the frames hashes and the rolling hash (modulo 2^64).
+	 */
+	private static final long FRAME_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+	private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * State for a channel group.
+	 */
+	private static class Group {
+		
+		int firstchannel;
+		int channelcount;
+		
+		/**
+		 * The last frames and their hashes, in circular buffers (historymask + 1 frames).
+		 */
+		int[] history;
+		long[] framehashes;
+		
+		long rollinghash;
+		
+		/**
+		 * Hash table, with the window end position for each rolling hash, -1 if empty.
+		 * An entry is replaced by the next hash with the same index, and too old positions are ignored.
+		 */
+		long[] tablehashes;
+		int[] tablepositions;
+		
+		/**
+		 * Current repetition: distance in frames (0 if none), frames count, and not a stutter.
+		 * After its end (first different frame, -1 before), the same frames count on the stutter_min_frames next frames.
+		 */
+		int matchdistance;
+		int matchlength;
+		boolean matchperiodic;
+		int matchend;
+		int sameafter;
+		
+		Group(int firstchannel, int channelcount, int historyframes, int tablesize) {
+			this.firstchannel = firstchannel;
+			this.channelcount = channelcount;
+			history = new int[historyframes * channelcount];
+			framehashes = new long[historyframes];
+			tablehashes = new long[tablesize];
+			tablepositions = new int[tablesize];
+			for (int pos = 0; pos < tablesize; pos++) {
+				tablepositions[pos] = -1;
+			}
+		}
+	}
+	
+	private int channelcount;
+	private List<WavDefaultevent> events;
+	
+	private Group[] groups;
+	
+	/**
+	 * Power of 2 sizes.
+	 */
+	private int historymask;
+	private int tablebits;
+	
+	/**
+	 * HASH_MULTIPLIER^stutter_min_frames, for remove the oldest frame from the rolling hash.
+	 */
+	private long oldestmultiplier;
+	
+	private int nextposition;
+	private int stuttercount;
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		if (stutter_min_frames < 1) {
+			throw new IllegalArgumentException("Invalid stutter_min_frames: " + stutter_min_frames);
+		}
+		if (stutter_max_frames < stutter_min_frames) {
+			throw new IllegalArgumentException("Invalid stutter_max_frames: " + stutter_max_frames);
+		}
+		this.channelcount = channelcount;
+		this.events = events;
+		
+		/**
+		 * A confirmation compare the 2 repetitions, and the stutter_min_frames frames before.
+		 */
+		int historyframes = 1;
+		while (historyframes < 2 * stutter_max_frames + stutter_min_frames) {
+			historyframes *= 2;
+		}
+		historymask = historyframes - 1;
+		
+		/**
+		 * A hash must stay in the table during stutter_max_frames inserts: 4 times more entries.
+		 */
+		tablebits = 1;
+		while ((1 << tablebits) < 4 * stutter_max_frames) {
+			tablebits++;
+		}
+		
+		oldestmultiplier = 1;
+		for (int pos = 0; pos < stutter_min_frames; pos++) {
+			oldestmultiplier *= HASH_MULTIPLIER;
+		}
+		
+		int groupchannels = stutter_group_channels;
+		if ((groupchannels < 1) | (groupchannels > channelcount)) {
+			groupchannels = channelcount;
+		}
+		groups = new Group[(channelcount + groupchannels - 1) / groupchannels];
+		for (int pos = 0; pos < groups.length; pos++) {
+			int firstchannel = pos * groupchannels;
+			groups[pos] = new Group(firstchannel, Math.min(groupchannels, channelcount - firstchannel), historyframes, 1 << tablebits);
+		}
+		nextposition = 0;
+		stuttercount = 0;
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		for (int pos = 0; pos < groups.length; pos++) {
+			analyse(block, framecount, realsamplepos, groups[pos]);
+		}
+		nextposition = realsamplepos + framecount;
+	}
+	
+	private void analyse(int[] block, int framecount, int realsamplepos, Group group) {
+		int[] history = group.history;
+		long[] framehashes = group.framehashes;
+		long[] tablehashes = group.tablehashes;
+		int[] tablepositions = group.tablepositions;
+		int groupchannels = group.channelcount;
+		int historymask = this.historymask;
+		int tableshift = 64 - tablebits;
+		long oldestmultiplier = this.oldestmultiplier;
+		long rollinghash = group.rollinghash;
+		
+		int blockpos = group.firstchannel;
+		int historypos;
+		int value;
+		long framehash;
+		int slot;
+		int candidate;
+		int distance;
+		int position = realsamplepos;
+		for (int frame = 0; frame < framecount; frame++) {
+			historypos = (position & historymask) * groupchannels;
+			framehash = 0;
+			for (int channel = 0; channel < groupchannels; channel++) {
+				value = block[blockpos + channel];
+				history[historypos + channel] = value;
+				framehash = framehash * FRAME_MULTIPLIER + value;
+			}
+			blockpos += channelcount;
+			
+			/**
+			 * The frames before the file start have a 0 hash.
+			 */
+			rollinghash = rollinghash * HASH_MULTIPLIER + framehash - framehashes[(position - stutter_min_frames) & historymask] * oldestmultiplier;
+			framehashes[position & historymask] = framehash;
+			
+			/**
+			 * The most high bits: the most mixed by the multiplications.
+			 */
+			slot = (int) (rollinghash >>> tableshift);
+			
+			if (group.matchdistance > 0) {
+				followMatch(group, position);
+			} else if (tablehashes[slot] == rollinghash) {
+				candidate = tablepositions[slot];
+				distance = position - candidate;
+				if ((candidate >= stutter_min_frames - 1) & (distance >= stutter_min_frames) & (distance <= stutter_max_frames)) {
+					startMatch(group, position, distance);
+				}
+			}
+			tablehashes[slot] = rollinghash;
+			tablepositions[slot] = position;
+			
+			position++;
+		}
+		group.rollinghash = rollinghash;
+	}
+	
+	private static boolean isSameFrame(Group group, int position, int distance) {
+		int historypos = (position & (group.framehashes.length - 1)) * group.channelcount;
+		int previouspos = ((position - distance) & (group.framehashes.length - 1)) * group.channelcount;
+		for (int channel = 0; channel < group.channelcount; channel++) {
+			if (group.history[historypos + channel] != group.history[previouspos + channel]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Confirm a table hit: compare the frames before position with the frames distance before them, up to distance frames.
+	 * A hash collision, or a repetition shorter than the rolling hash, is ignored.
+	 */
+	private void startMatch(Group group, int position, int distance) {
+		int length = 0;
+		while ((length < distance) & (position - length - distance >= 0)) {
+			if (isSameFrame(group, position - length, distance) == false) {
+				break;
+			}
+			length++;
+		}
+		if (length < stutter_min_frames) {
+			return;
+		}
+		
+		int start = position - length + 1;
+		int samebefore = 0;
+		for (int pos = Math.max(start - stutter_min_frames, distance); pos < start; pos++) {
+			if (isSameFrame(group, pos, distance)) {
+				samebefore++;
+			}
+		}
+		
+		group.matchdistance = distance;
+		group.matchlength = length;
+		group.matchperiodic = samebefore > stutter_min_frames / 2;
+		group.matchend = -1;
+		group.sameafter = 0;
+	}
+	
+	private void followMatch(Group group, int position) {
+		boolean same = isSameFrame(group, position, group.matchdistance);
+		if (group.matchend == -1) {
+			if (same) {
+				group.matchlength++;
+			} else {
+				group.matchend = position;
+			}
+		} else {
+			if (same) {
+				group.sameafter++;
+			}
+			if (position - group.matchend >= stutter_min_frames) {
+				endMatch(group);
+			}
+		}
+	}
+	
+	private void endMatch(Group group) {
+		int distance = group.matchdistance;
+		int length = group.matchlength;
+		int position = group.matchend - length;
+		group.matchdistance = 0;
+		group.matchlength = 0;
+		if (group.matchperiodic | (group.sameafter > stutter_min_frames / 2) | (length < distance) | (length > MAX_REPEATS * distance)) {
+			return;
+		}
+		stuttercount++;
+		synchronized (System.err) {
+			System.err.print("Stutter\t");
+			System.err.print(position);
+			System.err.print("\t");
+			System.err.println(group.firstchannel + 1);
+		}
+		events.add(new WavDefaulteventStutter(position, group.firstchannel + 1, distance));
+	}
+	
+	/**
+	 * A repetition at the end of the file: no frames after it.
+	 */
+	public void end() {
+		for (int pos = 0; pos < groups.length; pos++) {
+			if (groups[pos].matchdistance > 0) {
+				if (groups[pos].matchend == -1) {
+					groups[pos].matchend = nextposition;
+				}
+				endMatch(groups[pos]);
+			}
+		}
+	}
+	
+	public int getStuttercount() {
+		return stuttercount;
+	}
+	
+	public String getParameters() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("stutters ");
+		sb.append(stutter_min_frames);
+		sb.append(" ");
+		sb.append(stutter_max_frames);
+		sb.append(" ");
+		sb.append(groups.length);
+		return sb.toString();
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		Group group;
+		for (int pos = 0; pos < groups.length; pos++) {
+			group = groups[pos];
+			for (int historypos = 0; historypos < group.history.length; historypos++) {
+				out.writeInt(group.history[historypos]);
+			}
+			for (int historypos = 0; historypos < group.framehashes.length; historypos++) {
+				out.writeLong(group.framehashes[historypos]);
+			}
+			out.writeLong(group.rollinghash);
+			for (int slot = 0; slot < group.tablehashes.length; slot++) {
+				out.writeLong(group.tablehashes[slot]);
+				out.writeInt(group.tablepositions[slot]);
+			}
+			out.writeInt(group.matchdistance);
+			out.writeInt(group.matchlength);
+			out.writeBoolean(group.matchperiodic);
+			out.writeInt(group.matchend);
+			out.writeInt(group.sameafter);
+		}
+		out.writeInt(nextposition);
+		out.writeInt(stuttercount);
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		Group group;
+		for (int pos = 0; pos < groups.length; pos++) {
+			group = groups[pos];
+			for (int historypos = 0; historypos < group.history.length; historypos++) {
+				group.history[historypos] = in.readInt();
+			}
+			for (int historypos = 0; historypos < group.framehashes.length; historypos++) {
+				group.framehashes[historypos] = in.readLong();
+			}
+			group.rollinghash = in.readLong();
+			for (int slot = 0; slot < group.tablehashes.length; slot++) {
+				group.tablehashes[slot] = in.readLong();
+				group.tablepositions[slot] = in.readInt();
+			}
+			group.matchdistance = in.readInt();
+			group.matchlength = in.readInt();
+			group.matchperiodic = in.readBoolean();
+			group.matchend = in.readInt();
+			group.sameafter = in.readInt();
+		}
+		nextposition = in.readInt();
+		stuttercount = in.readInt();
+	}
+	
+	/**
+	 * The repetitions are displayed when found, with the end of the previous one: no segments.
+	 */
+	public WavAnalyser createSegmentAnalyser() {
+		return null;
+	}
+	
+	public int getSegmentWarmup() {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void seek(int realsamplepos) {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void startSegment() {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void mergeSegment(WavAnalyser next) {
+		throw new UnsupportedOperationException("No segments for this analysis");
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tStutters");
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		tableline.append("\t");
+		tableline.append(stuttercount);
+	}
+	
+	public void printInformations(PrintStream infoout) {
+		infoout.print("Stutters\t");
+		infoout.println(stuttercount);
+	}
+	
+}
@@ -0,0 +1,491 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * True peak (dBTP), like ITU-R BS.1770 annex 2: 4x oversampling with a polyphase FIR interpolation, and the max absolute value.
+ * The interpolation is only computed on the parts of the blocks that can raise the current true peak.
+ */
+class WavAnalyserTruepeak implements WavAnalyser {
+	
+	/**
+	 * Oversampling factor, and filter taps count by phase.
+	 */
+	private static final int OVERSAMPLING = 4;
+	private static final int TAPS = 12;
+	
+	/**
+	 * An interpolated value between x[i] and x[i + 1] is computed from x[i - TAPS_BEFORE] to x[i + TAPS - TAPS_BEFORE - 1].
+	 */
+	private static final int TAPS_BEFORE = TAPS / 2 - 1;
+	
+	/**
+	 * Samples kept by channel between two blocks.
+	 */
+	private static final int HISTORY = TAPS - 1;
+	
+	/**
+	 * Kaiser window parameter for the filter.
+	 */
+	private static final double KAISER_BETA = 5;
+	
+	/**
+	 * By phase, from 1 to OVERSAMPLING - 1 (the phase 0 is the sample itself).
+	 */
+	private static final double[][] COEFFICIENTS = createCoefficients();
+	
+	/**
+	 * An interpolated absolute value between x[i] and x[i + 1] can't be more high than CENTER_GAIN * max(|x[i]|, |x[i + 1]|) + OUTER_GAIN * the max absolute value of the other samples.
+	 */
+	private static final double CENTER_GAIN = computeGain(true);
+	private static final double OUTER_GAIN = computeGain(false);
+	
+	/**
+	 * For a full scale at 1.
+	 */
+	private static final double SCALE = 1d / Integer.MAX_VALUE;
+	
+	/**
+	 * Intervals count for a max value.
+	 */
+	private static final int CHUNK = 32;
+	
+	private int channelcount;
+	
+	/**
+	 * The last HISTORY frames.
+	 */
+	private int[] history;
+	
+	/**
+	 * HISTORY frames, and the block frames, interleaved like the block.
+	 * The samples stay in integer, they are only converted for the interpolated intervals.
+	 */
+	private int[] buffer;
+	
+	/**
+	 * Samples for one interpolation, or for a chunk.
+	 */
+	private double[] window;
+	
+	/**
+	 * Max absolute values by interval, for a chunk.
+	 */
+	private double[] intervalmax;
+	
+	/**
+	 * Next frame position, after the last analysed block.
+	 */
+	private int nextrealsamplepos;
+	
+	/**
+	 * Linear, 1 is full scale.
+	 */
+	private double truepeak;
+	private int truepeak_position_sample;
+	private int truepeak_channel_id;
+	
+	/**
+	 * Windowed sinc, normalized for each phase.
+	 */
+	private static double[][] createCoefficients() {
+		double[][] coefficients = new double[OVERSAMPLING - 1][TAPS];
+		double halfwidth = TAPS / 2;
+		double t;
+		double sum;
+		for (int phase = 1; phase < OVERSAMPLING; phase++) {
+			sum = 0;
+			for (int tap = 0; tap < TAPS; tap++) {
+				t = (double) phase / (double) OVERSAMPLING + TAPS_BEFORE - tap;
+				coefficients[phase - 1][tap] = Math.sin(Math.PI * t) / (Math.PI * t) * besselI0(KAISER_BETA * Math.sqrt(1 - (t / halfwidth) * (t / halfwidth))) / besselI0(KAISER_BETA);
+				sum += coefficients[phase - 1][tap];
+			}
+			for (int tap = 0; tap < TAPS; tap++) {
+				coefficients[phase - 1][tap] /= sum;
+			}
+		}
+		return coefficients;
+	}
+	
+	/**
+	 * Modified Bessel function, first kind, order 0.
+	 */
+	private static double besselI0(double x) {
+		double result = 1;
+		double term = 1;
+		for (int k = 1; k < 50; k++) {
+			term *= (x / (2 * k)) * (x / (2 * k));
+			result += term;
+		}
+		return result;
+	}
+	
+	/**
+	 * @param center the x[i] and x[i + 1] taps, or all the others.
+	 */
+	private static double computeGain(boolean center) {
+		double maxgain = 0;
+		double gain;
+		for (int phase = 0; phase < COEFFICIENTS.length; phase++) {
+			gain = 0;
+			for (int tap = 0; tap < TAPS; tap++) {
+				if (((tap == TAPS_BEFORE) | (tap == TAPS_BEFORE + 1)) == center) {
+					gain += Math.abs(COEFFICIENTS[phase][tap]);
+				}
+			}
+			maxgain = Math.max(maxgain, gain);
+		}
+		return maxgain;
+	}
+	
+	public void init(int channelcount, int freq, int bitspersample, List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		history = new int[HISTORY * channelcount];
+		buffer = new int[(HISTORY + 1) * channelcount];
+		window = new double[CHUNK + TAPS - 1];
+		intervalmax = new double[CHUNK];
+		nextrealsamplepos = 0;
+		truepeak = 0;
+		truepeak_position_sample = -1;
+		truepeak_channel_id = -1;
+	}
+	
+	/**
+	 * @return the absolute value, minus 1 for the negative values (no overflow with Integer.MIN_VALUE).
+	 */
+	private static int getAbsValue(int value) {
+		return value ^ (value >> 31);
+	}
+	
+	public void analyse(int[] block, int framecount, int realsamplepos) {
+		if (buffer.length < (HISTORY + framecount) * channelcount) {
+			buffer = new int[(HISTORY + framecount) * channelcount];
+		}
+		System.arraycopy(history, 0, buffer, 0, history.length);
+		System.arraycopy(block, 0, buffer, history.length, framecount * channelcount);
+		interpolate(HISTORY + framecount, realsamplepos - HISTORY);
+		System.arraycopy(buffer, framecount * channelcount, history, 0, history.length);
+		nextrealsamplepos = realsamplepos + framecount;
+	}
+	
+	/**
+	 * The last samples, with silence after.
+	 */
+	public void end() {
+		int length = HISTORY + TAPS - TAPS_BEFORE - 1;
+		if (buffer.length < length * channelcount) {
+			buffer = new int[length * channelcount];
+		}
+		System.arraycopy(history, 0, buffer, 0, history.length);
+		for (int pos = history.length; pos < length * channelcount; pos++) {
+			buffer[pos] = 0;
+		}
+		interpolate(length, nextrealsamplepos - HISTORY);
+	}
+	
+	/**
+	 * An interpolated value between x[i] and x[i + 1] can't raise the true peak if |x[i]| and |x[i + 1]| are not more high than this value.
+	 * @param maxvalue max getAbsValue() of the interval samples.
+	 * @return as getAbsValue(), -1 if all the values can raise the true peak.
+	 */
+	private int getThreshold(int maxvalue) {
+		double threshold = (truepeak - OUTER_GAIN * (maxvalue + 1) * SCALE) / CENTER_GAIN;
+		if (threshold <= 0) {
+			return -1;
+		}
+		return (int) (threshold * Integer.MAX_VALUE) - 1;
+	}
+	
+	/**
+	 * Max absolute value for the samples and the interpolated values between them, for all the buffer intervals with all their samples.
+	 * The chunks are tested for all the channels at once, in the interleaved buffer, before the channel after channel tests.
+	 * @param length buffer frames
+	 * @param firstrealsamplepos position in file of the first buffer frame.
+	 */
+	private void interpolate(int length, int firstrealsamplepos) {
+		int lastinterval = length - TAPS + TAPS_BEFORE;
+		int chunkend;
+		int maxvalue;
+		int end;
+		
+		for (int chunkstart = TAPS_BEFORE; chunkstart <= lastinterval; chunkstart += CHUNK) {
+			chunkend = Math.min(chunkstart + CHUNK, lastinterval + 1);
+			
+			maxvalue = 0;
+			end = (chunkend + TAPS - TAPS_BEFORE - 1) * channelcount;
+			for (int pos = (chunkstart - TAPS_BEFORE) * channelcount; pos < end; pos++) {
+				maxvalue = Math.max(maxvalue, getAbsValue(buffer[pos]));
+			}
+			if (maxvalue <= getThreshold(maxvalue)) {
+				continue;
+			}
+			
+			for (int channel = 0; channel < channelcount; channel++) {
+				interpolate(chunkstart, chunkend, firstrealsamplepos, channel);
+			}
+		}
+	}
+	
+	/**
+	 * An interval is only interpolated if its samples can raise the true peak: |value| <= CENTER_GAIN * max(|x[i]|, |x[i + 1]|) + OUTER_GAIN * chunk max.
+	 * If it's the case for the most part of the chunk intervals, all the chunk is interpolated.
+	 * @param chunkstart first interval, included.
+	 * @param chunkend last interval, excluded.
+	 */
+	private void interpolate(int chunkstart, int chunkend, int firstrealsamplepos, int channel) {
+		int maxvalue = 0;
+		int end = (chunkend + TAPS - TAPS_BEFORE - 1) * channelcount;
+		for (int pos = (chunkstart - TAPS_BEFORE) * channelcount + channel; pos < end; pos += channelcount) {
+			maxvalue = Math.max(maxvalue, getAbsValue(buffer[pos]));
+		}
+		int threshold = getThreshold(maxvalue);
+		if (maxvalue <= threshold) {
+			return;
+		}
+		
+		int value;
+		int bufferpos = chunkstart * channelcount + channel;
+		int nextvalue = getAbsValue(buffer[bufferpos]);
+		int count = 0;
+		for (int interval = chunkstart; interval < chunkend; interval++) {
+			value = nextvalue;
+			bufferpos += channelcount;
+			nextvalue = getAbsValue(buffer[bufferpos]);
+			if ((value > threshold) | (nextvalue > threshold)) {
+				count++;
+			}
+		}
+		if (count * 2 > chunkend - chunkstart) {
+			interpolateChunk(chunkstart, chunkend, firstrealsamplepos, channel);
+			return;
+		}
+		
+		double interpolated;
+		bufferpos = chunkstart * channelcount + channel;
+		nextvalue = getAbsValue(buffer[bufferpos]);
+		for (int interval = chunkstart; interval < chunkend; interval++) {
+			value = nextvalue;
+			nextvalue = getAbsValue(buffer[bufferpos + channelcount]);
+			if ((value > threshold) | (nextvalue > threshold)) {
+				interpolated = Math.abs(buffer[bufferpos] * SCALE);
+				if (interpolated > truepeak) {
+					setTruepeak(interpolated, firstrealsamplepos + interval, channel);
+					threshold = getThreshold(maxvalue);
+				}
+				interpolated = getMaxInterpolated(bufferpos);
+				if (interpolated > truepeak) {
+					setTruepeak(interpolated, firstrealsamplepos + interval, channel);
+					threshold = getThreshold(maxvalue);
+				}
+			}
+			bufferpos += channelcount;
+		}
+	}
+	
+	/**
+	 * All the chunk intervals, phase after phase. The coefficients stay in local variables.
+	 */
+	private void interpolateChunk(int chunkstart, int chunkend, int firstrealsamplepos, int channel) {
+		int count = chunkend - chunkstart;
+		double[] window = this.window;
+		double[] intervalmax = this.intervalmax;
+		int bufferpos = (chunkstart - TAPS_BEFORE) * channelcount + channel;
+		for (int pos = 0; pos < count + TAPS - 1; pos++) {
+			window[pos] = buffer[bufferpos] * SCALE;
+			bufferpos += channelcount;
+		}
+		for (int pos = 0; pos < count; pos++) {
+			intervalmax[pos] = Math.abs(window[pos + TAPS_BEFORE]);
+		}
+		
+		double[] coefficients;
+		double value;
+		for (int phase = 0; phase < COEFFICIENTS.length; phase++) {
+			coefficients = COEFFICIENTS[phase];
+			double c0 = coefficients[0];
+			double c1 = coefficients[1];
+			double c2 = coefficients[2];
+			double c3 = coefficients[3];
+			double c4 = coefficients[4];
+			double c5 = coefficients[5];
+			double c6 = coefficients[6];
+			double c7 = coefficients[7];
+			double c8 = coefficients[8];
+			double c9 = coefficients[9];
+			double c10 = coefficients[10];
+			double c11 = coefficients[11];
+			for (int pos = 0; pos < count; pos++) {
+				/**
+				 * Same additions order as getMaxInterpolated().
+				 */
+				value = c0 * window[pos] + c1 * window[pos + 1] + c2 * window[pos + 2] + c3 * window[pos + 3] + c4 * window[pos + 4] + c5 * window[pos + 5];
+				value = value + c6 * window[pos + 6] + c7 * window[pos + 7] + c8 * window[pos + 8] + c9 * window[pos + 9] + c10 * window[pos + 10] + c11 * window[pos + 11];
+				value = Math.abs(value);
+				if (value > intervalmax[pos]) {
+					intervalmax[pos] = value;
+				}
+			}
+		}
+		
+		for (int pos = 0; pos < count; pos++) {
+			if (intervalmax[pos] > truepeak) {
+				setTruepeak(intervalmax[pos], firstrealsamplepos + chunkstart + pos, channel);
+			}
+		}
+	}
+	
+	/**
+	 * @return max absolute interpolated value between buffer[bufferpos] and the next sample of the same channel, for all the phases.
+	 */
+	private double getMaxInterpolated(int bufferpos) {
+		int pos = bufferpos - TAPS_BEFORE * channelcount;
+		double[] window = this.window;
+		for (int tap = 0; tap < TAPS; tap++) {
+			window[tap] = buffer[pos] * SCALE;
+			pos += channelcount;
+		}
+		double max = 0;
+		double value;
+		double[] coefficients;
+		for (int phase = 0; phase < COEFFICIENTS.length; phase++) {
+			coefficients = COEFFICIENTS[phase];
+			value = 0;
+			for (int tap = 0; tap < TAPS; tap++) {
+				value += coefficients[tap] * window[tap];
+			}
+			value = Math.abs(value);
+			if (value > max) {
+				max = value;
+			}
+		}
+		return max;
+	}
+	
+	private void setTruepeak(double value, int realsamplepos, int channel) {
+		truepeak = value;
+		truepeak_position_sample = realsamplepos;
+		truepeak_channel_id = channel;
+	}
+	
+	/**
+	 * @return dBTP
+	 */
+	public double getTruepeak_value_dbtp() {
+		return 20 * Math.log10(truepeak);
+	}
+	
+	/**
+	 * @return the sample position just before the true peak.
+	 */
+	public int getTruepeak_position_sample() {
+		return truepeak_position_sample;
+	}
+	
+	public int getTruepeak_channel_id() {
+		return truepeak_channel_id;
+	}
+	
+	public String getParameters() {
+		return "truepeak " + OVERSAMPLING + " " + TAPS + " " + KAISER_BETA;
+	}
+	
+	public void writeState(DataOutputStream out) throws IOException {
+		for (int pos = 0; pos < history.length; pos++) {
+			out.writeInt(history[pos]);
+		}
+		out.writeInt(nextrealsamplepos);
+		out.writeDouble(truepeak);
+		out.writeInt(truepeak_position_sample);
+		out.writeInt(truepeak_channel_id);
+	}
+	
+	public void readState(DataInputStream in) throws IOException {
+		for (int pos = 0; pos < history.length; pos++) {
+			history[pos] = in.readInt();
+		}
+		nextrealsamplepos = in.readInt();
+		truepeak = in.readDouble();
+		truepeak_position_sample = in.readInt();
+		truepeak_channel_id = in.readInt();
+	}
+	
+	public WavAnalyser createSegmentAnalyser() {
+		return new WavAnalyserTruepeak();
+	}
+	
+	public int getSegmentWarmup() {
+		return HISTORY;
+	}
+	
+	public void seek(int realsamplepos) {
+		nextrealsamplepos = realsamplepos;
+	}
+	
+	public void startSegment() {
+		truepeak = 0;
+		truepeak_position_sample = -1;
+		truepeak_channel_id = -1;
+	}
+	
+	/**
+	 * The first position of the most high value: the next segment only if it is more high.
+	 */
+	public void mergeSegment(WavAnalyser next) {
+		WavAnalyserTruepeak segment = (WavAnalyserTruepeak) next;
+		if (segment.truepeak > truepeak) {
+			setTruepeak(segment.truepeak, segment.truepeak_position_sample, segment.truepeak_channel_id);
+		}
+		System.arraycopy(segment.history, 0, history, 0, history.length);
+		nextrealsamplepos = segment.nextrealsamplepos;
+	}
+	
+	public void appendTableHeader(StringBuffer tableline) {
+		tableline.append("\tTrue peak channel");
+		tableline.append("\tTrue peak position");
+		tableline.append("\tTrue peak value");
+	}
+	
+	public void appendTableValues(StringBuffer tableline) {
+		tableline.append("\t");
+		tableline.append(truepeak_channel_id + 1);
+		tableline.append("\t");
+		tableline.append(truepeak_position_sample);
+		tableline.append("\t");
+		tableline.append(WavFile.currentnumberformat.format(getTruepeak_value_dbtp()));
+	}
+	
+	public void printInformations(PrintStream infoout) {
+		infoout.print("True peak channel\t");
+		infoout.println(truepeak_channel_id + 1);
+		infoout.print("True peak position\t");
+		infoout.println(truepeak_position_sample);
+		infoout.print("True peak value\t");
+		infoout.println(WavFile.currentnumberformat.format(getTruepeak_value_dbtp()));
+	}
+	
+}
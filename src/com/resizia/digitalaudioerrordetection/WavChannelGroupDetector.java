@@ -0,0 +1,226 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.util.concurrent.Callable;
+
+/**
+ * WavDetector analysis for some consecutive channels, channel after channel, directly in the interleaved block.
+ * Only the channels values are updated here: the events are candidates, the no_warning_duration is applied by WavDetector, after all the groups.
+ * The channel values stay in local variables during a channel, and the events are only tested when a counter reach its threshold.
+ */
+class WavChannelGroupDetector implements Callable<Object> {
+	
+	/**
+	 * Candidates types, index in candidates arrays.
+	 */
+	static final int CANDIDATE_DIGITALSILENCE = 0;
+	static final int CANDIDATE_OVERMODULATION = 1;
+	static final int CANDIDATE_HOLD = 2;
+	
+	/**
+	 * The overmodulation values are Integer.MIN_VALUE, and OVERMODULATION_LEVEL to Integer.MAX_VALUE:
+	 * value - OVERMODULATION_LEVEL is between 0 and OVERMODULATION_RANGE (unsigned) only for them, tested with one comparison.
+	 */
+	private static final int OVERMODULATION_LEVEL = 0x7FFF0000;
+	private static final int OVERMODULATION_RANGE = Integer.MIN_VALUE - OVERMODULATION_LEVEL;
+	
+	private int channelcount;
+	int firstchannel;
+	private int lastchannel;
+	private int same_sample_threshold_silence;
+	private int same_sample_threshold_hold;
+	private WavDetectionState state;
+	
+	private int[] block;
+	private int framecount;
+	
+	/**
+	 * Absolute max value by channel, for the last block.
+	 */
+	private int[] channelmaxvalue;
+	
+	/**
+	 * Results for the last block.
+	 * maxrawpos is the raw (interleaved) position in block, -1 if maxvalue is not more high than the state peak.
+	 */
+	int maxvalue;
+	int maxrawpos;
+	
+	/**
+	 * By candidate type: frame position in block and sample value, channel after channel, in frame order.
+	 * candidatechannelend is the candidates end index for each group channel.
+	 */
+	int[] candidatecount;
+	int[][] candidateframe;
+	int[][] candidatevalue;
+	int[][] candidatechannelend;
+	
+	/**
+	 * @param firstchannel included
+	 * @param lastchannel excluded
+	 */
+	WavChannelGroupDetector(int channelcount, int firstchannel, int lastchannel, int same_sample_threshold_silence, int same_sample_threshold_hold, WavDetectionState state) {
+		this.channelcount = channelcount;
+		this.firstchannel = firstchannel;
+		this.lastchannel = lastchannel;
+		this.same_sample_threshold_silence = same_sample_threshold_silence;
+		this.same_sample_threshold_hold = same_sample_threshold_hold;
+		this.state = state;
+		channelmaxvalue = new int[lastchannel - firstchannel];
+		candidatecount = new int[3];
+		candidateframe = new int[3][16];
+		candidatevalue = new int[3][16];
+		candidatechannelend = new int[3][lastchannel - firstchannel];
+	}
+	
+	/**
+	 * @param block interleaved samples, framecount complete frames.
+	 */
+	void setBlock(int[] block, int framecount) {
+		this.block = block;
+		this.framecount = framecount;
+	}
+	
+	public Object call() {
+		candidatecount[CANDIDATE_DIGITALSILENCE] = 0;
+		candidatecount[CANDIDATE_OVERMODULATION] = 0;
+		candidatecount[CANDIDATE_HOLD] = 0;
+		
+		int[] block = this.block;
+		int channelcount = this.channelcount;
+		int[] channelvalues = state.channelvalues;
+		int thresholdsilence = same_sample_threshold_silence;
+		int thresholdhold = same_sample_threshold_hold;
+		
+		int currentvalue;
+		int lastvalue;
+		int samevaluecount;
+		int silencesamplecount;
+		int channelmax;
+		int blockpos;
+		int channelpos;
+		
+		for (int channel = firstchannel; channel < lastchannel; channel++) {
+			channelpos = channel * WavDetectionState.CHANNELVALUES;
+			lastvalue = channelvalues[channelpos + WavDetectionState.LASTVALUE];
+			samevaluecount = channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT];
+			silencesamplecount = channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT];
+			channelmax = 0;
+			blockpos = channel;
+			
+			for (int frame = 0; frame < framecount; frame++) {
+				currentvalue = block[blockpos];
+				blockpos += channelcount;
+				
+				/**
+				 * Math.abs(Integer.MIN_VALUE) is negative, it's never the max.
+				 */
+				channelmax = Math.max(channelmax, Math.abs(currentvalue));
+				
+				if (currentvalue != lastvalue) {
+					/**
+					 * The most frequent case with a real signal.
+					 * The silence count is not reset here.
+					 */
+					samevaluecount = 0;
+					lastvalue = currentvalue;
+					if (((currentvalue - OVERMODULATION_LEVEL) ^ Integer.MIN_VALUE) <= (OVERMODULATION_RANGE ^ Integer.MIN_VALUE)) {
+						addCandidate(CANDIDATE_OVERMODULATION, frame, currentvalue);
+					} else if (thresholdhold == 0) {
+						addCandidate(CANDIDATE_HOLD, frame, currentvalue);
+					}
+				} else if (currentvalue == 0) {
+					samevaluecount++;
+					silencesamplecount++;
+					if (silencesamplecount == thresholdsilence) {
+						addCandidate(CANDIDATE_DIGITALSILENCE, frame, currentvalue);
+					}
+				} else {
+					samevaluecount++;
+					silencesamplecount = 0;
+					if (samevaluecount == thresholdhold) {
+						addCandidate(CANDIDATE_HOLD, frame, currentvalue);
+					}
+				}
+			}
+			
+			channelvalues[channelpos + WavDetectionState.LASTVALUE] = lastvalue;
+			channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT] = samevaluecount;
+			channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT] = silencesamplecount;
+			channelmaxvalue[channel - firstchannel] = channelmax;
+			candidatechannelend[CANDIDATE_DIGITALSILENCE][channel - firstchannel] = candidatecount[CANDIDATE_DIGITALSILENCE];
+			candidatechannelend[CANDIDATE_OVERMODULATION][channel - firstchannel] = candidatecount[CANDIDATE_OVERMODULATION];
+			candidatechannelend[CANDIDATE_HOLD][channel - firstchannel] = candidatecount[CANDIDATE_HOLD];
+		}
+		
+		computePeakPosition();
+		return null;
+	}
+	
+	/**
+	 * Search the first raw position of the group max value, only if it will change the state peak.
+	 */
+	private void computePeakPosition() {
+		maxvalue = 0;
+		maxrawpos = -1;
+		for (int pos = 0; pos < channelmaxvalue.length; pos++) {
+			maxvalue = Math.max(maxvalue, channelmaxvalue[pos]);
+		}
+		if (maxvalue <= state.maxvalue) {
+			return;
+		}
+		
+		int blockpos;
+		for (int channel = firstchannel; channel < lastchannel; channel++) {
+			if (channelmaxvalue[channel - firstchannel] != maxvalue) {
+				continue;
+			}
+			blockpos = channel;
+			for (int frame = 0; frame < framecount; frame++) {
+				if (Math.abs(block[blockpos]) == maxvalue) {
+					if ((maxrawpos == -1) | (frame * channelcount + channel < maxrawpos)) {
+						maxrawpos = frame * channelcount + channel;
+					}
+					break;
+				}
+				blockpos += channelcount;
+			}
+		}
+	}
+	
+	private void addCandidate(int type, int frame, int value) {
+		int count = candidatecount[type];
+		if (count == candidateframe[type].length) {
+			int[] newframe = new int[count * 2];
+			int[] newvalue = new int[count * 2];
+			System.arraycopy(candidateframe[type], 0, newframe, 0, count);
+			System.arraycopy(candidatevalue[type], 0, newvalue, 0, count);
+			candidateframe[type] = newframe;
+			candidatevalue[type] = newvalue;
+		}
+		candidateframe[type][count] = frame;
+		candidatevalue[type][count] = value;
+		candidatecount[type] = count + 1;
+	}
+	
+}
@@ -0,0 +1,160 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Search the sibling files of a split channels delivery, like Take1_L.wav, Take1_R.wav...
+ * The channel name is after the last "_", "-" or "." of the file name (without extension): a name of split_channel_names, or a number.
+ */
+class WavChannelSet {
+	
+	/**
+	 * The known channel names, in the channel order of the set. The numbered channels are after them.
+	 */
+	private static String split_channel_names = ConfigurationProperties.getP("daed.split_channel_names", "L,R,C,LFE,Ls,Rs,Lrs,Rrs,Lss,Rss");
+	
+	private static final String SEPARATORS = "_-.";
+	
+	private static String[] channelnames = split_channel_names.split(",");
+	
+	/**
+	 * @return the channel order index for this file, or -1 if its name have not a channel name.
+	 */
+	static int getChannelIndex(File file) {
+		String name = file.getName();
+		int extensionpos = name.lastIndexOf(".");
+		if (extensionpos < 0) {
+			return -1;
+		}
+		int separatorpos = getSeparatorPosition(name.substring(0, extensionpos));
+		if (separatorpos < 1) {
+			return -1;
+		}
+		String channel = name.substring(separatorpos + 1, extensionpos);
+		for (int pos = 0; pos < channelnames.length; pos++) {
+			if (channelnames[pos].trim().equalsIgnoreCase(channel)) {
+				return pos;
+			}
+		}
+		if ((channel.length() == 0) | (channel.length() > 4)) {
+			return -1;
+		}
+		for (int pos = 0; pos < channel.length(); pos++) {
+			if (Character.isDigit(channel.charAt(pos)) == false) {
+				return -1;
+			}
+		}
+		return channelnames.length + Integer.parseInt(channel);
+	}
+	
+	private static int getSeparatorPosition(String name) {
+		int separatorpos = -1;
+		for (int pos = 0; pos < SEPARATORS.length(); pos++) {
+			separatorpos = Math.max(separatorpos, name.lastIndexOf(SEPARATORS.charAt(pos)));
+		}
+		return separatorpos;
+	}
+	
+	/**
+	 * The part before the channel name, and the extension.
+	 */
+	private static String getSetKey(File file) {
+		String name = file.getName();
+		int extensionpos = name.lastIndexOf(".");
+		return name.substring(0, getSeparatorPosition(name.substring(0, extensionpos)) + 1) + name.substring(extensionpos);
+	}
+	
+	/**
+	 * @return the files of the same channel set (including this file), in channel order, or null if this file is not in a set of 2 or more files.
+	 */
+	static File[] getMembers(File file) {
+		if (file == null) {
+			throw new NullPointerException("\"file\" can't to be null");
+		}
+		if (getChannelIndex(file) < 0) {
+			return null;
+		}
+		File[] siblings = file.getAbsoluteFile().getParentFile().listFiles();
+		if (siblings == null) {
+			return null;
+		}
+		
+		String setkey = getSetKey(file);
+		ArrayList<File> members = new ArrayList<File>();
+		int channelindex;
+		int insertpos;
+		for (int pos = 0; pos < siblings.length; pos++) {
+			if (siblings[pos].isFile() == false) {
+				continue;
+			}
+			channelindex = getChannelIndex(siblings[pos]);
+			if (channelindex < 0) {
+				continue;
+			}
+			if (getSetKey(siblings[pos]).equals(setkey) == false) {
+				continue;
+			}
+			/**
+			 * Sorted by channel index.
+			 */
+			insertpos = members.size();
+			while ((insertpos > 0) && (getChannelIndex(members.get(insertpos - 1)) > channelindex)) {
+				insertpos--;
+			}
+			/**
+			 * With the same parent path like file.
+			 */
+			members.add(insertpos, new File(file.getParentFile(), siblings[pos].getName()));
+		}
+		
+		if (members.size() < 2) {
+			return null;
+		}
+		return members.toArray(new File[members.size()]);
+	}
+	
+	/**
+	 * The name of the channel set, for its reports, like Take1_L+R.wav
+	 */
+	static File getSetFile(File[] members) {
+		StringBuffer sb = new StringBuffer();
+		String name;
+		int extensionpos;
+		for (int pos = 0; pos < members.length; pos++) {
+			name = members[pos].getName();
+			extensionpos = name.lastIndexOf(".");
+			if (pos == 0) {
+				sb.append(name.substring(0, extensionpos));
+			} else {
+				sb.append("+");
+				sb.append(name.substring(getSeparatorPosition(name.substring(0, extensionpos)) + 1, extensionpos));
+			}
+		}
+		name = members[0].getName();
+		sb.append(name.substring(name.lastIndexOf(".")));
+		return new File(members[0].getParentFile(), sb.toString());
+	}
+	
+}
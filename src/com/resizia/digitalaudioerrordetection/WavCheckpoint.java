@@ -0,0 +1,252 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Save and restore an in-flight WavFile analysis: WavDetectionState, the WavAnalyser states, and the events found so far.
+ * A checkpoint is only valid for the same wav file (or the same channel set files) (size and date) and the same detection parameters.
+ */
+public class WavCheckpoint {
+	
+	/**
+	 * "DAEC"
+	 */
+	private static final int MAGIC = 0x44414543;
+	
+	private static final int VERSION = 5;
+	
+	private static final byte EVENT_DIGITALSILENCE = 1;
+	private static final byte EVENT_OVERMODULATION = 2;
+	private static final byte EVENT_HOLD = 3;
+	private static final byte EVENT_CLICK = 4;
+	private static final byte EVENT_DROPOUT = 5;
+	private static final byte EVENT_STUTTER = 6;
+	
+	private File wavfile;
+	
+	/**
+	 * The read files: the wav file, or the members of a channel set.
+	 */
+	private File[] sourcefiles;
+	private File checkpointfile;
+	
+	/**
+	 * Detection parameters, they must be the same between save and restore.
+	 */
+	private String parameters;
+	
+	/**
+	 * @param parameters all the detection parameters, in a string.
+	 */
+	public WavCheckpoint(File wavfile, String parameters) {
+		this(wavfile, new File[] { wavfile }, parameters);
+	}
+	
+	/**
+	 * @param wavfile the checkpoint name. For a channel set, this file don't exists.
+	 * @param sourcefiles the read files, checked like the wav file.
+	 */
+	public WavCheckpoint(File wavfile, File[] sourcefiles, String parameters) {
+		this.wavfile = wavfile;
+		this.sourcefiles = sourcefiles;
+		this.parameters = parameters;
+		if (wavfile == null) {
+			throw new NullPointerException("\"wavfile\" can't to be null");
+		}
+		if (sourcefiles == null) {
+			throw new NullPointerException("\"sourcefiles\" can't to be null");
+		}
+		checkpointfile = new File(wavfile.getPath() + ".checkpoint");
+	}
+	
+	public File getCheckpointFile() {
+		return checkpointfile;
+	}
+	
+	/**
+	 * Write in a temp file, and replace the previous checkpoint.
+	 */
+	public void save(WavDetectionState state, List<WavAnalyser> analysers, List<WavDefaultevent> events) throws IOException {
+		File tempfile = new File(checkpointfile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempfile)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sourcefiles.length);
+			for (int pos = 0; pos < sourcefiles.length; pos++) {
+				out.writeLong(sourcefiles[pos].length());
+				out.writeLong(sourcefiles[pos].lastModified());
+			}
+			out.writeUTF(parameters);
+			state.write(out);
+			
+			ByteArrayOutputStream analyserstate;
+			DataOutputStream analyserout;
+			for (int pos = 0; pos < analysers.size(); pos++) {
+				analyserstate = new ByteArrayOutputStream();
+				analyserout = new DataOutputStream(analyserstate);
+				analysers.get(pos).writeState(analyserout);
+				analyserout.flush();
+				out.writeInt(analyserstate.size());
+				analyserstate.writeTo(out);
+			}
+			
+			out.writeInt(events.size());
+			WavDefaultevent event;
+			for (int pos = 0; pos < events.size(); pos++) {
+				event = events.get(pos);
+				if (event instanceof WavDefaulteventOvermodulation) {
+					out.writeByte(EVENT_OVERMODULATION);
+					out.writeInt(((WavDefaulteventOvermodulation) event).position);
+					out.writeInt(((WavDefaulteventOvermodulation) event).channel);
+				} else if (event instanceof WavDefaulteventDigitalsilence) {
+					out.writeByte(EVENT_DIGITALSILENCE);
+					out.writeInt(((WavDefaulteventDigitalsilence) event).position);
+					out.writeInt(((WavDefaulteventDigitalsilence) event).channel);
+				} else if (event instanceof WavDefaulteventHold) {
+					out.writeByte(EVENT_HOLD);
+					out.writeInt(((WavDefaulteventHold) event).position);
+					out.writeInt(((WavDefaulteventHold) event).channel);
+					out.writeDouble(((WavDefaulteventHold) event).level);
+				} else if (event instanceof WavDefaulteventClick) {
+					out.writeByte(EVENT_CLICK);
+					out.writeInt(((WavDefaulteventClick) event).position);
+					out.writeInt(((WavDefaulteventClick) event).channel);
+				} else if (event instanceof WavDefaulteventDropout) {
+					out.writeByte(EVENT_DROPOUT);
+					out.writeInt(((WavDefaulteventDropout) event).position);
+					out.writeInt(((WavDefaulteventDropout) event).channel);
+					out.writeInt(((WavDefaulteventDropout) event).duration);
+				} else if (event instanceof WavDefaulteventStutter) {
+					out.writeByte(EVENT_STUTTER);
+					out.writeInt(((WavDefaulteventStutter) event).position);
+					out.writeInt(((WavDefaulteventStutter) event).channel);
+					out.writeInt(((WavDefaulteventStutter) event).duration);
+				} else {
+					throw new IOException("Can't save event " + event.getClass().getName());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		
+		if (checkpointfile.exists()) {
+			checkpointfile.delete();
+		}
+		if (tempfile.renameTo(checkpointfile) == false) {
+			throw new IOException("Can't rename " + tempfile.getPath() + " to " + checkpointfile.getPath());
+		}
+	}
+	
+	/**
+	 * @param state to update with the checkpoint values.
+	 * @param analysers initialized, to update with the checkpoint values.
+	 * @param events to fill with the checkpoint events.
+	 * @return false if there is no valid checkpoint for this file, state, analysers and events are not changed.
+	 */
+	public boolean restore(WavDetectionState state, List<WavAnalyser> analysers, List<WavDefaultevent> events) throws IOException {
+		if (checkpointfile.exists() == false) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointfile)));
+		try {
+			if ((in.readInt() != MAGIC) | (in.readInt() != VERSION)) {
+				System.err.println("Invalid checkpoint file " + checkpointfile.getPath());
+				return false;
+			}
+			boolean samefiles = (in.readInt() == sourcefiles.length);
+			for (int pos = 0; (pos < sourcefiles.length) & samefiles; pos++) {
+				samefiles = (in.readLong() == sourcefiles[pos].length()) & (in.readLong() == sourcefiles[pos].lastModified());
+			}
+			if (samefiles == false) {
+				System.err.println("Checkpoint file " + checkpointfile.getPath() + " is not for the current wav file");
+				return false;
+			}
+			if (in.readUTF().equals(parameters) == false) {
+				System.err.println("Checkpoint file " + checkpointfile.getPath() + " was made with an another configuration");
+				return false;
+			}
+			WavDetectionState restoredstate = new WavDetectionState(state.channelcount, 0);
+			restoredstate.read(in);
+			
+			byte[][] analyserstates = new byte[analysers.size()][];
+			for (int pos = 0; pos < analysers.size(); pos++) {
+				analyserstates[pos] = new byte[in.readInt()];
+				in.readFully(analyserstates[pos]);
+			}
+			
+			int eventcount = in.readInt();
+			List<WavDefaultevent> restoredevents = new ArrayList<WavDefaultevent>(eventcount);
+			byte type;
+			for (int pos = 0; pos < eventcount; pos++) {
+				type = in.readByte();
+				if (type == EVENT_OVERMODULATION) {
+					restoredevents.add(new WavDefaulteventOvermodulation(in.readInt(), in.readInt()));
+				} else if (type == EVENT_DIGITALSILENCE) {
+					restoredevents.add(new WavDefaulteventDigitalsilence(in.readInt(), in.readInt()));
+				} else if (type == EVENT_HOLD) {
+					restoredevents.add(new WavDefaulteventHold(in.readInt(), in.readInt(), in.readDouble()));
+				} else if (type == EVENT_CLICK) {
+					restoredevents.add(new WavDefaulteventClick(in.readInt(), in.readInt()));
+				} else if (type == EVENT_DROPOUT) {
+					restoredevents.add(new WavDefaulteventDropout(in.readInt(), in.readInt(), in.readInt()));
+				} else if (type == EVENT_STUTTER) {
+					restoredevents.add(new WavDefaulteventStutter(in.readInt(), in.readInt(), in.readInt()));
+				} else {
+					throw new IOException("Invalid event type " + type);
+				}
+			}
+			
+			for (int pos = 0; pos < analysers.size(); pos++) {
+				analysers.get(pos).readState(new DataInputStream(new ByteArrayInputStream(analyserstates[pos])));
+			}
+			restoredstate.copyTo(state);
+			events.addAll(restoredevents);
+			return true;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * After a complete analysis.
+	 */
+	public void delete() {
+		if (checkpointfile.exists()) {
+			checkpointfile.delete();
+		}
+	}
+	
+}
@@ -0,0 +1,197 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * MD5 and xxHash64 of the data chunk payload, from the bytes read for the analysis.
+ * The bytes are copied and hashed by a dedicated thread, during the analysis of the next blocks.
+ */
+class WavChecksum implements Runnable {
+	
+	/**
+	 * Copied blocks waiting to be hashed, before update() waits the thread.
+	 */
+	private static int checksum_queue_blocks = ConfigurationProperties.getP("daed.checksum_queue_blocks", 4);
+	
+	/**
+	 * A copy of some read bytes. A null data is the end of the payload.
+	 */
+	private static class Block {
+		byte[] data;
+		int length;
+	}
+	
+	private MessageDigest md5;
+	private XXHash64 xxhash64;
+	
+	/**
+	 * The bytes after the data chunk (next chunks, padding) are not hashed.
+	 */
+	private long remainingbytes;
+	
+	private BlockingQueue<Block> filledblocks;
+	
+	/**
+	 * Hashed blocks, for reuse their byte arrays.
+	 */
+	private BlockingQueue<Block> freeblocks;
+	
+	private Thread thread;
+	
+	private boolean closed;
+	
+	private byte[] md5value;
+	private long xxhash64value;
+	
+	/**
+	 * @param datasize data chunk size, in bytes
+	 */
+	WavChecksum(long datasize) {
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			/**
+			 * MD5 is required in all Java platforms.
+			 */
+			throw new IllegalStateException("MD5 is not available", e);
+		}
+		xxhash64 = new XXHash64();
+		remainingbytes = datasize;
+		
+		int queueblocks = Math.max(1, checksum_queue_blocks);
+		filledblocks = new ArrayBlockingQueue<Block>(queueblocks + 1);
+		freeblocks = new ArrayBlockingQueue<Block>(queueblocks + 1);
+		for (int pos = 0; pos < queueblocks; pos++) {
+			freeblocks.add(new Block());
+		}
+		
+		thread = new Thread(this, "Checksum");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Copy and queue the bytes, wait if the thread is late of checksum_queue_blocks blocks.
+	 */
+	void update(byte[] b, int off, int len) throws InterruptedIOException {
+		if (closed) {
+			throw new IllegalStateException("Checksum is closed");
+		}
+		len = (int) Math.min(len, remainingbytes);
+		if (len <= 0) {
+			return;
+		}
+		remainingbytes -= len;
+		
+		Block block;
+		try {
+			block = freeblocks.take();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during the checksum");
+		}
+		if ((block.data == null) || (block.data.length < len)) {
+			block.data = new byte[len];
+		}
+		System.arraycopy(b, off, block.data, 0, len);
+		block.length = len;
+		filledblocks.add(block);
+	}
+	
+	/**
+	 * Wait the end of the hash of the queued bytes.
+	 */
+	void finish() throws InterruptedIOException {
+		close();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during the checksum");
+		}
+		md5value = md5.digest();
+		xxhash64value = xxhash64.getValue();
+	}
+	
+	/**
+	 * Stop the thread after the queued bytes, without wait.
+	 */
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		filledblocks.add(new Block());
+	}
+	
+	public void run() {
+		Block block;
+		try {
+			while (true) {
+				block = filledblocks.take();
+				if (block.data == null) {
+					return;
+				}
+				md5.update(block.data, 0, block.length);
+				xxhash64.update(block.data, 0, block.length);
+				freeblocks.add(block);
+			}
+		} catch (InterruptedException e) {
+		}
+	}
+	
+	/**
+	 * @return null before finish()
+	 */
+	String getMD5() {
+		if (md5value == null) {
+			return null;
+		}
+		StringBuffer sb = new StringBuffer();
+		for (int pos = 0; pos < md5value.length; pos++) {
+			sb.append(Character.forDigit((md5value[pos] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(md5value[pos] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return null before finish()
+	 */
+	String getXXHash64() {
+		if (md5value == null) {
+			return null;
+		}
+		String hex = Long.toHexString(xxhash64value);
+		StringBuffer sb = new StringBuffer();
+		for (int pos = hex.length(); pos < 16; pos++) {
+			sb.append('0');
+		}
+		sb.append(hex);
+		return sb.toString();
+	}
+	
+}
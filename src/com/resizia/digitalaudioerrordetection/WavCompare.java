@@ -0,0 +1,232 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bit exact comparison (null test) of the samples of 2 wav files, for check a copy.
+ * The headers are not compared (chunks order, other chunks): only the formats and the data chunks.
+ * The data chunks are compared by segments in parallel.
+ */
+public class WavCompare {
+	
+	/**
+	 * Segments compared in parallel.
+	 */
+	private static int compare_threads = ConfigurationProperties.getP("daed.compare_threads", Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Segments size (memory mapped), in bytes. Not less than MIN_SEGMENT_SIZE: each segment is a mapping, only released by the GC.
+	 */
+	private static int compare_segment_size = ConfigurationProperties.getP("daed.compare_segment_size", 16 * 1024 * 1024);
+	
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	
+	private File file1;
+	private File file2;
+	
+	private int channelcount;
+	private int samplesize;
+	private int framecount1;
+	private int framecount2;
+	
+	/**
+	 * Results, for the frames in the 2 files. firstdifferentframe is -1 if they are identical.
+	 */
+	private int firstdifferentframe;
+	private int differentframecount;
+	private long maxdifference;
+	
+	public WavCompare(File file1, File file2) {
+		if (file1 == null) {
+			throw new NullPointerException("\"file1\" can't to be null");
+		}
+		if (file2 == null) {
+			throw new NullPointerException("\"file2\" can't to be null");
+		}
+		this.file1 = file1;
+		this.file2 = file2;
+	}
+	
+	/**
+	 * @return the data chunk position, after the header parsing.
+	 */
+	private long parseWavHeader(WavFile wavfile) throws IOException {
+		try {
+			wavfile.parseWavHeader();
+			if (wavfile.isWav() == false) {
+				throw new IOException("Only wav files can be compared");
+			}
+			return wavfile.getDataPosition();
+		} finally {
+			wavfile.close();
+		}
+	}
+	
+	public void process() throws IOException {
+		WavFile wavfile1 = new WavFile(file1);
+		long position1 = parseWavHeader(wavfile1);
+		WavFile wavfile2 = new WavFile(file2);
+		long position2 = parseWavHeader(wavfile2);
+		
+		if ((wavfile1.getChannelcount() != wavfile2.getChannelcount()) | (wavfile1.getBitspersample() != wavfile2.getBitspersample()) | (wavfile1.getFreq() != wavfile2.getFreq())) {
+			throw new IOException("Different formats: " + wavfile1.getChannelcount() + " channels " + wavfile1.getBitspersample() + " bits " + wavfile1.getFreq() + " Hz, and "
+					+ wavfile2.getChannelcount() + " channels " + wavfile2.getBitspersample() + " bits " + wavfile2.getFreq() + " Hz");
+		}
+		int bitspersample = wavfile1.getBitspersample();
+		if ((bitspersample != 8) & (bitspersample != 16) & (bitspersample != 24) & (bitspersample != 32)) {
+			throw new IOException("Unsupported bits per sample for compare: " + bitspersample);
+		}
+		channelcount = wavfile1.getChannelcount();
+		samplesize = bitspersample / 8;
+		int framesize = channelcount * samplesize;
+		
+		/**
+		 * Like the analysis, a data size after the file end is truncated.
+		 */
+		framecount1 = (int) (Math.min(wavfile1.getDatasize(), file1.length() - position1) / framesize);
+		framecount2 = (int) (Math.min(wavfile2.getDatasize(), file2.length() - position2) / framesize);
+		int framecount = Math.min(framecount1, framecount2);
+		
+		firstdifferentframe = -1;
+		differentframecount = 0;
+		maxdifference = 0;
+		
+		RandomAccessFile randomaccessfile1 = new RandomAccessFile(file1, "r");
+		RandomAccessFile randomaccessfile2 = null;
+		ExecutorService executor = null;
+		try {
+			randomaccessfile2 = new RandomAccessFile(file2, "r");
+			
+			int segmentframes = Math.max(MIN_SEGMENT_SIZE, compare_segment_size) / framesize;
+			ArrayList<WavCompareSegment> segments = new ArrayList<WavCompareSegment>();
+			for (int firstframe = 0; firstframe < framecount; firstframe += segmentframes) {
+				segments.add(new WavCompareSegment(randomaccessfile1.getChannel(), position1, randomaccessfile2.getChannel(), position2, firstframe, Math.min(segmentframes, framecount - firstframe),
+						channelcount, samplesize));
+			}
+			
+			if ((compare_threads < 2) | (segments.size() < 2)) {
+				for (int pos = 0; pos < segments.size(); pos++) {
+					segments.get(pos).call();
+				}
+			} else {
+				executor = Executors.newFixedThreadPool(Math.min(compare_threads, segments.size()));
+				ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>(segments);
+				List<Future<Object>> results = executor.invokeAll(tasks);
+				for (int pos = 0; pos < results.size(); pos++) {
+					results.get(pos).get();
+				}
+			}
+			
+			/**
+			 * The segments are in the frames order.
+			 */
+			WavCompareSegment segment;
+			for (int pos = 0; pos < segments.size(); pos++) {
+				segment = segments.get(pos);
+				if ((firstdifferentframe == -1) & (segment.firstdifferentframe != -1)) {
+					firstdifferentframe = segment.firstdifferentframe;
+				}
+				differentframecount += segment.differentframecount;
+				maxdifference = Math.max(maxdifference, segment.maxdifference);
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during the comparison");
+		} catch (ExecutionException e) {
+			IOException ioe = new IOException("Error during the comparison");
+			ioe.initCause(e.getCause());
+			throw ioe;
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+			randomaccessfile1.close();
+			if (randomaccessfile2 != null) {
+				randomaccessfile2.close();
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the samples and the durations are the same.
+	 */
+	public boolean isIdentical() {
+		return (differentframecount == 0) & (framecount1 == framecount2);
+	}
+	
+	/**
+	 * @return -1 if there is no different frame.
+	 */
+	public int getFirstdifferentframe() {
+		return firstdifferentframe;
+	}
+	
+	/**
+	 * @return the different frames count, on the frames in the 2 files.
+	 */
+	public int getDifferentframecount() {
+		return differentframecount;
+	}
+	
+	/**
+	 * @return the most high difference between 2 samples, in dBFS.
+	 */
+	public double getPeakdifference_dbfs() {
+		return 20 * Math.log10(maxdifference / (double) Integer.MAX_VALUE);
+	}
+	
+	public void printResults(PrintStream out) {
+		if (isIdentical()) {
+			out.print("Identical:\t");
+			out.print(framecount1);
+			out.println(" frames");
+			return;
+		}
+		if (framecount1 != framecount2) {
+			out.print("Different durations:\t");
+			out.print(framecount1);
+			out.print("\t");
+			out.println(framecount2);
+		}
+		if (differentframecount > 0) {
+			out.print("Different frames:\t");
+			out.print(differentframecount);
+			out.print("\t");
+			out.println(firstdifferentframe);
+			out.print("Peak difference:\t");
+			out.println(WavFile.currentnumberformat.format(getPeakdifference_dbfs()));
+		}
+	}
+	
+}
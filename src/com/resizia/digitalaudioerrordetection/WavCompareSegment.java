@@ -0,0 +1,150 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+
+/**
+ * Compare a part of the data chunks of 2 wav files, with the same format.
+ * The 2 parts are memory mapped, and compared 8 bytes by 8 bytes. Only the frames in the different 8 bytes are decoded.
+ */
+class WavCompareSegment implements Callable<Object> {
+	
+	private FileChannel channel1;
+	private FileChannel channel2;
+	private long position1;
+	private long position2;
+	
+	/**
+	 * First frame of the segment, in the data chunks, and frames count.
+	 */
+	private int firstframe;
+	private int framecount;
+	private int channelcount;
+	private int samplesize;
+	
+	/**
+	 * Results, in the data chunks frames. firstdifferentframe is -1 if the segments are identical.
+	 */
+	int firstdifferentframe;
+	int differentframecount;
+	long maxdifference;
+	
+	/**
+	 * @param position1 data chunk position in file 1
+	 * @param position2 data chunk position in file 2
+	 */
+	WavCompareSegment(FileChannel channel1, long position1, FileChannel channel2, long position2, int firstframe, int framecount, int channelcount, int samplesize) {
+		this.channel1 = channel1;
+		this.channel2 = channel2;
+		this.position1 = position1;
+		this.position2 = position2;
+		this.firstframe = firstframe;
+		this.framecount = framecount;
+		this.channelcount = channelcount;
+		this.samplesize = samplesize;
+		firstdifferentframe = -1;
+	}
+	
+	public Object call() throws IOException {
+		int framesize = channelcount * samplesize;
+		long start = (long) firstframe * framesize;
+		int length = framecount * framesize;
+		MappedByteBuffer buffer1 = channel1.map(FileChannel.MapMode.READ_ONLY, position1 + start, length);
+		MappedByteBuffer buffer2 = channel2.map(FileChannel.MapMode.READ_ONLY, position2 + start, length);
+		
+		/**
+		 * Only the equality is tested: no bytes swap.
+		 */
+		buffer1.order(ByteOrder.nativeOrder());
+		buffer2.order(ByteOrder.nativeOrder());
+		
+		/**
+		 * The next frame to compare, for the frames on 2 longs.
+		 */
+		int nextframe = 0;
+		int lastframe;
+		int pos = 0;
+		for (; pos + 8 <= length; pos += 8) {
+			if (buffer1.getLong(pos) != buffer2.getLong(pos)) {
+				lastframe = (pos + 7) / framesize;
+				for (int frame = Math.max(nextframe, pos / framesize); frame <= lastframe; frame++) {
+					compareFrame(buffer1, buffer2, frame, framesize);
+				}
+				nextframe = lastframe + 1;
+			}
+		}
+		for (int frame = Math.max(nextframe, pos / framesize); frame < framecount; frame++) {
+			compareFrame(buffer1, buffer2, frame, framesize);
+		}
+		return null;
+	}
+	
+	private void compareFrame(MappedByteBuffer buffer1, MappedByteBuffer buffer2, int frame, int framesize) {
+		boolean different = false;
+		int bytepos = frame * framesize;
+		for (int channel = 0; channel < channelcount; channel++) {
+			/**
+			 * A different sample is found on its bytes, not on its value: nothing can be lost by the decode.
+			 */
+			if (isSampleDifferent(buffer1, buffer2, bytepos)) {
+				different = true;
+				maxdifference = Math.max(maxdifference, Math.abs((long) getValue(buffer1, bytepos) - (long) getValue(buffer2, bytepos)));
+			}
+			bytepos += samplesize;
+		}
+		if (different) {
+			if (firstdifferentframe == -1) {
+				firstdifferentframe = firstframe + frame;
+			}
+			differentframecount++;
+		}
+	}
+	
+	private boolean isSampleDifferent(MappedByteBuffer buffer1, MappedByteBuffer buffer2, int bytepos) {
+		for (int pos = bytepos; pos < bytepos + samplesize; pos++) {
+			if (buffer1.get(pos) != buffer2.get(pos)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Little endian signed sample, aligned on the 32b high bits, for the difference level. The 8b samples are unsigned, centered on 128.
+	 */
+	private int getValue(MappedByteBuffer buffer, int bytepos) {
+		if (samplesize == 1) {
+			return ((buffer.get(bytepos) & 0xFF) - 128) << 24;
+		} else if (samplesize == 2) {
+			return ((buffer.get(bytepos) & 0xFF) << 16) | (buffer.get(bytepos + 1) << 24);
+		} else if (samplesize == 3) {
+			return ((buffer.get(bytepos) & 0xFF) << 8) | ((buffer.get(bytepos + 1) & 0xFF) << 16) | (buffer.get(bytepos + 2) << 24);
+		}
+		return (buffer.get(bytepos) & 0xFF) | ((buffer.get(bytepos + 1) & 0xFF) << 8) | ((buffer.get(bytepos + 2) & 0xFF) << 16) | (buffer.get(bytepos + 3) << 24);
+	}
+	
+}
@@ -0,0 +1,123 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Values kept by WavFile.process() from a sample to the next: all what is needed to continue an analysis.
+ */
+public class WavDetectionState {
+	
+	int channelcount;
+	
+	/**
+	 * Samples count (all channels) already analysed. A long: a channel set can be more than 2 GB.
+	 */
+	long rawsamplepos;
+	
+	/**
+	 * By channel, packed side by side: channel * CHANNELVALUES + LASTVALUE / SAMEVALUECOUNT / SILENCESAMPLECOUNT.
+	 */
+	int[] channelvalues;
+	
+	static final int CHANNELVALUES = 3;
+	static final int LASTVALUE = 0;
+	static final int SAMEVALUECOUNT = 1;
+	static final int SILENCESAMPLECOUNT = 2;
+	
+	/**
+	 * Last events positions, for no_warning_duration.
+	 */
+	int lastovermodulationrealsample;
+	int lastsilencezonerealsample;
+	int lastholdrealsample;
+	
+	/**
+	 * Peak absolute value, and its place.
+	 */
+	int maxvalue;
+	int peak_position_sample;
+	int peak_channel_id;
+	
+	/**
+	 * State before the first sample.
+	 */
+	public WavDetectionState(int channelcount, int no_warning_duration_realsample) {
+		this.channelcount = channelcount;
+		rawsamplepos = 0;
+		channelvalues = new int[channelcount * CHANNELVALUES];
+		lastovermodulationrealsample = -no_warning_duration_realsample;
+		lastsilencezonerealsample = -no_warning_duration_realsample;
+		lastholdrealsample = -no_warning_duration_realsample;
+		maxvalue = 0;
+		peak_position_sample = -1;
+		peak_channel_id = -1;
+	}
+	
+	void copyTo(WavDetectionState state) {
+		state.rawsamplepos = rawsamplepos;
+		System.arraycopy(channelvalues, 0, state.channelvalues, 0, channelcount * CHANNELVALUES);
+		state.lastovermodulationrealsample = lastovermodulationrealsample;
+		state.lastsilencezonerealsample = lastsilencezonerealsample;
+		state.lastholdrealsample = lastholdrealsample;
+		state.maxvalue = maxvalue;
+		state.peak_position_sample = peak_position_sample;
+		state.peak_channel_id = peak_channel_id;
+	}
+	
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(channelcount);
+		out.writeLong(rawsamplepos);
+		for (int pos = 0; pos < channelcount * CHANNELVALUES; pos++) {
+			out.writeInt(channelvalues[pos]);
+		}
+		out.writeInt(lastovermodulationrealsample);
+		out.writeInt(lastsilencezonerealsample);
+		out.writeInt(lastholdrealsample);
+		out.writeInt(maxvalue);
+		out.writeInt(peak_position_sample);
+		out.writeInt(peak_channel_id);
+	}
+	
+	/**
+	 * Replace all the values by the previously written ones.
+	 */
+	void read(DataInputStream in) throws IOException {
+		if (in.readInt() != channelcount) {
+			throw new IOException("Invalid channel count");
+		}
+		rawsamplepos = in.readLong();
+		for (int pos = 0; pos < channelcount * CHANNELVALUES; pos++) {
+			channelvalues[pos] = in.readInt();
+		}
+		lastovermodulationrealsample = in.readInt();
+		lastsilencezonerealsample = in.readInt();
+		lastholdrealsample = in.readInt();
+		maxvalue = in.readInt();
+		peak_position_sample = in.readInt();
+		peak_channel_id = in.readInt();
+	}
+	
+}
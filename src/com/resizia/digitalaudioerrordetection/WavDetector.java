@@ -0,0 +1,524 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.InterruptedIOException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Digital silence, hold and overmodulation detection, and peak compute, block after block.
+ * Blocks are analysed channel after channel by WavChannelGroupDetector.
+ * With more than one thread, channels groups are analysed on separate threads. In all cases, the found events are merged in the same order as a sample after sample analysis.
+ */
+public class WavDetector {
+	
+	private int channelcount;
+	private int same_sample_threshold_silence;
+	private int same_sample_threshold_hold;
+	private int no_warning_duration_realsample;
+	private double level_threshold_hold;
+	private WavDetectionState state;
+	private List<WavDefaultevent> events;
+	
+	/**
+	 * Null if only one thread: the only group is analysed by the caller thread.
+	 */
+	private ExecutorService executor;
+	private WavChannelGroupDetector[] channelgroups;
+	
+	/**
+	 * By channel: its group, and the candidates read position and end during the merge.
+	 */
+	private WavChannelGroupDetector[] channelgroup;
+	private int[] channelcandidatepos;
+	private int[] channelcandidateend;
+	
+	/**
+	 * Events kept by the merge, for the current block, before sort.
+	 * selectedkeys: raw position in block (32 bits) and index in selected arrays (32 bits).
+	 */
+	private int selectedcount;
+	private long[] selectedkeys;
+	private int[] selectedtype;
+	private int[] selectedvalue;
+	
+	/**
+	 * Display the events when they are found.
+	 */
+	private boolean printevents;
+	
+	/**
+	 * @param state updated after each block
+	 * @param events found events are added here
+	 */
+	public WavDetector(int channelcount, int same_sample_threshold_silence, int same_sample_threshold_hold, int no_warning_duration_realsample, double level_threshold_hold, WavDetectionState state,
+			List<WavDefaultevent> events) {
+		this.channelcount = channelcount;
+		this.same_sample_threshold_silence = same_sample_threshold_silence;
+		this.same_sample_threshold_hold = same_sample_threshold_hold;
+		this.no_warning_duration_realsample = no_warning_duration_realsample;
+		this.level_threshold_hold = level_threshold_hold;
+		this.state = state;
+		this.events = events;
+		channelgroup = new WavChannelGroupDetector[channelcount];
+		channelcandidatepos = new int[channelcount];
+		channelcandidateend = new int[channelcount];
+		selectedkeys = new long[16];
+		selectedtype = new int[16];
+		selectedvalue = new int[16];
+		printevents = true;
+		createChannelGroups(1);
+	}
+	
+	/**
+	 * For a segment of a file: its events are displayed later, by the merge.
+	 */
+	public void setPrintEvents(boolean printevents) {
+		this.printevents = printevents;
+	}
+	
+	/**
+	 * Frames to analyse before a segment, for reach the counters thresholds and the no warning duration: the state at the segment start is the one of a
+	 * sample after sample analysis, excepted after a long repeated value.
+	 */
+	int getSegmentWarmup() {
+		return no_warning_duration_realsample + Math.max(same_sample_threshold_silence, same_sample_threshold_hold) + 1;
+	}
+	
+	/**
+	 * The same samples after realsamplepos make the same events with the two states: the counters values over their thresholds are the same,
+	 * and the last events before realsamplepos - no_warning_duration have no effect.
+	 * The peaks are not compared.
+	 */
+	boolean isEquivalent(WavDetectionState state1, WavDetectionState state2, int realsamplepos) {
+		int channelpos;
+		for (int channel = 0; channel < channelcount; channel++) {
+			channelpos = channel * WavDetectionState.CHANNELVALUES;
+			if (state1.channelvalues[channelpos + WavDetectionState.LASTVALUE] != state2.channelvalues[channelpos + WavDetectionState.LASTVALUE]) {
+				return false;
+			}
+			if (Math.min(state1.channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT], same_sample_threshold_hold) != Math.min(
+					state2.channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT], same_sample_threshold_hold)) {
+				return false;
+			}
+			if (Math.min(state1.channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT], same_sample_threshold_silence) != Math.min(
+					state2.channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT], same_sample_threshold_silence)) {
+				return false;
+			}
+		}
+		int nowarning = realsamplepos - no_warning_duration_realsample - 1;
+		return (Math.max(state1.lastsilencezonerealsample, nowarning) == Math.max(state2.lastsilencezonerealsample, nowarning))
+				& (Math.max(state1.lastovermodulationrealsample, nowarning) == Math.max(state2.lastovermodulationrealsample, nowarning))
+				& (Math.max(state1.lastholdrealsample, nowarning) == Math.max(state2.lastholdrealsample, nowarning));
+	}
+	
+	/**
+	 * Analyse channels groups in parallel. Call close() after.
+	 * @param threads more than 1 for enable.
+	 */
+	public void setChannelThreads(int threads) {
+		threads = Math.min(threads, channelcount);
+		if (threads < 2) {
+			return;
+		}
+		createChannelGroups(threads);
+		executor = Executors.newFixedThreadPool(threads);
+	}
+	
+	/**
+	 * Consecutive channels, same size groups.
+	 */
+	private void createChannelGroups(int groupcount) {
+		channelgroups = new WavChannelGroupDetector[groupcount];
+		int firstchannel = 0;
+		int groupsize;
+		for (int pos = 0; pos < groupcount; pos++) {
+			groupsize = (channelcount - firstchannel) / (groupcount - pos);
+			channelgroups[pos] = new WavChannelGroupDetector(channelcount, firstchannel, firstchannel + groupsize, same_sample_threshold_silence, same_sample_threshold_hold, state);
+			for (int channel = firstchannel; channel < firstchannel + groupsize; channel++) {
+				channelgroup[channel] = channelgroups[pos];
+			}
+			firstchannel += groupsize;
+		}
+	}
+	
+	/**
+	 * Stop the threads, if any.
+	 */
+	public void close() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * @param block interleaved samples, from state.rawsamplepos
+	 * @param samplecount can end with an incomplete frame only at the end of file
+	 */
+	public void process(int[] block, int samplecount) throws IOException {
+		int framecount = samplecount / channelcount;
+		if (framecount > 0) {
+			processChannelGroups(block, framecount);
+		}
+		if (framecount * channelcount < samplecount) {
+			processInterleaved(block, framecount * channelcount, samplecount);
+		}
+	}
+	
+	/**
+	 * Sample after sample analysis, only for the last incomplete frame of a truncated file.
+	 */
+	private void processInterleaved(int[] block, int from, int to) {
+		int currentvalue;
+		long rawsamplepos = state.rawsamplepos;
+		int realsamplepos;
+		int currentchannel = (int) ((rawsamplepos + channelcount - 1) % channelcount);
+		int channelpos;
+		int maxvalue = state.maxvalue;
+		int lastmaxvalue = maxvalue;
+		int[] channelvalues = state.channelvalues;
+		boolean samesampleisnotsilenceorovermodulation = true;
+		
+		for (int blockpos = from; blockpos < to; blockpos++) {
+			currentvalue = block[blockpos];
+			if (currentchannel + 1 == channelcount) {
+				currentchannel = 0;
+			} else {
+				currentchannel++;
+			}
+			realsamplepos = (int) (rawsamplepos / channelcount);
+			channelpos = currentchannel * WavDetectionState.CHANNELVALUES;
+			
+			/**
+			 * Max value compute.
+			 */
+			maxvalue = Math.max(Math.abs(currentvalue), maxvalue);
+			if (lastmaxvalue != maxvalue) {
+				state.peak_position_sample = realsamplepos;
+				state.peak_channel_id = currentchannel;
+			}
+			lastmaxvalue = maxvalue;
+			
+			samesampleisnotsilenceorovermodulation = true;
+			
+			if (channelvalues[channelpos + WavDetectionState.LASTVALUE] == currentvalue) {
+				/**
+				 * the previous sample for this channel is duplicated
+				 */
+				channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT]++;
+				
+				if (currentvalue == 0) {
+					samesampleisnotsilenceorovermodulation = false;
+					channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT]++;
+					if (channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT] == same_sample_threshold_silence) {
+						onDigitalSilence(realsamplepos, currentchannel);
+					}
+				} else {
+					channelvalues[channelpos + WavDetectionState.SILENCESAMPLECOUNT] = 0;
+				}
+				
+			} else {
+				/**
+				 * new sample different
+				 */
+				channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT] = 0;
+				
+				if ((currentvalue == Integer.MIN_VALUE) | (currentvalue >= 0x7FFF0000)) {
+					samesampleisnotsilenceorovermodulation = false;
+					onOvermodulation(realsamplepos, currentchannel);
+				}
+			}
+			
+			if (samesampleisnotsilenceorovermodulation) {
+				if (channelvalues[channelpos + WavDetectionState.SAMEVALUECOUNT] == same_sample_threshold_hold) {
+					onHold(realsamplepos, currentchannel, currentvalue);
+				}
+			}
+			
+			channelvalues[channelpos + WavDetectionState.LASTVALUE] = currentvalue;
+			
+			rawsamplepos++;
+		}
+		
+		state.rawsamplepos = rawsamplepos;
+		state.maxvalue = maxvalue;
+	}
+	
+	/**
+	 * Analyse each channel group (on its thread), and merge the results.
+	 */
+	private void processChannelGroups(int[] block, int framecount) throws IOException {
+		if (executor == null) {
+			channelgroups[0].setBlock(block, framecount);
+			channelgroups[0].call();
+			mergeChannelGroups(framecount);
+			state.rawsamplepos += framecount * channelcount;
+			return;
+		}
+		
+		ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>(channelgroups.length);
+		for (int pos = 0; pos < channelgroups.length; pos++) {
+			channelgroups[pos].setBlock(block, framecount);
+			tasks.add(channelgroups[pos]);
+		}
+		try {
+			List<Future<Object>> results = executor.invokeAll(tasks);
+			for (int pos = 0; pos < results.size(); pos++) {
+				results.get(pos).get();
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during channels analysis");
+		} catch (ExecutionException e) {
+			IOException ioe = new IOException("Error during channels analysis");
+			ioe.initCause(e.getCause());
+			throw ioe;
+		}
+		
+		mergeChannelGroups(framecount);
+		state.rawsamplepos += framecount * channelcount;
+	}
+	
+	/**
+	 * Apply the peak and events candidates of all the groups, like a sample after sample analysis.
+	 */
+	private void mergeChannelGroups(int framecount) {
+		int blockfirstrealsample = (int) (state.rawsamplepos / channelcount);
+		WavChannelGroupDetector group;
+		
+		/**
+		 * Peak: the first position of the most high value.
+		 */
+		int blockmaxvalue = 0;
+		int blockmaxrawpos = -1;
+		for (int pos = 0; pos < channelgroups.length; pos++) {
+			group = channelgroups[pos];
+			if ((group.maxvalue > blockmaxvalue) | ((group.maxvalue == blockmaxvalue) & (group.maxrawpos != -1) & (group.maxrawpos < blockmaxrawpos))) {
+				blockmaxvalue = group.maxvalue;
+				blockmaxrawpos = group.maxrawpos;
+			}
+		}
+		if (blockmaxvalue > state.maxvalue) {
+			state.maxvalue = blockmaxvalue;
+			state.peak_position_sample = blockfirstrealsample + blockmaxrawpos / channelcount;
+			state.peak_channel_id = blockmaxrawpos % channelcount;
+		}
+		
+		/**
+		 * The no_warning_duration don't link the events types: each type is selected apart, and all the selected events are displayed in the samples order.
+		 */
+		selectedcount = 0;
+		state.lastsilencezonerealsample = selectCandidates(WavChannelGroupDetector.CANDIDATE_DIGITALSILENCE, state.lastsilencezonerealsample, blockfirstrealsample);
+		state.lastovermodulationrealsample = selectCandidates(WavChannelGroupDetector.CANDIDATE_OVERMODULATION, state.lastovermodulationrealsample, blockfirstrealsample);
+		state.lastholdrealsample = selectCandidates(WavChannelGroupDetector.CANDIDATE_HOLD, state.lastholdrealsample, blockfirstrealsample);
+		if (selectedcount == 0) {
+			return;
+		}
+		
+		Arrays.sort(selectedkeys, 0, selectedcount);
+		int rawpos;
+		int selected;
+		for (int pos = 0; pos < selectedcount; pos++) {
+			rawpos = (int) (selectedkeys[pos] >>> 32);
+			selected = (int) selectedkeys[pos];
+			if (selectedtype[selected] == WavChannelGroupDetector.CANDIDATE_DIGITALSILENCE) {
+				addDigitalSilence(blockfirstrealsample + rawpos / channelcount, rawpos % channelcount);
+			} else if (selectedtype[selected] == WavChannelGroupDetector.CANDIDATE_OVERMODULATION) {
+				addOvermodulation(blockfirstrealsample + rawpos / channelcount, rawpos % channelcount);
+			} else {
+				addHold(blockfirstrealsample + rawpos / channelcount, rawpos % channelcount, selectedvalue[selected]);
+			}
+		}
+	}
+	
+	/**
+	 * Keep the candidates for one type, without the ones during no_warning_duration after the previous kept one (for all channels).
+	 * The candidates are sorted by frame for each channel: the next kept is the first frame after the silent duration, the first channel for a same frame.
+	 * @param lastrealsample the last kept event position
+	 * @return the new last kept event position
+	 */
+	private int selectCandidates(int type, int lastrealsample, int blockfirstrealsample) {
+		int candidatecount = 0;
+		for (int pos = 0; pos < channelgroups.length; pos++) {
+			candidatecount += channelgroups[pos].candidatecount[type];
+		}
+		if (candidatecount == 0) {
+			return lastrealsample;
+		}
+		
+		WavChannelGroupDetector group;
+		int groupchannel;
+		for (int channel = 0; channel < channelcount; channel++) {
+			group = channelgroup[channel];
+			groupchannel = channel - group.firstchannel;
+			if (groupchannel == 0) {
+				channelcandidatepos[channel] = 0;
+			} else {
+				channelcandidatepos[channel] = group.candidatechannelend[type][groupchannel - 1];
+			}
+			channelcandidateend[channel] = group.candidatechannelend[type][groupchannel];
+		}
+		
+		int silentlastframe;
+		int nextframe;
+		int nextchannel;
+		int candidatepos;
+		int[] candidateframe;
+		while (true) {
+			/**
+			 * The candidates until this frame (included) are in the no_warning_duration.
+			 */
+			silentlastframe = lastrealsample + no_warning_duration_realsample - blockfirstrealsample;
+			nextframe = Integer.MAX_VALUE;
+			nextchannel = -1;
+			for (int channel = 0; channel < channelcount; channel++) {
+				candidatepos = channelcandidatepos[channel];
+				candidateframe = channelgroup[channel].candidateframe[type];
+				while ((candidatepos < channelcandidateend[channel]) && (candidateframe[candidatepos] <= silentlastframe)) {
+					candidatepos++;
+				}
+				channelcandidatepos[channel] = candidatepos;
+				if ((candidatepos < channelcandidateend[channel]) && (candidateframe[candidatepos] < nextframe)) {
+					nextframe = candidateframe[candidatepos];
+					nextchannel = channel;
+				}
+			}
+			if (nextchannel == -1) {
+				return lastrealsample;
+			}
+			candidatepos = channelcandidatepos[nextchannel];
+			addSelected(nextframe * channelcount + nextchannel, type, channelgroup[nextchannel].candidatevalue[type][candidatepos]);
+			channelcandidatepos[nextchannel] = candidatepos + 1;
+			lastrealsample = blockfirstrealsample + nextframe;
+		}
+	}
+	
+	private void addSelected(int rawpos, int type, int value) {
+		if (selectedcount == selectedkeys.length) {
+			long[] newkeys = new long[selectedcount * 2];
+			int[] newtype = new int[selectedcount * 2];
+			int[] newvalue = new int[selectedcount * 2];
+			System.arraycopy(selectedkeys, 0, newkeys, 0, selectedcount);
+			System.arraycopy(selectedtype, 0, newtype, 0, selectedcount);
+			System.arraycopy(selectedvalue, 0, newvalue, 0, selectedcount);
+			selectedkeys = newkeys;
+			selectedtype = newtype;
+			selectedvalue = newvalue;
+		}
+		selectedkeys[selectedcount] = ((long) rawpos << 32) | selectedcount;
+		selectedtype[selectedcount] = type;
+		selectedvalue[selectedcount] = value;
+		selectedcount++;
+	}
+	
+	/**
+	 * Silence samples count reach same_sample_threshold_silence.
+	 */
+	private void onDigitalSilence(int realsamplepos, int channel) {
+		if ((realsamplepos > state.lastsilencezonerealsample + no_warning_duration_realsample)) {
+			state.lastsilencezonerealsample = realsamplepos;
+			addDigitalSilence(realsamplepos, channel);
+		}
+	}
+	
+	/**
+	 * A new full scale sample.
+	 */
+	private void onOvermodulation(int realsamplepos, int channel) {
+		if ((realsamplepos > state.lastovermodulationrealsample + no_warning_duration_realsample)) {
+			state.lastovermodulationrealsample = realsamplepos;
+			addOvermodulation(realsamplepos, channel);
+		}
+	}
+	
+	/**
+	 * Same samples count reach same_sample_threshold_hold, and it's not silence or overmodulation.
+	 */
+	private void onHold(int realsamplepos, int channel, int currentvalue) {
+		if ((realsamplepos > state.lastholdrealsample + no_warning_duration_realsample)) {
+			/**
+			 * in all cases were recorded, although there was no warning, so that this does not pass a previous if.
+			 */
+			state.lastholdrealsample = realsamplepos;
+			addHold(realsamplepos, channel, currentvalue);
+		}
+	}
+	
+	private void addDigitalSilence(int realsamplepos, int channel) {
+		addEvent(new WavDefaulteventDigitalsilence(realsamplepos - same_sample_threshold_silence, channel + 1));
+	}
+	
+	private void addOvermodulation(int realsamplepos, int channel) {
+		addEvent(new WavDefaulteventOvermodulation(realsamplepos, channel + 1));
+	}
+	
+	/**
+	 * Only if the hold value is more high than level_threshold_hold.
+	 */
+	private void addHold(int realsamplepos, int channel, int currentvalue) {
+		double hold_value = WavFile.get_dBValue(currentvalue);
+		if (hold_value > level_threshold_hold) {
+			addEvent(new WavDefaulteventHold(1 + realsamplepos - same_sample_threshold_hold, channel + 1, hold_value));
+		}
+	}
+	
+	private void addEvent(WavDefaultevent event) {
+		if (printevents) {
+			printEvent(event);
+		}
+		events.add(event);
+	}
+	
+	/**
+	 * The console lines are locked, for the batch workers.
+	 */
+	static void printEvent(WavDefaultevent event) {
+		String formatted_hold_value = null;
+		if (event instanceof WavDefaulteventHold) {
+			synchronized (WavFile.currentnumberformat) {
+				formatted_hold_value = WavFile.currentnumberformat.format(((WavDefaulteventHold) event).getLevel());
+			}
+		}
+		synchronized (System.err) {
+			if (event instanceof WavDefaulteventOvermodulation) {
+				System.err.print("Overmodulation\t");
+			} else if (event instanceof WavDefaulteventDigitalsilence) {
+				System.err.print("Digital silence\t");
+			} else {
+				System.err.print("Hold value\t");
+				System.err.print(formatted_hold_value);
+				System.err.print("\t");
+			}
+			System.err.print(event.getPosition());
+			System.err.print("\t");
+			System.err.println(event.getChannel());
+		}
+	}
+	
+}
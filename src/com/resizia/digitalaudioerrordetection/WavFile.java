@@ -1,650 +1,1765 @@
-/*
- * 
- * ***** BEGIN LICENSE BLOCK *****
- *
- * This file is part of Digital Audio Error Detection.
- * 
- * Digital Audio Error Detection is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- * 
- * Digital Audio Error Detection is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- * 
- * You should have received a copy of the GNU General Public License
- * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
- *
- * ***** END LICENSE BLOCK ***** */
-
-package com.resizia.digitalaudioerrordetection;
-
-import java.io.BufferedInputStream;
-import java.io.EOFException;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.ArrayList;
-
-/**
- * Open, read and parse a wav file for values analyses.
- */
-public class WavFile {
-	
-	/**
-	 * Wav file channel count.
-	 */
-	private int channelcount;
-	
-	/**
-	 * Wav sample frequency, like 48000.
-	 */
-	private int freq;
-	
-	/**
-	 * Bytes count for one sample : 1 = 8 bits, 2 = 16 bits, 3 = 24 bits
-	 */
-	private int samplesize;
-	
-	/**
-	 * Raw position in file (in sample), without channel.
-	 */
-	private int rawsampleposition;
-	
-	/**
-	 * Current channel position (0 = left, 1 = right ...)
-	 */
-	private int currentchannel;
-	
-	/**
-	 * Stream to read values.
-	 */
-	private DataInputSteamLittleEndian datainputstream;
-	
-	/**
-	 * Wav data block size (bytes).
-	 */
-	private int datasize;
-	
-	/**
-	 * File to read.
-	 */
-	private File file;
-	
-	/**
-	 * Errors events.
-	 */
-	private ArrayList<WavDefaultevent> wavdefaultevents;
-	
-	/**
-	 * New line separator.
-	 */
-	public static final String LINESEPARATOR = System.getProperty("line.separator");
-	
-	/**
-	 * INTEGER_MAX_VALUE in double format.
-	 */
-	private static double INTEGER_MAX_VALUE = Integer.MAX_VALUE;
-	
-	/**
-	 * If there is this count of sample of a Digital Silence, raise an error.
-	 */
-	private int same_sample_threshold_silence = ConfigurationProperties.getP("daed.same_sample_threshold_silence", 10);
-	
-	/**
-	 * If there is this count of sample of a Hold value, raise an error.
-	 */
-	private int same_sample_threshold_hold = ConfigurationProperties.getP("daed.same_sample_threshold_hold", 5);
-	
-	/**
-	 * During this time (in seconds), no warning, when a new error is detect.
-	 * This helps not to go too close to too many errors.
-	 */
-	private float no_warning_duration = ConfigurationProperties.getP("daed.no_warning_duration", 1.0f);
-	
-	/**
-	 * If Hold value error is detected, the value must to be more high like this value, to raise an error.
-	 */
-	private double level_threshold_hold = ConfigurationProperties.getP("daed.level_threshold_hold", -50f);
-	
-	/**
-	 * The most high sample value.
-	 */
-	private double peak_value_dbfs = Double.MIN_VALUE;
-	
-	/**
-	 * peak_value_dbfs position in wav file.
-	 */
-	private int peak_position_sample = -1;
-	
-	/**
-	 * peak_value_dbfs position channel.
-	 */
-	private int peak_channel_id = -1;
-	
-	/**
-	 * Number format for round, and clean number values.
-	 */
-	public static NumberFormat currentnumberformat = DecimalFormat.getNumberInstance();
-	
-	/**
-	 * Start publish error in MKR from this time (seconds).
-	 */
-	public static float startpositionresultvalues = ConfigurationProperties.getP("daed.startpositionresultvalues", 0f);
-	
-	/**
-	 * Stop publish error in MKR to this time (seconds).
-	 */
-	public static float endpositionresultvalues = ConfigurationProperties.getP("daed.endpositionresultvalues", Float.MAX_VALUE);
-	
-	/**
-	 * @param file File to read from.
-	 */
-	public WavFile(File file) throws IOException {
-		this.file = file;
-		if (file == null) {
-			throw new NullPointerException("\"file\" can't to be null");
-		}
-		FileInputStream fileinputstream = new FileInputStream(file);
-		/**
-		 * BufferedInputStream for speed up the reading byte after byte .
-		 */
-		BufferedInputStream bis = new BufferedInputStream(fileinputstream, 10 * 1024 * 1024);
-		datainputstream = new DataInputSteamLittleEndian(bis);
-		wavdefaultevents = new ArrayList<WavDefaultevent>();
-	}
-	
-	/**
-	 * Read the 4 next bytes, like wav label data.
-	 */
-	private byte[] readNext4bytes() throws IOException {
-		byte[] result = new byte[4];
-		
-		int realread = datainputstream.read(result);
-		if (realread != 4) {
-			throw new EOFException(String.valueOf(realread));
-		}
-		return result;
-	}
-	
-	/**
-	 * Read the first bytes in wav file for get informations, and position to the start of wav datas (samples).
-	 * @see http://www.sonicspot.com/guide/wavefiles.html to understand the wonders of wav riff files.
-	 */
-	private void parseWavHeader() throws IOException {
-		
-		byte[] label;
-		
-		/**
-		 * FileTypeBlocID (4 bytes) : RIFF (0x52,0x49,0x46,0x46)
-		 */
-		validByteValue(0x52, "RIFF");
-		validByteValue(0x49, "RIFF");
-		validByteValue(0x46, "RIFF");
-		validByteValue(0x46, "RIFF");
-		
-		/**
-		 * FileSize (4 bytes) : file size minus 8 bytes
-		 */
-		readNext4bytes();
-		
-		/**
-		 * FileFormatID (4 bytes) : Format = «WAVE» (0x57,0x41,0x56,0x45)
-		 */
-		validByteValue(0x57, "WAVE");
-		validByteValue(0x41, "WAVE");
-		validByteValue(0x56, "WAVE");
-		validByteValue(0x45, "WAVE");
-		
-		while (true) {
-			label = readNext4bytes();
-			
-			if (((label[0] == 0x66) & (label[1] == 0x6D) & (label[2] == 0x74) & (label[3] == 0x20))) {
-				/**
-				 * "fmt "
-				 * Wav file informations
-				 */
-				
-				/**
-				 * BlocSize (4 bytes) : bytes count for block - 8 (0x10)
-				 */
-				int blocsize = datainputstream.readInt(); // 16
-				
-				/**
-				 * AudioFormat (2 bytes) : Storage type (1: PCM, ...)
-				 */
-				validByteValue(0x01, "PCM");
-				validByteValue(0x00, "PCM");
-				
-				/**
-				 * NbrCanaux (2 bytes) : number of channels (1 -> 6)
-				 */
-				channelcount = datainputstream.readUnsignedShort();
-				
-				/**
-				 * Sample frequency in Hz (4 bytes) : 11025, 22050, 44100, 48000 and 96000
-				 */
-				freq = datainputstream.readInt(); // 48000
-				
-				/**
-				 * BytePerSec (4 bytes) : bytes count to read by seconds (== freq * BytePerBloc).
-				 */
-				datainputstream.readInt();// 288000
-				
-				/**
-				 * BytePerBloc (2 bytes) : bytes count by sample block (for all channels : channelcount * BitsPerSample/8).
-				 */
-				datainputstream.readUnsignedShort();
-				
-				/**
-				 * BitsPerSample (2 bytes) : bytes count used for one sample (8, 16, 24)
-				 */
-				samplesize = datainputstream.readUnsignedShort() / 8;
-				
-				if (blocsize > 16) {
-					datainputstream.skipBytes(blocsize - 16);
-				}
-				
-				continue;
-			}
-			
-			if (((label[0] == 0x64) & (label[1] == 0x61) & (label[2] == 0x74) & (label[3] == 0x61))) {
-				/**
-				 * "data", this is what we seek !
-				 */
-				break;
-			}
-			
-			/**
-			 * The rest : "iXML", "PAD " ...
-			 */
-			datainputstream.skipBytes(datainputstream.readInt());
-		}
-		
-		// 0x20 0xCC 0x2F -> 24/st
-		// 0x20 0xCC 0x0F -> 16/mo
-		
-		/**
-		 * DataSize (4 bytes) : bytes count for data : samples
-		 */
-		datasize = datainputstream.readInt();
-		
-		/**
-		 * Let's start to read this file.
-		 */
-		currentchannel = channelcount - 1;
-		rawsampleposition = -1;
-	}
-	
-	/**
-	 * If the next reading byte is not the expected value, throw a new IOException, whis testname to cause.
-	 */
-	private void validByteValue(int expectedvalue, String testname) throws IOException {
-		if (datainputstream.read() != expectedvalue) {
-			throw new IOException("Bad header const for " + testname);
-		}
-	}
-	
-	/**
-	 * The number of bits for a sample like 8, 16, 24
-	 */
-	public int getBitspersample() {
-		return samplesize * 8;
-	}
-	
-	/**
-	 * The number of sample for this file.
-	 */
-	public int getSampleCount() {
-		return datasize / (samplesize * channelcount);
-	}
-	
-	/**
-	 * The duration for this audio file.
-	 */
-	public float getDuration() {
-		return (float) getSampleCount() / (float) freq;
-	}
-	
-	/**
-	 * Close the stream.
-	 * Don't forget to do !
-	 */
-	public void close() throws IOException {
-		datainputstream.close();
-	}
-	
-	/**
-	 * Read next sample (channel after channel) and return the reading value converted in signed 32b integer.
-	 */
-	private int getNextRawSampleValue() throws IOException {
-		if (currentchannel + 1 == channelcount) {
-			currentchannel = 0;
-		} else {
-			currentchannel++;
-		}
-		rawsampleposition++;
-		
-		if (samplesize == 1) {
-			return datainputstream.readSimpleByte();
-		}
-		if (samplesize == 2) {
-			return datainputstream.readDoubleByte();
-		}
-		if (samplesize == 3) {
-			return datainputstream.readTripleByte();
-		}
-		return -1;
-	}
-	
-	/**
-	 * @return false is the end of data block is reached.
-	 */
-	private boolean isHaveNextSample() {
-		return (((rawsampleposition * samplesize) + samplesize) < datasize);
-	}
-	
-	/**
-	 * Convert sample value (integer 32 bits signed) to lovely dB full scale in double.
-	 */
-	private static double get_dBValue(int linear_int_value) {
-		return 20 * Math.log10(Math.abs(linear_int_value) / INTEGER_MAX_VALUE);
-	}
-	
-	/**
-	 * Reads the wav file and analyzes its values.
-	 */
-	public void process() throws IOException {
-		parseWavHeader();
-		
-		int maxvalue = 0;
-		int currentvalue;
-		int lastmaxvalue = 0;
-		
-		int rawsamplepos = 0;
-		int realsamplepos = -1;
-		int no_warning_duration_realsample = Math.round((freq * no_warning_duration));
-		
-		int[] lastvalue = new int[channelcount];
-		int[] samevaluecount = new int[channelcount];
-		
-		int lastovermodulationrealsample = -no_warning_duration_realsample;
-		int lastsilencezonerealsample = -no_warning_duration_realsample;
-		int[] silencesamplecount = new int[channelcount];
-		int lastholdrealsample = -no_warning_duration_realsample;
-		boolean samesampleisnotsilenceorovermodulation = true;
-		
-		try {
-			while (isHaveNextSample()) {
-				currentvalue = getNextRawSampleValue();
-				realsamplepos = rawsamplepos / channelcount;
-				
-				/**
-				 * Max value compute.
-				 */
-				maxvalue = Math.max(Math.abs(currentvalue), maxvalue);
-				if (lastmaxvalue != maxvalue) {
-					peak_position_sample = realsamplepos;
-					peak_channel_id = currentchannel;
-				}
-				lastmaxvalue = maxvalue;
-				
-				samesampleisnotsilenceorovermodulation = true;
-				
-				if (lastvalue[currentchannel] == currentvalue) {
-					/**
-					 * the previous sample for this channel is duplicated
-					 */
-					samevaluecount[currentchannel]++;
-					
-					if (currentvalue == 0) {
-						samesampleisnotsilenceorovermodulation = false;
-						silencesamplecount[currentchannel]++;
-						if (silencesamplecount[currentchannel] == same_sample_threshold_silence) {
-							if ((realsamplepos > lastsilencezonerealsample + no_warning_duration_realsample)) {
-								System.err.print("Digital silence\t");
-								System.err.print(realsamplepos - same_sample_threshold_silence);
-								System.err.print("\t");
-								System.err.println(currentchannel + 1);
-								lastsilencezonerealsample = realsamplepos;
-								wavdefaultevents.add(new WavDefaulteventDigitalsilence(realsamplepos - same_sample_threshold_silence, currentchannel + 1));
-							}
-						}
-					} else {
-						silencesamplecount[currentchannel] = 0;
-					}
-					
-				} else {
-					/**
-					 * new sample different
-					 */
-					samevaluecount[currentchannel] = 0;
-					
-					if ((currentvalue == Integer.MIN_VALUE) | (currentvalue >= 0x7FFF0000)) {
-						samesampleisnotsilenceorovermodulation = false;
-						if ((realsamplepos > lastovermodulationrealsample + no_warning_duration_realsample)) {
-							System.err.print("Overmodulation\t");
-							System.err.print(realsamplepos);
-							System.err.print("\t");
-							System.err.println(currentchannel + 1);
-							lastovermodulationrealsample = realsamplepos;
-							wavdefaultevents.add(new WavDefaulteventOvermodulation(realsamplepos, currentchannel + 1));
-						}
-					}
-				}
-				
-				if (samesampleisnotsilenceorovermodulation) {
-					if ((samevaluecount[currentchannel] == same_sample_threshold_hold) & ((realsamplepos > lastholdrealsample + no_warning_duration_realsample))) {
-						double hold_value = get_dBValue(currentvalue);
-						if (hold_value > level_threshold_hold) {
-							System.err.print("Hold value\t");
-							System.err.print(currentnumberformat.format(hold_value));
-							System.err.print("\t");
-							System.err.print(1 + realsamplepos - same_sample_threshold_hold);
-							System.err.print("\t");
-							System.err.println(currentchannel + 1);
-							wavdefaultevents.add(new WavDefaulteventHold(1 + realsamplepos - same_sample_threshold_hold, currentchannel + 1, get_dBValue(currentvalue)));
-						}
-						/**
-						 * in all cases were recorded, although there was no warning, so that this does not pass a previous if.
-						 */
-						lastholdrealsample = realsamplepos;
-					}
-				}
-				
-				lastvalue[currentchannel] = currentvalue;
-				
-				rawsamplepos++;
-			}
-		} catch (EOFException e) {
-			e.printStackTrace();
-		}
-		
-		peak_value_dbfs = get_dBValue(maxvalue);
-		
-	}
-	
-	/**
-	 * @return peak_channel_id
-	 */
-	public int getPeak_channel_id() {
-		return peak_channel_id;
-	}
-	
-	/**
-	 * @return peak_position_sample
-	 */
-	public int getPeak_position_sample() {
-		return peak_position_sample;
-	}
-	
-	/**
-	 * @return peak_value_dbfs
-	 */
-	public double getPeak_value_dbfs() {
-		return peak_value_dbfs;
-	}
-	
-	/**
-	 * The tabbed text file name.
-	 */
-	private File tableresultfile = ConfigurationProperties.getP("daed.tableresultfilename", new File("results.txt"));
-	
-	/**
-	 * Convert an sample number to a second value.
-	 */
-	public float getPositionFromRealSample(int realsampleposition) {
-		return (float) realsampleposition / (float) freq;
-	}
-	
-	/**
-	 * Write result table file, wav txt information, and WaveLab MRK file.
-	 */
-	public void writeInformationFiles() throws IOException {
-		boolean createheader;
-		createheader = (tableresultfile.exists() == false);
-		/**
-		 * Append if file exists
-		 */
-		FileOutputStream tableout = new FileOutputStream(tableresultfile, true);
-		
-		/**
-		 * Text tabulated (table)
-		 */
-		StringBuffer tableline;
-		if (createheader) {
-			tableline = new StringBuffer();
-			tableline.append("File name\t");
-			tableline.append("Bits per sample\t");
-			tableline.append("Channel count\t");
-			tableline.append("Sample freq\t");
-			tableline.append("Sample count\t");
-			tableline.append("File duration\t");
-			tableline.append("File size\t");
-			tableline.append("Peak channel\t");
-			tableline.append("Peak position\t");
-			tableline.append("Peak value");
-			tableline.append(LINESEPARATOR);
-			tableout.write(tableline.toString().getBytes());
-		}
-		
-		tableline = new StringBuffer();
-		tableline.append(file.getName());
-		tableline.append("\t");
-		tableline.append(getBitspersample());
-		tableline.append("\t");
-		tableline.append(channelcount);
-		tableline.append("\t");
-		tableline.append(freq);
-		tableline.append("\t");
-		tableline.append(getSampleCount());
-		tableline.append("\t");
-		tableline.append(currentnumberformat.format(getDuration()));
-		tableline.append("\t");
-		tableline.append(file.length());
-		tableline.append("\t");
-		tableline.append(getPeak_channel_id() + 1);
-		tableline.append("\t");
-		tableline.append(getPeak_position_sample());
-		tableline.append("\t");
-		tableline.append(currentnumberformat.format(getPeak_value_dbfs()));
-		tableline.append(LINESEPARATOR);
-		tableout.write(tableline.toString().getBytes());
-		tableout.flush();
-		tableout.close();
-		
-		/**
-		 * Text in line.
-		 */
-		String infofilename = file.getPath() + ".txt";
-		/**
-		 * create new file
-		 */
-		PrintStream infoout = new PrintStream(new File(infofilename));
-		infoout.print("File name\t");
-		infoout.println(file.getName());
-		infoout.print("Bits per sample\t");
-		infoout.println(getBitspersample());
-		infoout.print("Channel count\t");
-		infoout.println(channelcount);
-		infoout.print("Sample freq\t");
-		infoout.println(freq);
-		infoout.print("Sample count\t");
-		infoout.println(getSampleCount());
-		infoout.print("File duration\t");
-		infoout.println(currentnumberformat.format(getDuration()));
-		infoout.print("File size\t");
-		infoout.println(file.length());
-		infoout.print("Peak channel\t");
-		infoout.println(getPeak_channel_id() + 1);
-		infoout.print("Peak position\t");
-		infoout.println(getPeak_position_sample());
-		infoout.print("Peak value\t");
-		infoout.println(currentnumberformat.format(getPeak_value_dbfs()));
-		infoout.flush();
-		infoout.close();
-		
-		/**
-		 * Wavelab's Mrk file
-		 */
-		if (wavdefaultevents.size() > 0) {
-			String mrkfilename = file.getPath().substring(0, file.getPath().lastIndexOf(".")) + ".mrk";
-			/**
-			 * Create / overwrite
-			 */
-			PrintStream mrkout = new PrintStream(new File(mrkfilename));
-			
-			mrkout.println("Markers");
-			mrkout.println("{");
-			
-			int currentposition;
-			for (int pos = 0; pos < wavdefaultevents.size(); pos++) {
-				currentposition = wavdefaultevents.get(pos).getPosition();
-				if (pos + 1 < wavdefaultevents.size()) {
-					if (currentposition == wavdefaultevents.get(pos + 1).getPosition()) {
-						/**
-						 * If the next event is at the same place like now, go next.
-						 */
-						continue;
-					}
-				}
-				/**
-				 * don't show events before time
-				 */
-				if (getPositionFromRealSample(currentposition) < startpositionresultvalues) {
-					continue;
-				}
-				
-				/**
-				 * don't show events after time
-				 */
-				if (getPositionFromRealSample(currentposition) > (getDuration() - endpositionresultvalues)) {
-					break;
-				}
-				
-				mrkout.print("\tMarker");
-				mrkout.println(pos + 1);
-				mrkout.println("\t{");
-				mrkout.print("\t\tName=");
-				mrkout.println(wavdefaultevents.get(pos).getLabel());
-				mrkout.print("\t\tPos=");
-				mrkout.println(currentposition);
-				mrkout.println("\t\tType=0");
-				mrkout.println("\t\tFlags=0");
-				mrkout.println("\t\tExtra=0");
-				mrkout.println("\t}");
-			}
-			mrkout.println("}");
-			
-			mrkout.flush();
-			mrkout.close();
-		}
-	}
-	
-}
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Open, read and parse a wav file for values analyses. The FLAC files are decoded during the reading, and the AIFF files are read like wav files.
+ */
+public class WavFile {
+	
+	/**
+	 * Wav file channel count.
+	 */
+	private int channelcount;
+	
+	/**
+	 * Wav sample frequency, like 48000.
+	 */
+	private int freq;
+	
+	/**
+	 * Bytes count for one sample : 1 = 8 bits, 2 = 16 bits, 3 = 24 bits
+	 */
+	private int samplesize;
+	
+	/**
+	 * Stream to read values.
+	 */
+	private DataInputSteamLittleEndian datainputstream;
+	
+	/**
+	 * The file reader behind datainputstream.
+	 */
+	private BufferedChannelInputStream bufferedinputstream;
+	
+	/**
+	 * Wav data block size (bytes). For a channel set, the size of all the members data, it can be more than 2 GB.
+	 */
+	private long datasize;
+	
+	/**
+	 * Only for a FLAC file: read the samples instead of datainputstream.
+	 */
+	private FlacDecoder flacdecoder;
+	
+	/**
+	 * AIFF or AIFF-C file.
+	 */
+	private boolean aiff;
+	
+	/**
+	 * Only for a channel set: the files read in lockstep, in channel order, instead of datainputstream.
+	 */
+	private WavFile[] members;
+	
+	/**
+	 * Only for a channel set: a members block, for the de-interleaved reading.
+	 */
+	private int[] memberblock;
+	
+	/**
+	 * BWF time reference (bext chunk): the first sample position since midnight, -1 if there is no bext chunk.
+	 */
+	private long timereference = -1;
+	
+	/**
+	 * File to read.
+	 */
+	private File file;
+	
+	/**
+	 * Errors events.
+	 */
+	private ArrayList<WavDefaultevent> wavdefaultevents;
+	
+	/**
+	 * Analyses made during process(), in addition to the detection.
+	 */
+	private ArrayList<WavAnalyser> analysers;
+	
+	/**
+	 * New line separator.
+	 */
+	public static final String LINESEPARATOR = System.getProperty("line.separator");
+	
+	/**
+	 * INTEGER_MAX_VALUE in double format.
+	 */
+	private static double INTEGER_MAX_VALUE = Integer.MAX_VALUE;
+	
+	/**
+	 * If there is this count of sample of a Digital Silence, raise an error.
+	 */
+	private int same_sample_threshold_silence = ConfigurationProperties.getP("daed.same_sample_threshold_silence", 10);
+	
+	/**
+	 * If there is this count of sample of a Hold value, raise an error.
+	 */
+	private int same_sample_threshold_hold = ConfigurationProperties.getP("daed.same_sample_threshold_hold", 5);
+	
+	/**
+	 * During this time (in seconds), no warning, when a new error is detect.
+	 * This helps not to go too close to too many errors.
+	 */
+	private float no_warning_duration = ConfigurationProperties.getP("daed.no_warning_duration", 1.0f);
+	
+	/**
+	 * If Hold value error is detected, the value must to be more high like this value, to raise an error.
+	 */
+	private double level_threshold_hold = ConfigurationProperties.getP("daed.level_threshold_hold", -50f);
+	
+	/**
+	 * The most high sample value.
+	 */
+	private double peak_value_dbfs = Double.MIN_VALUE;
+	
+	/**
+	 * peak_value_dbfs position in wav file.
+	 */
+	private int peak_position_sample = -1;
+	
+	/**
+	 * peak_value_dbfs position channel.
+	 */
+	private int peak_channel_id = -1;
+	
+	/**
+	 * Samples count (for all channels) decoded by block.
+	 */
+	private int decode_block_frames = ConfigurationProperties.getP("daed.decode_block_frames", 4096);
+	
+	/**
+	 * Compute the true peak (dBTP).
+	 */
+	private static boolean truepeak = ConfigurationProperties.getP("daed.truepeak", true);
+	
+	/**
+	 * Compute the loudness (EBU R128).
+	 */
+	private static boolean loudness = ConfigurationProperties.getP("daed.loudness", true);
+	
+	/**
+	 * Compute the DC offset, RMS, crest factor and noise floor.
+	 */
+	private static boolean level = ConfigurationProperties.getP("daed.level", true);
+	
+	/**
+	 * Compute the effective bit depth and the band limit.
+	 */
+	private static boolean resolution = ConfigurationProperties.getP("daed.resolution", true);
+	
+	/**
+	 * Search the clicks and the dropouts.
+	 */
+	private static boolean clicks = ConfigurationProperties.getP("daed.clicks", false);
+	
+	/**
+	 * Search the repeated buffers.
+	 */
+	private static boolean stutters = ConfigurationProperties.getP("daed.stutters", false);
+	
+	/**
+	 * Compute the MD5 and the xxHash64 of the data chunk payload.
+	 */
+	private static boolean checksum = ConfigurationProperties.getP("daed.checksum", true);
+	
+	/**
+	 * Analyse the channels groups on this threads count, for the files with channel_parallel_min_channels or more.
+	 */
+	private static int channel_threads = ConfigurationProperties.getP("daed.channel_threads", 1);
+	
+	/**
+	 * Minimal channel count for use channel_threads.
+	 */
+	private static int channel_parallel_min_channels = ConfigurationProperties.getP("daed.channel_parallel_min_channels", 8);
+	
+	/**
+	 * Save the process() state in a checkpoint file each this time (seconds), and resume from it after a restart. 0 for disable.
+	 */
+	private static int checkpoint_interval = ConfigurationProperties.getP("daed.checkpoint_interval", 0);
+	
+	/**
+	 * Minimal time between two progress listener calls (milliseconds).
+	 */
+	private static int progress_interval = ConfigurationProperties.getP("daed.progress_interval", 1000);
+	
+	/**
+	 * Minimal duration (seconds) of the time segments: a shorter file is analysed by channels groups on its threads.
+	 */
+	private static int segment_min_duration = ConfigurationProperties.getP("daed.segment_min_duration", 60);
+	
+	/**
+	 * If more than 1, analyse the time segments (or else the channels groups) on this threads count, regardless channel_parallel_min_channels.
+	 */
+	private int threads;
+	
+	/**
+	 * A time segment reader, from createReader(): the header warnings are displayed by the file reader.
+	 */
+	private boolean segmentreader;
+	
+	/**
+	 * Optional, called by process() between two blocks.
+	 */
+	private ProgressListener progresslistener;
+	
+	/**
+	 * Optional, tested by process() between two blocks.
+	 */
+	private CancellationToken cancellationtoken;
+	
+	/**
+	 * process() was stopped by the cancellation token: the results are partial.
+	 */
+	private boolean cancelled;
+	
+	/**
+	 * Data chunk checksums, computed by process(). For a FLAC file, the ones of the same samples in a wav data chunk.
+	 */
+	private WavChecksum datachecksum;
+	
+	/**
+	 * Samples count (all channels) analysed by process().
+	 */
+	private long analysedrawsamplecount;
+	
+	/**
+	 * Number format for round, and clean number values.
+	 */
+	public static NumberFormat currentnumberformat = DecimalFormat.getNumberInstance();
+	
+	/**
+	 * Start publish error in MKR from this time (seconds).
+	 */
+	public static float startpositionresultvalues = ConfigurationProperties.getP("daed.startpositionresultvalues", 0f);
+	
+	/**
+	 * Add the BWF time reference to the MRK markers positions.
+	 */
+	private static boolean bext_marker_offset = ConfigurationProperties.getP("daed.bext_marker_offset", false);
+	
+	/**
+	 * Stop publish error in MKR to this time (seconds).
+	 */
+	public static float endpositionresultvalues = ConfigurationProperties.getP("daed.endpositionresultvalues", Float.MAX_VALUE);
+	
+	/**
+	 * @param file File to read from.
+	 */
+	public WavFile(File file) throws IOException {
+		this.file = file;
+		if (file == null) {
+			throw new NullPointerException("\"file\" can't to be null");
+		}
+		FileInputStream fileinputstream = new FileInputStream(file);
+		/**
+		 * Buffered for speed up the reading byte after byte, with a shared buffer.
+		 */
+		try {
+			bufferedinputstream = new BufferedChannelInputStream(fileinputstream, BufferPool.getShared());
+		} catch (IOException e) {
+			fileinputstream.close();
+			throw e;
+		}
+		datainputstream = new DataInputSteamLittleEndian(bufferedinputstream);
+		createAnalysers();
+	}
+	
+	/**
+	 * A channel set of split files (like one mono file by channel), read in lockstep like one interleaved file.
+	 * @param file the channel set name, for the reports. This file is not read.
+	 * @param memberfiles the files to read, in channel order.
+	 */
+	WavFile(File file, File[] memberfiles) throws IOException {
+		this.file = file;
+		if (file == null) {
+			throw new NullPointerException("\"file\" can't to be null");
+		}
+		if (memberfiles == null) {
+			throw new NullPointerException("\"memberfiles\" can't to be null");
+		}
+		members = new WavFile[memberfiles.length];
+		try {
+			for (int pos = 0; pos < memberfiles.length; pos++) {
+				members[pos] = new WavFile(memberfiles[pos]);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		createAnalysers();
+	}
+	
+	private void createAnalysers() {
+		wavdefaultevents = new ArrayList<WavDefaultevent>();
+		analysers = new ArrayList<WavAnalyser>();
+		if (truepeak) {
+			analysers.add(new WavAnalyserTruepeak());
+		}
+		if (loudness) {
+			analysers.add(new WavAnalyserLoudness());
+		}
+		if (level) {
+			analysers.add(new WavAnalyserLevel());
+		}
+		if (resolution) {
+			analysers.add(new WavAnalyserResolution());
+		}
+		if (clicks) {
+			analysers.add(new WavAnalyserClick());
+		}
+		if (stutters) {
+			analysers.add(new WavAnalyserStutter());
+		}
+	}
+	
+	/**
+	 * Add an analysis to process(), before its start.
+	 */
+	void addAnalyser(WavAnalyser analyser) {
+		if (analyser == null) {
+			throw new NullPointerException("\"analyser\" can't to be null");
+		}
+		analysers.add(analyser);
+	}
+	
+	public void setProgressListener(ProgressListener progresslistener) {
+		this.progresslistener = progresslistener;
+	}
+	
+	public void setCancellationToken(CancellationToken cancellationtoken) {
+		this.cancellationtoken = cancellationtoken;
+	}
+	
+	/**
+	 * Set by the batch scheduler, for the long files.
+	 */
+	void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * After parseWavHeader(): process() can split the file in time segments, analysed in parallel.
+	 * Not with a checkpoint, a FLAC file (read in one pass), or an analysis which display its events when found.
+	 */
+	boolean isSegmentable() {
+		if ((checkpoint_interval > 0) | hasFlacDecoder()) {
+			return false;
+		}
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			if (analysers.get(pos).createSegmentAnalyser() == null) {
+				return false;
+			}
+		}
+		return datasize / (samplesize * channelcount) >= 2l * segment_min_duration * freq;
+	}
+	
+	private boolean hasFlacDecoder() {
+		if (members == null) {
+			return flacdecoder != null;
+		}
+		for (int pos = 0; pos < members.length; pos++) {
+			if (members[pos].hasFlacDecoder()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * A new reader of the same file or channel set, after parseWavHeader(), for a time segment. Close it after.
+	 */
+	WavFile createReader() throws IOException {
+		WavFile reader;
+		if (members != null) {
+			File[] memberfiles = new File[members.length];
+			for (int pos = 0; pos < members.length; pos++) {
+				memberfiles[pos] = members[pos].file;
+			}
+			reader = new WavFile(file, memberfiles);
+		} else {
+			reader = new WavFile(file);
+		}
+		reader.segmentreader = true;
+		try {
+			reader.parseWavHeader();
+		} catch (IOException e) {
+			reader.close();
+			throw e;
+		}
+		return reader;
+	}
+	
+	/**
+	 * State before the first sample.
+	 */
+	WavDetectionState createDetectionState() {
+		return new WavDetectionState(channelcount, Math.round((freq * no_warning_duration)));
+	}
+	
+	WavDetector createDetector(WavDetectionState state, List<WavDefaultevent> events) {
+		return new WavDetector(channelcount, same_sample_threshold_silence, same_sample_threshold_hold, Math.round((freq * no_warning_duration)), level_threshold_hold, state, events);
+	}
+	
+	/**
+	 * @return true if process() was stopped before the end of file, by the cancellation token.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	
+	/**
+	 * @return the MD5 of the data chunk payload (hexadecimal), or null if it is not computed (disabled, cancelled).
+	 */
+	public String getDataMD5() {
+		if (datachecksum == null) {
+			return null;
+		}
+		return datachecksum.getMD5();
+	}
+	
+	/**
+	 * @return the xxHash64 of the data chunk payload (hexadecimal), or null if it is not computed (disabled, cancelled).
+	 */
+	public String getDataXXHash64() {
+		if (datachecksum == null) {
+			return null;
+		}
+		return datachecksum.getXXHash64();
+	}
+	
+	/**
+	 * Read the 4 next bytes, like wav label data.
+	 */
+	private byte[] readNext4bytes() throws IOException {
+		byte[] result = new byte[4];
+		
+		int realread = datainputstream.read(result);
+		if (realread != 4) {
+			throw new EOFException(String.valueOf(realread));
+		}
+		return result;
+	}
+	
+	/**
+	 * Read the first bytes in wav file for get informations, and position to the start of wav datas (samples).
+	 * @see http://www.sonicspot.com/guide/wavefiles.html to understand the wonders of wav riff files.
+	 */
+	void parseWavHeader() throws IOException {
+		if (members != null) {
+			parseMembersHeaders();
+			return;
+		}
+		
+		/**
+		 * FileTypeBlocID (4 bytes) : RIFF (0x52,0x49,0x46,0x46), or fLaC (0x66,0x4C,0x61,0x43) for a FLAC file, or FORM (0x46,0x4F,0x52,0x4D) for an AIFF file.
+		 */
+		byte[] label = readNext4bytes();
+		if (((label[0] == 0x66) & (label[1] == 0x4C) & (label[2] == 0x61) & (label[3] == 0x43))) {
+			parseFlacHeader();
+			return;
+		}
+		if (((label[0] == 0x46) & (label[1] == 0x4F) & (label[2] == 0x52) & (label[3] == 0x4D))) {
+			parseAiffHeader();
+			return;
+		}
+		if (((label[0] == 0x52) & (label[1] == 0x49) & (label[2] == 0x46) & (label[3] == 0x46)) == false) {
+			throw new IOException("Bad header const for RIFF");
+		}
+		
+		/**
+		 * FileSize (4 bytes) : file size minus 8 bytes
+		 */
+		readNext4bytes();
+		
+		/**
+		 * FileFormatID (4 bytes) : Format = «WAVE» (0x57,0x41,0x56,0x45)
+		 */
+		validByteValue(0x57, "WAVE");
+		validByteValue(0x41, "WAVE");
+		validByteValue(0x56, "WAVE");
+		validByteValue(0x45, "WAVE");
+		
+		while (true) {
+			label = readNext4bytes();
+			
+			if (((label[0] == 0x66) & (label[1] == 0x6D) & (label[2] == 0x74) & (label[3] == 0x20))) {
+				/**
+				 * "fmt "
+				 * Wav file informations
+				 */
+				
+				/**
+				 * BlocSize (4 bytes) : bytes count for block - 8 (0x10)
+				 */
+				int blocsize = datainputstream.readInt(); // 16
+				
+				/**
+				 * AudioFormat (2 bytes) : Storage type (1: PCM, ...)
+				 */
+				validByteValue(0x01, "PCM");
+				validByteValue(0x00, "PCM");
+				
+				/**
+				 * NbrCanaux (2 bytes) : number of channels (1 -> 6)
+				 */
+				channelcount = datainputstream.readUnsignedShort();
+				
+				/**
+				 * Sample frequency in Hz (4 bytes) : 11025, 22050, 44100, 48000 and 96000
+				 */
+				freq = datainputstream.readInt(); // 48000
+				
+				/**
+				 * BytePerSec (4 bytes) : bytes count to read by seconds (== freq * BytePerBloc).
+				 */
+				datainputstream.readInt();// 288000
+				
+				/**
+				 * BytePerBloc (2 bytes) : bytes count by sample block (for all channels : channelcount * BitsPerSample/8).
+				 */
+				datainputstream.readUnsignedShort();
+				
+				/**
+				 * BitsPerSample (2 bytes) : bytes count used for one sample (8, 16, 24)
+				 */
+				samplesize = datainputstream.readUnsignedShort() / 8;
+				
+				if (blocsize > 16) {
+					datainputstream.skipBytes(blocsize - 16);
+				}
+				
+				continue;
+			}
+			
+			if (((label[0] == 0x62) & (label[1] == 0x65) & (label[2] == 0x78) & (label[3] == 0x74))) {
+				/**
+				 * "bext", Broadcast Wave Format informations
+				 */
+				int blocsize = datainputstream.readInt();
+				
+				if (blocsize < 346) {
+					/**
+					 * Malformed, too short for the time reference: skipped like an unknown chunk.
+					 */
+					datainputstream.skipBytes(blocsize);
+					continue;
+				}
+				
+				/**
+				 * Description (256 bytes), Originator (32 bytes), OriginatorReference (32 bytes), OriginationDate (10 bytes), OriginationTime (8 bytes)
+				 */
+				datainputstream.skipBytes(338);
+				
+				/**
+				 * TimeReferenceLow and TimeReferenceHigh (2 x 4 bytes) : samples count since midnight
+				 */
+				long timereferencelow = datainputstream.readInt() & 0xFFFFFFFFl;
+				long timereferencehigh = datainputstream.readInt() & 0xFFFFFFFFl;
+				timereference = (timereferencehigh << 32) | timereferencelow;
+				
+				datainputstream.skipBytes(blocsize - 346);
+				continue;
+			}
+			
+			if (((label[0] == 0x64) & (label[1] == 0x61) & (label[2] == 0x74) & (label[3] == 0x61))) {
+				/**
+				 * "data", this is what we seek !
+				 */
+				break;
+			}
+			
+			/**
+			 * The rest : "iXML", "PAD " ...
+			 */
+			datainputstream.skipBytes(datainputstream.readInt());
+		}
+		
+		// 0x20 0xCC 0x2F -> 24/st
+		// 0x20 0xCC 0x0F -> 16/mo
+		
+		/**
+		 * DataSize (4 bytes) : bytes count for data : samples
+		 */
+		datasize = datainputstream.readInt();
+	}
+	
+	/**
+	 * Read the FLAC metadata, and position to the first frame. datasize is the size of the same samples in a wav data chunk.
+	 */
+	private void parseFlacHeader() throws IOException {
+		flacdecoder = new FlacDecoder(bufferedinputstream);
+		flacdecoder.parseHeader();
+		channelcount = flacdecoder.getChannelcount();
+		freq = flacdecoder.getFreq();
+		samplesize = (flacdecoder.getBitspersample() + 7) / 8;
+		
+		if (flacdecoder.getTotalsamples() == 0) {
+			throw new IOException("Unknown FLAC samples count");
+		}
+		/**
+		 * The events positions are in samples, on 32 bits.
+		 */
+		if (flacdecoder.getTotalsamples() > Integer.MAX_VALUE) {
+			throw new IOException("FLAC file is too long: " + flacdecoder.getTotalsamples() + " samples");
+		}
+		datasize = flacdecoder.getTotalsamples() * channelcount * samplesize;
+	}
+	
+	/**
+	 * Read the AIFF or AIFF-C chunks, and position to the samples in the SSND chunk. The AIFF numbers are big endian.
+	 * @see http://www-mmsp.ece.mcgill.ca/Documents/AudioFormats/AIFF/AIFF.html
+	 */
+	private void parseAiffHeader() throws IOException {
+		aiff = true;
+		
+		/**
+		 * FileSize (4 bytes), FormType (4 bytes) : AIFF, or AIFC for AIFF-C
+		 */
+		readNext4bytes();
+		byte[] label = readNext4bytes();
+		boolean aifc = isLabel(label, "AIFC");
+		if ((isLabel(label, "AIFF") | aifc) == false) {
+			throw new IOException("Bad header const for AIFF");
+		}
+		
+		boolean bigendiansamples = true;
+		boolean common = false;
+		int chunksize;
+		while (true) {
+			label = readNext4bytes();
+			chunksize = readBigEndianInt();
+			
+			if (isLabel(label, "COMM")) {
+				/**
+				 * NumChannels (2 bytes), NumSampleFrames (4 bytes), SampleSize (2 bytes, in bits), SampleRate (10 bytes, 80 bits IEEE extended)
+				 */
+				channelcount = readBigEndianShort();
+				readNext4bytes();
+				samplesize = (readBigEndianShort() + 7) / 8;
+				freq = readExtended();
+				int commonsize = 18;
+				
+				if (aifc) {
+					/**
+					 * CompressionType (4 bytes) : only PCM, big endian (NONE, twos) or little endian (sowt)
+					 */
+					byte[] compression = readNext4bytes();
+					commonsize += 4;
+					if (isLabel(compression, "sowt")) {
+						bigendiansamples = false;
+					} else if ((isLabel(compression, "NONE") | isLabel(compression, "twos")) == false) {
+						throw new IOException("Unsupported AIFF-C compression: " + new String(compression, "ISO-8859-1"));
+					}
+				}
+				datainputstream.skipBytes(chunksize - commonsize + (chunksize & 1));
+				common = true;
+				continue;
+			}
+			
+			if (isLabel(label, "SSND")) {
+				if (common == false) {
+					throw new IOException("AIFF SSND chunk before the COMM chunk");
+				}
+				/**
+				 * Offset (4 bytes) before the samples, BlockSize (4 bytes)
+				 */
+				int offset = readBigEndianInt();
+				readBigEndianInt();
+				datainputstream.skipBytes(offset);
+				datasize = chunksize - 8 - offset;
+				break;
+			}
+			
+			/**
+			 * The rest : "MARK", "INST", "NAME"... padded to an even size.
+			 */
+			datainputstream.skipBytes(chunksize + (chunksize & 1));
+		}
+		
+		datainputstream.setBigEndianSamples(bigendiansamples);
+	}
+	
+	private static boolean isLabel(byte[] label, String name) {
+		for (int pos = 0; pos < 4; pos++) {
+			if (label[pos] != name.charAt(pos)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private int readBigEndianInt() throws IOException {
+		byte[] b = readNext4bytes();
+		return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+	}
+	
+	private int readBigEndianShort() throws IOException {
+		int value = datainputstream.readUnsignedShort();
+		return ((value & 0xFF) << 8) | (value >>> 8);
+	}
+	
+	/**
+	 * Read an AIFF sample rate : 80 bits IEEE extended, big endian.
+	 */
+	private int readExtended() throws IOException {
+		byte[] b = new byte[10];
+		datainputstream.readFully(b);
+		int exponent = ((b[0] & 0x7F) << 8) | (b[1] & 0xFF);
+		long mantissa = 0;
+		for (int pos = 2; pos < 10; pos++) {
+			mantissa = (mantissa << 8) | (b[pos] & 0xFF);
+		}
+		/**
+		 * The mantissa is unsigned, with the integer bit on its high bit: only its 53 high bits are kept, for a double.
+		 */
+		return (int) Math.round(Math.scalb((double) (mantissa >>> 11), exponent - 16383 - 52));
+	}
+	
+	/**
+	 * Parse all the members headers. The channel set have the channels of all the members, and the length of the shortest.
+	 */
+	private void parseMembersHeaders() throws IOException {
+		channelcount = 0;
+		int framecount = Integer.MAX_VALUE;
+		for (int pos = 0; pos < members.length; pos++) {
+			members[pos].parseWavHeader();
+			if (pos == 0) {
+				freq = members[pos].freq;
+				samplesize = members[pos].samplesize;
+				timereference = members[pos].timereference;
+			} else if ((members[pos].freq != freq) | (members[pos].samplesize != samplesize)) {
+				throw new IOException("Not the same sample freq or bits per sample in the channel set: " + members[pos].file.getName());
+			}
+			channelcount += members[pos].channelcount;
+			framecount = Math.min(framecount, members[pos].getSampleCount());
+		}
+		
+		for (int pos = 0; pos < members.length; pos++) {
+			if ((members[pos].getSampleCount() > framecount) & (segmentreader == false)) {
+				synchronized (System.err) {
+					System.err.print(members[pos].file.getName());
+					System.err.println(" is longer than the channel set, its end is not analysed");
+				}
+			}
+		}
+		
+		datasize = (long) framecount * channelcount * samplesize;
+	}
+	
+	/**
+	 * After parseWavHeader(): RIFF file, not FLAC, AIFF or channel set.
+	 */
+	boolean isWav() {
+		return (flacdecoder == null) & (aiff == false) & (members == null);
+	}
+	
+	/**
+	 * @return the BWF time reference (samples since midnight), or -1 if the file has no bext chunk.
+	 */
+	public long getTimereference() {
+		return timereference;
+	}
+	
+	/**
+	 * If the next reading byte is not the expected value, throw a new IOException, whis testname to cause.
+	 */
+	private void validByteValue(int expectedvalue, String testname) throws IOException {
+		if (datainputstream.read() != expectedvalue) {
+			throw new IOException("Bad header const for " + testname);
+		}
+	}
+	
+	/**
+	 * The number of bits for a sample like 8, 16, 24
+	 */
+	public int getBitspersample() {
+		return samplesize * 8;
+	}
+	
+	int getChannelcount() {
+		return channelcount;
+	}
+	
+	int getFreq() {
+		return freq;
+	}
+	
+	/**
+	 * After parseWavHeader(): the data chunk position in file, and its size in bytes.
+	 */
+	long getDataPosition() throws IOException {
+		return bufferedinputstream.getPosition();
+	}
+	
+	long getDatasize() {
+		return datasize;
+	}
+	
+	/**
+	 * The number of sample for this file.
+	 */
+	public int getSampleCount() {
+		return (int) (datasize / (samplesize * channelcount));
+	}
+	
+	/**
+	 * The duration for this audio file.
+	 */
+	public float getDuration() {
+		return (float) getSampleCount() / (float) freq;
+	}
+	
+	/**
+	 * Close the stream.
+	 * Don't forget to do !
+	 */
+	public void close() throws IOException {
+		if (members != null) {
+			for (int pos = 0; pos < members.length; pos++) {
+				if (members[pos] != null) {
+					members[pos].close();
+				}
+			}
+			return;
+		}
+		if (flacdecoder != null) {
+			flacdecoder.close();
+		}
+		datainputstream.close();
+	}
+	
+	/**
+	 * Read some samples (all channels, complete frames) from the FLAC decoder, the data chunk, or the members in lockstep.
+	 * @return the read samples count, less than count only at the end of the file.
+	 */
+	int readSamples(int[] block, int count) throws IOException {
+		if (flacdecoder != null) {
+			return flacdecoder.readSamples(block, 0, count);
+		}
+		if (members == null) {
+			return datainputstream.readSamples(block, 0, count, samplesize);
+		}
+		
+		/**
+		 * The same frames are read in each member, and interleaved in the block, after the channels of the previous members.
+		 */
+		int framecount = count / channelcount;
+		int readframecount = framecount;
+		int firstchannel = 0;
+		int memberchannelcount;
+		int memberframecount;
+		for (int pos = 0; pos < members.length; pos++) {
+			memberchannelcount = members[pos].channelcount;
+			if ((memberblock == null) || (memberblock.length < framecount * memberchannelcount)) {
+				memberblock = new int[framecount * memberchannelcount];
+			}
+			memberframecount = members[pos].readSamples(memberblock, framecount * memberchannelcount) / memberchannelcount;
+			readframecount = Math.min(readframecount, memberframecount);
+			
+			for (int frame = 0; frame < memberframecount; frame++) {
+				System.arraycopy(memberblock, frame * memberchannelcount, block, frame * channelcount + firstchannel, memberchannelcount);
+			}
+			firstchannel += memberchannelcount;
+		}
+		return readframecount * channelcount;
+	}
+	
+	/**
+	 * Skip some samples (all channels, complete frames), like readSamples().
+	 */
+	void skipSamples(long count) throws IOException {
+		if (flacdecoder != null) {
+			flacdecoder.skipSamples(count);
+		} else if (members == null) {
+			/**
+			 * A data chunk size is on 32 bits.
+			 */
+			datainputstream.skipBytes((int) (count * samplesize));
+		} else {
+			for (int pos = 0; pos < members.length; pos++) {
+				members[pos].skipSamples(count / channelcount * members[pos].channelcount);
+			}
+		}
+	}
+	
+	/**
+	 * Start the checksums of the data chunk, or of each member data chunk.
+	 */
+	private void startChecksum() {
+		if (members != null) {
+			for (int pos = 0; pos < members.length; pos++) {
+				members[pos].startChecksum();
+			}
+			return;
+		}
+		datachecksum = new WavChecksum(datasize);
+		if (flacdecoder != null) {
+			flacdecoder.setChecksum(datachecksum);
+		} else {
+			datainputstream.setChecksum(datachecksum);
+		}
+	}
+	
+	/**
+	 * Stop the reading: close the FLAC decoders, and the checksums.
+	 */
+	void closeReading() {
+		if (members != null) {
+			for (int pos = 0; pos < members.length; pos++) {
+				members[pos].closeReading();
+			}
+			return;
+		}
+		if (flacdecoder != null) {
+			flacdecoder.close();
+		}
+		if (datachecksum != null) {
+			datachecksum.close();
+		}
+	}
+	
+	private void finishChecksum() throws IOException {
+		if (members != null) {
+			for (int pos = 0; pos < members.length; pos++) {
+				members[pos].finishChecksum();
+			}
+			return;
+		}
+		if (datachecksum != null) {
+			datachecksum.finish();
+		}
+	}
+	
+	/**
+	 * For a channel set, the sum of the members.
+	 */
+	private long getFileSize() {
+		if (members == null) {
+			return file.length();
+		}
+		long size = 0;
+		for (int pos = 0; pos < members.length; pos++) {
+			size += members[pos].getFileSize();
+		}
+		return size;
+	}
+	
+	long getReadBytes() {
+		if (members == null) {
+			return bufferedinputstream.getReadBytes();
+		}
+		long readbytes = 0;
+		for (int pos = 0; pos < members.length; pos++) {
+			readbytes += members[pos].getReadBytes();
+		}
+		return readbytes;
+	}
+	
+	long getIOWaitTime() {
+		if (members == null) {
+			return bufferedinputstream.getIOWaitTime();
+		}
+		long iowaittime = 0;
+		for (int pos = 0; pos < members.length; pos++) {
+			iowaittime += members[pos].getIOWaitTime();
+		}
+		return iowaittime;
+	}
+	
+	/**
+	 * Convert sample value (integer 32 bits signed) to lovely dB full scale in double.
+	 */
+	static double get_dBValue(int linear_int_value) {
+		return 20 * Math.log10(Math.abs(linear_int_value) / INTEGER_MAX_VALUE);
+	}
+	
+	/**
+	 * Reads the wav file and analyzes its values.
+	 */
+	public void process() throws IOException {
+		long processstart = 0;
+		long processcpustart = 0;
+		long headerparsingtime = 0;
+		if (AnalysisMetrics.enabled) {
+			processstart = System.nanoTime();
+			processcpustart = AnalysisMetrics.getCurrentThreadCpuTime();
+			processstarttime = processstart;
+		}
+		
+		try {
+			parseWavHeader();
+		} catch (IOException e) {
+			/**
+			 * A file in error must not keep its I/O buffer: the shared pool would wait for it.
+			 */
+			close();
+			throw e;
+		}
+		
+		if (AnalysisMetrics.enabled) {
+			headerparsingtime = System.nanoTime() - processstart;
+		}
+		
+		int no_warning_duration_realsample = Math.round((freq * no_warning_duration));
+		
+		WavDetectionState state = new WavDetectionState(channelcount, no_warning_duration_realsample);
+		initAnalysers();
+		
+		if (checksum) {
+			startChecksum();
+		}
+		
+		/**
+		 * Restart from the last checkpoint, if any.
+		 * The checksums can't be saved: the skipped samples are read for them.
+		 */
+		WavCheckpoint checkpoint = null;
+		if (checkpoint_interval > 0) {
+			if (members != null) {
+				/**
+				 * The set file don't exists: the checkpoint is checked with the members files.
+				 */
+				File[] memberfiles = new File[members.length];
+				for (int pos = 0; pos < members.length; pos++) {
+					memberfiles[pos] = members[pos].file;
+				}
+				checkpoint = new WavCheckpoint(file, memberfiles, getDetectionParameters());
+			} else {
+				checkpoint = new WavCheckpoint(file, getDetectionParameters());
+			}
+			boolean restored = false;
+			try {
+				restored = checkpoint.restore(state, analysers, wavdefaultevents);
+			} catch (IOException e) {
+				e.printStackTrace();
+				/**
+				 * Start from the beginning, without anything from the checkpoint.
+				 */
+				state = new WavDetectionState(channelcount, no_warning_duration_realsample);
+				wavdefaultevents.clear();
+				initAnalysers();
+			}
+			if (restored) {
+				synchronized (System.err) {
+					System.err.print("Resume from checkpoint\t");
+					System.err.println(state.rawsamplepos / channelcount);
+				}
+				try {
+					skipSamples(state.rawsamplepos);
+				} catch (IOException e) {
+					/**
+					 * The stream position is unknown, and it can't go back: the analysis fails, and the next one will start from the beginning.
+					 */
+					checkpoint.delete();
+					IOException ioe = new IOException("Can't resume from the checkpoint " + checkpoint.getCheckpointFile().getPath());
+					ioe.initCause(e);
+					throw ioe;
+				}
+			}
+		}
+		
+		/**
+		 * All the samples in data block, the last one can be incomplete.
+		 */
+		long rawsamplecount = (datasize + samplesize - 1) / samplesize;
+		
+		WavDetector detector = new WavDetector(channelcount, same_sample_threshold_silence, same_sample_threshold_hold, no_warning_duration_realsample, level_threshold_hold, state, wavdefaultevents);
+		
+		/**
+		 * A long file is split in time segments, one by thread: the first one is analysed here, the next ones on their own readers, then they are merged in order.
+		 */
+		ArrayList<WavSegment> segments = new ArrayList<WavSegment>();
+		long rawsampleend = rawsamplecount;
+		if ((threads > 1) && isSegmentable()) {
+			long framecount = rawsamplecount / channelcount;
+			long segmentframes = (framecount + threads - 1) / threads;
+			segmentframes = (segmentframes + decode_block_frames - 1) / decode_block_frames * decode_block_frames;
+			long segmentend;
+			for (long firstframe = segmentframes; firstframe < framecount; firstframe += segmentframes) {
+				if (firstframe + segmentframes >= framecount) {
+					segmentend = rawsamplecount;
+				} else {
+					segmentend = (firstframe + segmentframes) * channelcount;
+				}
+				segments.add(new WavSegment(this, analysers, (int) firstframe, segmentend, decode_block_frames, cancellationtoken));
+			}
+		}
+		if (segments.size() > 0) {
+			rawsampleend = (long) segments.get(0).firstframe * channelcount;
+		} else if (threads > 1) {
+			detector.setChannelThreads(threads);
+		} else if (channelcount >= channel_parallel_min_channels) {
+			detector.setChannelThreads(channel_threads);
+		}
+		
+		/**
+		 * Samples are read and converted (channel after channel) by block of complete frames, in signed 32b integer.
+		 */
+		BufferPool pool = BufferPool.getShared();
+		int[] block = pool.acquireDecodeBuffer(decode_block_frames * channelcount, channelcount);
+		int blocklength = (block.length / channelcount) * channelcount;
+		int blockrequestcount;
+		int blocksamplecount;
+		int blockrealsamplepos;
+		
+		long progressstart = System.nanoTime();
+		long nextprogresstime = System.currentTimeMillis() + progress_interval;
+		long nextcheckpointtime = System.currentTimeMillis() + checkpoint_interval * 1000l;
+		
+		ExecutorService executor = null;
+		ArrayList<Future<Object>> segmentresults = new ArrayList<Future<Object>>();
+		if (segments.size() > 0) {
+			executor = Executors.newFixedThreadPool(segments.size());
+			for (int pos = 0; pos < segments.size(); pos++) {
+				segmentresults.add(executor.submit(segments.get(pos)));
+			}
+		}
+		
+		boolean truncated = false;
+		try {
+			try {
+				while (state.rawsamplepos < rawsampleend) {
+					if (cancellationtoken != null) {
+						if (cancellationtoken.isCancelled()) {
+							cancelled = true;
+							break;
+						}
+					}
+					if (progresslistener != null) {
+						if (System.currentTimeMillis() >= nextprogresstime) {
+							notifyProgress(state.rawsamplepos + getSegmentsProgress(segments), rawsamplecount, progressstart);
+							nextprogresstime = System.currentTimeMillis() + progress_interval;
+						}
+					}
+					if (checkpoint != null) {
+						if (System.currentTimeMillis() >= nextcheckpointtime) {
+							saveCheckpoint(checkpoint, state);
+							nextcheckpointtime = System.currentTimeMillis() + checkpoint_interval * 1000l;
+						}
+					}
+					
+					blockrequestcount = (int) Math.min(blocklength, rawsampleend - state.rawsamplepos);
+					blocksamplecount = readSamples(block, blockrequestcount);
+					
+					blockrealsamplepos = (int) (state.rawsamplepos / channelcount);
+					detector.process(block, blocksamplecount);
+					for (int pos = 0; pos < analysers.size(); pos++) {
+						analysers.get(pos).analyse(block, blocksamplecount / channelcount, blockrealsamplepos);
+					}
+					
+					if (blocksamplecount < blockrequestcount) {
+						throw new EOFException("Data block is truncated after " + state.rawsamplepos + " samples");
+					}
+				}
+			} catch (EOFException e) {
+				truncated = true;
+				e.printStackTrace();
+			}
+			
+			if (segments.size() > 0) {
+				if (checksum & (cancelled == false) & (truncated == false)) {
+					readChecksum(rawsampleend, rawsamplecount, blocklength);
+				}
+				/**
+				 * The I/O buffer is given back before wait the segments: their readers can wait for it.
+				 */
+				close();
+				waitSegments(segmentresults, segments, state.rawsamplepos, rawsamplecount, progressstart);
+				if (truncated == false) {
+					mergeSegments(segments, state, detector, block);
+				}
+			}
+		} finally {
+			if (executor != null) {
+				/**
+				 * After an error, the segments are stopped.
+				 */
+				executor.shutdownNow();
+			}
+			detector.close();
+			pool.release(block);
+			closeReading();
+		}
+		
+		if (cancelled == false) {
+			finishChecksum();
+		}
+		
+		analysedrawsamplecount = state.rawsamplepos;
+		
+		if (cancelled == false) {
+			for (int pos = 0; pos < analysers.size(); pos++) {
+				analysers.get(pos).end();
+			}
+		}
+		
+		if (checkpoint != null) {
+			if (cancelled) {
+				/**
+				 * The next run will continue from here.
+				 */
+				saveCheckpoint(checkpoint, state);
+			} else {
+				checkpoint.delete();
+			}
+		}
+		if ((progresslistener != null) & (cancelled == false)) {
+			notifyProgress(state.rawsamplepos, rawsamplecount, progressstart);
+		}
+		
+		peak_position_sample = state.peak_position_sample;
+		peak_channel_id = state.peak_channel_id;
+		
+		peak_value_dbfs = get_dBValue(state.maxvalue);
+		
+		if (BatchSummary.enabled) {
+			BatchSummary.getShared().addFile(file.getName(), (double) (state.rawsamplepos / channelcount) / (double) freq, cancelled, peak_value_dbfs, wavdefaultevents);
+		}
+		
+		if (AnalysisMetrics.enabled) {
+			long readbytes = getReadBytes();
+			long iowaittime = getIOWaitTime();
+			long cputime = AnalysisMetrics.getCurrentThreadCpuTime() - processcpustart;
+			for (int pos = 0; pos < segments.size(); pos++) {
+				readbytes += segments.get(pos).readbytes;
+				iowaittime += segments.get(pos).iowaittime;
+				cputime += segments.get(pos).cputime;
+			}
+			AnalysisMetrics.getShared().addProcess(readbytes, state.rawsamplepos, wavdefaultevents, headerparsingtime, System.nanoTime() - processstart, iowaittime, cputime);
+		}
+	}
+	
+	/**
+	 * Samples count (all channels) analysed by the segments, for the progress.
+	 */
+	private static long getSegmentsProgress(ArrayList<WavSegment> segments) {
+		long rawsamplecount = 0;
+		for (int pos = 0; pos < segments.size(); pos++) {
+			rawsamplecount += segments.get(pos).analysedrawsamplecount;
+		}
+		return rawsamplecount;
+	}
+	
+	/**
+	 * After the first segment, the samples are only read for the checksums: they are computed in the data order.
+	 */
+	private void readChecksum(long rawsamplepos, long rawsamplecount, int blocklength) throws IOException {
+		int count;
+		while (rawsamplepos < rawsamplecount) {
+			if (cancellationtoken != null) {
+				if (cancellationtoken.isCancelled()) {
+					cancelled = true;
+					return;
+				}
+			}
+			count = (int) Math.min(blocklength, rawsamplecount - rawsamplepos);
+			skipSamples(count);
+			rawsamplepos += count;
+		}
+	}
+	
+	/**
+	 * Wait the end of the segments, and notify the progress meanwhile.
+	 * @param rawsamplepos analysed samples count of the first segment.
+	 */
+	private void waitSegments(ArrayList<Future<Object>> segmentresults, ArrayList<WavSegment> segments, long rawsamplepos, long rawsamplecount, long progressstart)
+			throws IOException {
+		boolean done;
+		try {
+			for (int pos = 0; pos < segmentresults.size(); pos++) {
+				if (progresslistener == null) {
+					segmentresults.get(pos).get();
+					continue;
+				}
+				done = false;
+				while (done == false) {
+					try {
+						segmentresults.get(pos).get(Math.max(1, progress_interval), TimeUnit.MILLISECONDS);
+						done = true;
+					} catch (TimeoutException e) {
+						notifyProgress(rawsamplepos + getSegmentsProgress(segments), rawsamplecount, progressstart);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted during the segments analysis");
+		} catch (ExecutionException e) {
+			IOException ioe = new IOException("Error during the segments analysis");
+			ioe.initCause(e.getCause());
+			throw ioe;
+		}
+	}
+	
+	/**
+	 * Add the segments to the first one (analysed in state), in the file order, until the first incomplete one (cancelled or truncated).
+	 * A segment events are kept if its start state make the same events as the end state of the previous segment, or else its detection is made again from this end
+	 * state (like after a value repeated during all the warm-up).
+	 */
+	private void mergeSegments(ArrayList<WavSegment> segments, WavDetectionState state, WavDetector detector, int[] block) throws IOException {
+		WavSegment segment;
+		WavDefaultevent event;
+		for (int pos = 0; pos < segments.size(); pos++) {
+			segment = segments.get(pos);
+			if ((segment.started == false) | (state.rawsamplepos != (long) segment.firstframe * channelcount)) {
+				cancelled = true;
+				return;
+			}
+			
+			if (detector.isEquivalent(state, segment.startstate, segment.firstframe)) {
+				for (int pos2 = 0; pos2 < segment.events.size(); pos2++) {
+					event = segment.events.get(pos2);
+					WavDetector.printEvent(event);
+					wavdefaultevents.add(event);
+				}
+				System.arraycopy(segment.state.channelvalues, 0, state.channelvalues, 0, state.channelvalues.length);
+				/**
+				 * The last events before the segment are the ones of the previous segment.
+				 */
+				if (segment.state.lastsilencezonerealsample >= segment.firstframe) {
+					state.lastsilencezonerealsample = segment.state.lastsilencezonerealsample;
+				}
+				if (segment.state.lastovermodulationrealsample >= segment.firstframe) {
+					state.lastovermodulationrealsample = segment.state.lastovermodulationrealsample;
+				}
+				if (segment.state.lastholdrealsample >= segment.firstframe) {
+					state.lastholdrealsample = segment.state.lastholdrealsample;
+				}
+				/**
+				 * The first peak is kept.
+				 */
+				if (segment.state.maxvalue > state.maxvalue) {
+					state.maxvalue = segment.state.maxvalue;
+					state.peak_position_sample = segment.state.peak_position_sample;
+					state.peak_channel_id = segment.state.peak_channel_id;
+				}
+				state.rawsamplepos = segment.state.rawsamplepos;
+			} else {
+				redetectSegment(segment, state, detector, block);
+			}
+			
+			for (int pos2 = 0; pos2 < analysers.size(); pos2++) {
+				analysers.get(pos2).mergeSegment(segment.analysers.get(pos2));
+			}
+			
+			if (segment.truncated != null) {
+				segment.truncated.printStackTrace();
+				return;
+			}
+			if (segment.isComplete() == false) {
+				cancelled = true;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * The detection of a segment, again from the end state of the previous one, on a new reader. The events are displayed when found.
+	 */
+	private void redetectSegment(WavSegment segment, WavDetectionState state, WavDetector detector, int[] block) throws IOException {
+		WavFile reader = createReader();
+		try {
+			reader.skipSamples(state.rawsamplepos);
+			int blocklength = (block.length / channelcount) * channelcount;
+			int blockrequestcount;
+			int blocksamplecount;
+			while (state.rawsamplepos < segment.state.rawsamplepos) {
+				blockrequestcount = (int) Math.min(blocklength, segment.state.rawsamplepos - state.rawsamplepos);
+				blocksamplecount = reader.readSamples(block, blockrequestcount);
+				detector.process(block, blocksamplecount);
+				if (blocksamplecount < blockrequestcount) {
+					/**
+					 * The truncation is reported by the segment.
+					 */
+					return;
+				}
+			}
+		} finally {
+			reader.closeReading();
+			reader.close();
+		}
+	}
+	
+	private void initAnalysers() {
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			analysers.get(pos).init(channelcount, freq, getBitspersample(), wavdefaultevents);
+		}
+	}
+	
+	/**
+	 * A checkpoint write error don't stop the analysis.
+	 */
+	private void saveCheckpoint(WavCheckpoint checkpoint, WavDetectionState state) {
+		try {
+			checkpoint.save(state, analysers, wavdefaultevents);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * All the values that change the process() results, for checkpoints.
+	 */
+	private String getDetectionParameters() {
+		StringBuffer sb = new StringBuffer();
+		sb.append(channelcount);
+		sb.append(" ");
+		sb.append(freq);
+		sb.append(" ");
+		sb.append(samplesize);
+		sb.append(" ");
+		sb.append(datasize);
+		sb.append(" ");
+		sb.append(same_sample_threshold_silence);
+		sb.append(" ");
+		sb.append(same_sample_threshold_hold);
+		sb.append(" ");
+		sb.append(no_warning_duration);
+		sb.append(" ");
+		sb.append(level_threshold_hold);
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			sb.append(" ");
+			sb.append(analysers.get(pos).getParameters());
+		}
+		return sb.toString();
+	}
+	
+	private void notifyProgress(long rawsamplepos, long rawsamplecount, long progressstart) {
+		double elapsed = (double) (System.nanoTime() - progressstart) / 1000000000d;
+		double samplespersecond = 0;
+		float eta = 0;
+		if (elapsed > 0) {
+			samplespersecond = rawsamplepos / elapsed;
+		}
+		if (samplespersecond > 0) {
+			eta = (float) ((rawsamplecount - rawsamplepos) / samplespersecond);
+		}
+		float fraction = 1f;
+		if (rawsamplecount > 0) {
+			fraction = (float) rawsamplepos / (float) rawsamplecount;
+		}
+		progresslistener.onProgress(this, fraction, samplespersecond, eta);
+	}
+	
+	/**
+	 * @return peak_channel_id
+	 */
+	public int getPeak_channel_id() {
+		return peak_channel_id;
+	}
+	
+	/**
+	 * @return peak_position_sample
+	 */
+	public int getPeak_position_sample() {
+		return peak_position_sample;
+	}
+	
+	/**
+	 * @return peak_value_dbfs
+	 */
+	public double getPeak_value_dbfs() {
+		return peak_value_dbfs;
+	}
+	
+	/**
+	 * The tabbed text file name.
+	 */
+	private File tableresultfile = ConfigurationProperties.getP("daed.tableresultfilename", new File("results.txt"));
+	
+	/**
+	 * Write the table line in an another file than daed.tableresultfilename, like a shard results file.
+	 */
+	void setTableResultFile(File tableresultfile) {
+		if (tableresultfile == null) {
+			throw new NullPointerException("\"tableresultfile\" can't to be null");
+		}
+		this.tableresultfile = tableresultfile;
+	}
+	
+	/**
+	 * Convert an sample number to a second value.
+	 */
+	public float getPositionFromRealSample(int realsampleposition) {
+		return (float) realsampleposition / (float) freq;
+	}
+	
+	/**
+	 * process() start time (System.nanoTime), only if AnalysisMetrics is enabled.
+	 */
+	private long processstarttime;
+	
+	/**
+	 * Write result table file, wav txt information, and WaveLab MRK file.
+	 */
+	public void writeInformationFiles() throws IOException {
+		long reportstart = 0;
+		if (AnalysisMetrics.enabled) {
+			reportstart = System.nanoTime();
+		}
+		
+		boolean createheader;
+		createheader = (tableresultfile.exists() == false);
+		/**
+		 * Append if file exists
+		 */
+		FileOutputStream tableout = new FileOutputStream(tableresultfile, true);
+		
+		/**
+		 * Text tabulated (table)
+		 */
+		StringBuffer tableline;
+		if (createheader) {
+			tableline = new StringBuffer();
+			tableline.append("File name\t");
+			tableline.append("Bits per sample\t");
+			tableline.append("Channel count\t");
+			tableline.append("Sample freq\t");
+			tableline.append("Sample count\t");
+			tableline.append("File duration\t");
+			tableline.append("File size\t");
+			tableline.append("Peak channel\t");
+			tableline.append("Peak position\t");
+			tableline.append("Peak value");
+			for (int pos = 0; pos < analysers.size(); pos++) {
+				analysers.get(pos).appendTableHeader(tableline);
+			}
+			if (checksum) {
+				tableline.append("\tData MD5");
+				tableline.append("\tData XXH64");
+			}
+			tableline.append(LINESEPARATOR);
+			tableout.write(tableline.toString().getBytes());
+		}
+		
+		tableline = new StringBuffer();
+		tableline.append(file.getName());
+		tableline.append("\t");
+		tableline.append(getBitspersample());
+		tableline.append("\t");
+		tableline.append(channelcount);
+		tableline.append("\t");
+		tableline.append(freq);
+		tableline.append("\t");
+		tableline.append(getSampleCount());
+		tableline.append("\t");
+		tableline.append(currentnumberformat.format(getDuration()));
+		tableline.append("\t");
+		tableline.append(getFileSize());
+		tableline.append("\t");
+		tableline.append(getPeak_channel_id() + 1);
+		tableline.append("\t");
+		tableline.append(getPeak_position_sample());
+		tableline.append("\t");
+		tableline.append(currentnumberformat.format(getPeak_value_dbfs()));
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			analysers.get(pos).appendTableValues(tableline);
+		}
+		if (checksum) {
+			tableline.append("\t");
+			if (getDataMD5() != null) {
+				tableline.append(getDataMD5());
+			}
+			tableline.append("\t");
+			if (getDataXXHash64() != null) {
+				tableline.append(getDataXXHash64());
+			}
+		}
+		tableline.append(LINESEPARATOR);
+		tableout.write(tableline.toString().getBytes());
+		tableout.flush();
+		tableout.close();
+		
+		/**
+		 * Text in line.
+		 */
+		String infofilename = file.getPath() + ".txt";
+		/**
+		 * create new file
+		 */
+		PrintStream infoout = new PrintStream(new File(infofilename));
+		infoout.print("File name\t");
+		infoout.println(file.getName());
+		infoout.print("Bits per sample\t");
+		infoout.println(getBitspersample());
+		infoout.print("Channel count\t");
+		infoout.println(channelcount);
+		infoout.print("Sample freq\t");
+		infoout.println(freq);
+		infoout.print("Sample count\t");
+		infoout.println(getSampleCount());
+		infoout.print("File duration\t");
+		infoout.println(currentnumberformat.format(getDuration()));
+		infoout.print("File size\t");
+		infoout.println(getFileSize());
+		if (timereference >= 0) {
+			infoout.print("Time reference\t");
+			infoout.println(timereference);
+		}
+		infoout.print("Peak channel\t");
+		infoout.println(getPeak_channel_id() + 1);
+		infoout.print("Peak position\t");
+		infoout.println(getPeak_position_sample());
+		infoout.print("Peak value\t");
+		infoout.println(currentnumberformat.format(getPeak_value_dbfs()));
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			analysers.get(pos).printInformations(infoout);
+		}
+		if (getDataMD5() != null) {
+			infoout.print("Data MD5\t");
+			infoout.println(getDataMD5());
+			infoout.print("Data XXH64\t");
+			infoout.println(getDataXXHash64());
+		}
+		if (members != null) {
+			/**
+			 * Channel set: the files, and their checksums.
+			 */
+			for (int pos = 0; pos < members.length; pos++) {
+				infoout.print("Member file\t");
+				infoout.print(members[pos].file.getName());
+				if (members[pos].getDataMD5() != null) {
+					infoout.print("\t");
+					infoout.print(members[pos].getDataMD5());
+					infoout.print("\t");
+					infoout.print(members[pos].getDataXXHash64());
+				}
+				infoout.println();
+			}
+		}
+		if (cancelled) {
+			infoout.print("Cancelled at\t");
+			infoout.println(currentnumberformat.format(getPositionFromRealSample((int) (analysedrawsamplecount / channelcount))));
+		}
+		infoout.flush();
+		infoout.close();
+		
+		/**
+		 * Wavelab's Mrk file
+		 */
+		if (wavdefaultevents.size() > 0) {
+			String mrkfilename = file.getPath().substring(0, file.getPath().lastIndexOf(".")) + ".mrk";
+			/**
+			 * Create / overwrite
+			 */
+			PrintStream mrkout = new PrintStream(new File(mrkfilename));
+			
+			mrkout.println("Markers");
+			mrkout.println("{");
+			
+			/**
+			 * The analysers add their events after the detector: stable sort by position.
+			 */
+			Collections.sort(wavdefaultevents, new Comparator<WavDefaultevent>() {
+				public int compare(WavDefaultevent event1, WavDefaultevent event2) {
+					if (event1.getPosition() < event2.getPosition()) {
+						return -1;
+					}
+					if (event1.getPosition() > event2.getPosition()) {
+						return 1;
+					}
+					return 0;
+				}
+			});
+			
+			/**
+			 * With a BWF file, the markers can be placed on the time reference of the file.
+			 */
+			long markeroffset = 0;
+			if (bext_marker_offset & (timereference > 0)) {
+				markeroffset = timereference;
+			}
+			
+			int currentposition;
+			for (int pos = 0; pos < wavdefaultevents.size(); pos++) {
+				currentposition = wavdefaultevents.get(pos).getPosition();
+				if (pos + 1 < wavdefaultevents.size()) {
+					if (currentposition == wavdefaultevents.get(pos + 1).getPosition()) {
+						/**
+						 * If the next event is at the same place like now, go next.
+						 */
+						continue;
+					}
+				}
+				/**
+				 * don't show events before time
+				 */
+				if (getPositionFromRealSample(currentposition) < startpositionresultvalues) {
+					continue;
+				}
+				
+				/**
+				 * don't show events after time
+				 */
+				if (getPositionFromRealSample(currentposition) > endpositionresultvalues) {
+					break;
+				}
+				
+				mrkout.print("\tMarker");
+				mrkout.println(pos + 1);
+				mrkout.println("\t{");
+				mrkout.print("\t\tName=");
+				mrkout.println(wavdefaultevents.get(pos).getLabel());
+				mrkout.print("\t\tPos=");
+				mrkout.println(markeroffset + currentposition);
+				mrkout.println("\t\tType=0");
+				mrkout.println("\t\tFlags=0");
+				mrkout.println("\t\tExtra=0");
+				mrkout.println("\t}");
+			}
+			mrkout.println("}");
+			
+			mrkout.flush();
+			mrkout.close();
+		}
+		
+		if (EventStore.eventstore != null) {
+			EventStore.getShared().add(file.getAbsolutePath(), freq, (double) (analysedrawsamplecount / channelcount) / (double) freq, cancelled, wavdefaultevents);
+		}
+		
+		if (AnalysisMetrics.enabled) {
+			long reportend = System.nanoTime();
+			AnalysisMetrics.getShared().addReport(file.getName(), reportend - reportstart, reportend - processstarttime);
+		}
+	}
+	
+}
@@ -0,0 +1,218 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A time segment of a file, analysed on its own reader, in parallel with the previous segments.
+ * The analysis starts some frames before the segment (warm-up), for the detector counters and the analysers carried values: the events and the results of these
+ * frames are dropped. The merge with the previous segment is made by WavFile, in the file order.
+ */
+class WavSegment implements Callable<Object> {
+	
+	private WavFile wavfile;
+	private int channelcount;
+	private int decode_block_frames;
+	private CancellationToken cancellationtoken;
+	
+	/**
+	 * The first frame of the segment, after the warm-up.
+	 */
+	int firstframe;
+	
+	/**
+	 * All the samples before this one (all channels), the next segment start or the file end.
+	 */
+	long rawsampleend;
+	
+	WavDetectionState state;
+	private WavDetector detector;
+	
+	/**
+	 * The detection state on firstframe, set with the warm-up frames only.
+	 */
+	WavDetectionState startstate;
+	
+	/**
+	 * Found events from firstframe, not displayed.
+	 */
+	ArrayList<WavDefaultevent> events;
+	
+	/**
+	 * Created by the file analysers, in the same order.
+	 */
+	ArrayList<WavAnalyser> analysers;
+	
+	/**
+	 * firstframe is reached: the state and the analysers are only on the segment samples.
+	 */
+	boolean started;
+	
+	/**
+	 * Analysed samples count (all channels) from firstframe, for the progress.
+	 */
+	volatile long analysedrawsamplecount;
+	
+	/**
+	 * Set if the data block is truncated in this segment.
+	 */
+	EOFException truncated;
+	
+	/**
+	 * For AnalysisMetrics.
+	 */
+	long readbytes;
+	long iowaittime;
+	long cputime;
+	
+	/**
+	 * @param wavfile after parseWavHeader(), for create the reader, the detector and the analysers.
+	 * @param cancellationtoken can be null.
+	 */
+	WavSegment(WavFile wavfile, List<WavAnalyser> fileanalysers, int firstframe, long rawsampleend, int decode_block_frames, CancellationToken cancellationtoken) {
+		this.wavfile = wavfile;
+		this.firstframe = firstframe;
+		this.rawsampleend = rawsampleend;
+		this.decode_block_frames = decode_block_frames;
+		this.cancellationtoken = cancellationtoken;
+		channelcount = wavfile.getChannelcount();
+		
+		events = new ArrayList<WavDefaultevent>();
+		state = wavfile.createDetectionState();
+		detector = wavfile.createDetector(state, events);
+		detector.setPrintEvents(false);
+		int warmup = detector.getSegmentWarmup();
+		
+		analysers = new ArrayList<WavAnalyser>();
+		WavAnalyser analyser;
+		for (int pos = 0; pos < fileanalysers.size(); pos++) {
+			analyser = fileanalysers.get(pos).createSegmentAnalyser();
+			analyser.init(channelcount, wavfile.getFreq(), wavfile.getBitspersample(), events);
+			warmup = Math.max(warmup, analyser.getSegmentWarmup());
+			analysers.add(analyser);
+		}
+		
+		int warmupframe = Math.max(0, firstframe - warmup);
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			analysers.get(pos).seek(warmupframe);
+		}
+		state.rawsamplepos = (long) warmupframe * (long) channelcount;
+	}
+	
+	public Object call() throws IOException {
+		long cpustart = 0;
+		if (AnalysisMetrics.enabled) {
+			cpustart = AnalysisMetrics.getCurrentThreadCpuTime();
+		}
+		long firstrawsample = (long) firstframe * (long) channelcount;
+		
+		/**
+		 * Created here, not by the file thread: the I/O buffer can wait for a release.
+		 */
+		WavFile reader = wavfile.createReader();
+		BufferPool pool = BufferPool.getShared();
+		int[] block = null;
+		try {
+			reader.skipSamples(state.rawsamplepos);
+			block = pool.acquireDecodeBuffer(decode_block_frames * channelcount, channelcount);
+			int blocklength = (block.length / channelcount) * channelcount;
+			int blockrequestcount;
+			int blocksamplecount;
+			int blockrealsamplepos;
+			
+			while (state.rawsamplepos < rawsampleend) {
+				if (cancellationtoken != null) {
+					if (cancellationtoken.isCancelled()) {
+						break;
+					}
+				}
+				if (state.rawsamplepos == firstrawsample) {
+					start();
+				}
+				
+				/**
+				 * The warm-up ends on firstframe.
+				 */
+				blockrequestcount = (int) Math.min(blocklength, rawsampleend - state.rawsamplepos);
+				if (started == false) {
+					blockrequestcount = (int) Math.min(blockrequestcount, firstrawsample - state.rawsamplepos);
+				}
+				blocksamplecount = reader.readSamples(block, blockrequestcount);
+				
+				blockrealsamplepos = (int) (state.rawsamplepos / channelcount);
+				detector.process(block, blocksamplecount);
+				for (int pos = 0; pos < analysers.size(); pos++) {
+					analysers.get(pos).analyse(block, blocksamplecount / channelcount, blockrealsamplepos);
+				}
+				if (started) {
+					analysedrawsamplecount = state.rawsamplepos - firstrawsample;
+				}
+				
+				if (blocksamplecount < blockrequestcount) {
+					throw new EOFException("Data block is truncated after " + state.rawsamplepos + " samples");
+				}
+			}
+		} catch (EOFException e) {
+			truncated = e;
+		} finally {
+			detector.close();
+			pool.release(block);
+			reader.closeReading();
+			readbytes = reader.getReadBytes();
+			iowaittime = reader.getIOWaitTime();
+			reader.close();
+			if (AnalysisMetrics.enabled) {
+				cputime = AnalysisMetrics.getCurrentThreadCpuTime() - cpustart;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * On firstframe: keep the detection state, and drop the warm-up results.
+	 */
+	private void start() {
+		events.clear();
+		startstate = wavfile.createDetectionState();
+		state.copyTo(startstate);
+		state.maxvalue = 0;
+		state.peak_position_sample = -1;
+		state.peak_channel_id = -1;
+		for (int pos = 0; pos < analysers.size(); pos++) {
+			analysers.get(pos).startSegment();
+		}
+		started = true;
+	}
+	
+	/**
+	 * @return true if the segment is analysed until rawsampleend.
+	 */
+	boolean isComplete() {
+		return state.rawsamplepos >= rawsampleend;
+	}
+	
+}
@@ -0,0 +1,172 @@
+/*
+ * 
+ * ***** BEGIN LICENSE BLOCK *****
+ *
+ * This file is part of Digital Audio Error Detection.
+ * 
+ * Digital Audio Error Detection is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Digital Audio Error Detection is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Digital Audio Error Detection.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+package com.resizia.digitalaudioerrordetection;
+
+/**
+ * xxHash 64 bits (seed 0), computed by parts like a MessageDigest.
+ * @see http://cyan4973.github.io/xxHash/
+ */
+class XXHash64 {
+	
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87l;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4Fl;
+	private static final long PRIME64_3 = 0x165667B19E3779F9l;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63l;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5l;
+	
+	/**
+	 * The 4 accumulators, for the 32 bytes stripes.
+	 */
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+	
+	/**
+	 * The bytes of an incomplete stripe, between two update().
+	 */
+	private byte[] memory;
+	private int memorysize;
+	
+	private long totallength;
+	
+	XXHash64() {
+		memory = new byte[32];
+		reset();
+	}
+	
+	void reset() {
+		v1 = PRIME64_1 + PRIME64_2;
+		v2 = PRIME64_2;
+		v3 = 0;
+		v4 = -PRIME64_1;
+		memorysize = 0;
+		totallength = 0;
+	}
+	
+	void update(byte[] b, int off, int len) {
+		totallength += len;
+		int end = off + len;
+		
+		if (memorysize + len < 32) {
+			System.arraycopy(b, off, memory, memorysize, len);
+			memorysize += len;
+			return;
+		}
+		
+		if (memorysize > 0) {
+			/**
+			 * Complete and consume the stripe in memory.
+			 */
+			System.arraycopy(b, off, memory, memorysize, 32 - memorysize);
+			off += 32 - memorysize;
+			memorysize = 0;
+			v1 = round(v1, getLong(memory, 0));
+			v2 = round(v2, getLong(memory, 8));
+			v3 = round(v3, getLong(memory, 16));
+			v4 = round(v4, getLong(memory, 24));
+		}
+		
+		long l1 = v1;
+		long l2 = v2;
+		long l3 = v3;
+		long l4 = v4;
+		for (; off + 32 <= end; off += 32) {
+			l1 = round(l1, getLong(b, off));
+			l2 = round(l2, getLong(b, off + 8));
+			l3 = round(l3, getLong(b, off + 16));
+			l4 = round(l4, getLong(b, off + 24));
+		}
+		v1 = l1;
+		v2 = l2;
+		v3 = l3;
+		v4 = l4;
+		
+		if (off < end) {
+			System.arraycopy(b, off, memory, 0, end - off);
+			memorysize = end - off;
+		}
+	}
+	
+	/**
+	 * Don't change the current state.
+	 */
+	long getValue() {
+		long h;
+		if (totallength >= 32) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = PRIME64_5;
+		}
+		h += totallength;
+		
+		int pos = 0;
+		for (; pos + 8 <= memorysize; pos += 8) {
+			h ^= round(0, getLong(memory, pos));
+			h = Long.rotateLeft(h, 27) * PRIME64_1 + PRIME64_4;
+		}
+		if (pos + 4 <= memorysize) {
+			h ^= (getInt(memory, pos) & 0xFFFFFFFFl) * PRIME64_1;
+			h = Long.rotateLeft(h, 23) * PRIME64_2 + PRIME64_3;
+			pos += 4;
+		}
+		for (; pos < memorysize; pos++) {
+			h ^= (memory[pos] & 0xFF) * PRIME64_5;
+			h = Long.rotateLeft(h, 11) * PRIME64_1;
+		}
+		
+		h ^= h >>> 33;
+		h *= PRIME64_2;
+		h ^= h >>> 29;
+		h *= PRIME64_3;
+		h ^= h >>> 32;
+		return h;
+	}
+	
+	private static long round(long acc, long input) {
+		acc += input * PRIME64_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME64_1;
+	}
+	
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME64_1 + PRIME64_4;
+	}
+	
+	/**
+	 * Little endian.
+	 */
+	private static long getLong(byte[] b, int pos) {
+		return (b[pos] & 0xFFl) | ((b[pos + 1] & 0xFFl) << 8) | ((b[pos + 2] & 0xFFl) << 16) | ((b[pos + 3] & 0xFFl) << 24) | ((b[pos + 4] & 0xFFl) << 32) | ((b[pos + 5] & 0xFFl) << 40)
+				| ((b[pos + 6] & 0xFFl) << 48) | ((b[pos + 7] & 0xFFl) << 56);
+	}
+	
+	private static int getInt(byte[] b, int pos) {
+		return (b[pos] & 0xFF) | ((b[pos + 1] & 0xFF) << 8) | ((b[pos + 2] & 0xFF) << 16) | ((b[pos + 3] & 0xFF) << 24);
+	}
+	
+}